@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.security.KeyStore
+
+def keystoreFile = new File(basedir, "target/batch-keystore.p12")
+assert keystoreFile.exists(), "Keystore file should exist: ${keystoreFile}"
+
+def keystore = KeyStore.getInstance("PKCS12")
+keystoreFile.withInputStream { is ->
+    keystore.load(is, "testpass".toCharArray())
+}
+
+assert keystore.containsAlias("renamed-cert"), "Renamed certificate should exist"
+assert !keystore.containsAlias("test-cert"), "Original alias should have been renamed"
+assert !keystore.containsAlias("temp-cert"), "Deleted alias should not exist"
+assert keystore.containsAlias("secret"), "Secret key should exist"
+assert keystore.size() == 2, "Keystore should contain exactly two entries"
+
+def logContent = new File(basedir, "build.log").text
+assert logContent.contains("Ran 5 operation(s)"), "All operations should have run in one batch"
@@ -0,0 +1,83 @@
+package org.codehaus.mojo.keytool;
+
+/*
+ * Copyright 2005-2013 The Codehaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License" );
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.mojo.keytool.services.KeyStoreProtection;
+import org.codehaus.mojo.keytool.services.KeyStoreWriteOptions;
+
+/**
+ * Base class of the goals writing keystores, with the settings only they use.
+ *
+ * @since 2.1
+ */
+public abstract class AbstractKeyStoreWriteMojo extends AbstractKeyToolMojo {
+
+    /**
+     * Protection profile of written PKCS12 keystores: {@code production} (the JDK defaults) or {@code fast-test}
+     * (a single PBE iteration for key entries, certificates and the keystore MAC). {@code fast-test} makes
+     * keystores much cheaper to generate and load, but offers no protection against password guessing: only use it
+     * for throwaway keystores generated by tests. Any other value fails the build.
+     *
+     * @since 2.1
+     */
+    @Parameter(property = "keytool.protectionProfile", defaultValue = KeyStoreProtection.PRODUCTION)
+    private String protectionProfile;
+
+    /**
+     * <p>Getter for the field <code>protectionProfile</code>.</p>
+     *
+     * @return the protection profile name
+     * @since 2.1
+     */
+    public final String getProtectionProfile() {
+        return protectionProfile;
+    }
+
+    /**
+     * <p>Setter for the field <code>protectionProfile</code>.</p>
+     *
+     * @param protectionProfile the protection profile name to set.
+     * @since 2.1
+     */
+    public final void setProtectionProfile(String protectionProfile) {
+        this.protectionProfile = protectionProfile;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws MojoExecutionException if the protection profile is unknown or the output timestamp is invalid
+     */
+    @Override
+    protected KeyStoreWriteOptions getWriteOptions() throws MojoExecutionException {
+        KeyStoreProtection protection;
+        try {
+            protection = KeyStoreProtection.forName(protectionProfile);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+
+        if (!protection.isProduction()) {
+            getLog().warn("Keystores are written with the '" + protection.getName()
+                    + "' protection profile, which must not be used for real keys");
+        }
+
+        return super.getWriteOptions().withProtection(protection);
+    }
+}
@@ -16,12 +16,27 @@ package org.codehaus.mojo.keytool;
  * limitations under the License.
  */
 
+import javax.inject.Inject;
+
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.List;
 import java.util.ResourceBundle;
 
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.mojo.keytool.services.KeyStoreCache;
+import org.codehaus.mojo.keytool.services.KeyStoreWriteOptions;
+import org.codehaus.mojo.keytool.services.SecureRandomStrategy;
 
 /**
  * Abstract class that contains fields/methods common to KeyTool Mojo classes.
@@ -32,6 +47,18 @@ import org.apache.maven.plugins.annotations.Parameter;
  */
 public abstract class AbstractKeyToolMojo extends AbstractMojo {
 
+    /**
+     * Keystores loaded and modified by the goals of this plugin, shared by all its executions in the build.
+     */
+    @Inject
+    private KeyStoreCache keyStoreCache;
+
+    /**
+     * Start time of the build, telling apart builds run by the same JVM.
+     */
+    @Parameter(defaultValue = "${session.request.startTime}", readonly = true)
+    private Date sessionStartTime;
+
     /**
      * Set to {@code true} to disable the plugin.
      *
@@ -47,6 +74,97 @@ public abstract class AbstractKeyToolMojo extends AbstractMojo {
     @Parameter(defaultValue = "false")
     private boolean verbose;
 
+    /**
+     * Set to {@code true} to force written keystores to the storage device before they replace the previous
+     * file. Keystores are always replaced atomically; this only matters if the machine may crash right after
+     * the build. Only used by goals writing a keystore.
+     *
+     * @since 2.1
+     */
+    @Parameter(property = "keytool.fsync", defaultValue = "false")
+    private boolean fsync;
+
+    /**
+     * Seed making written JKS and PKCS12 keystores reproducible: entries are sorted by alias, entry dates are set
+     * to {@link #outputTimestamp} and salts and IVs are derived from this seed, so that the same entries always
+     * give the same file and build caches can reuse it. Key entries must be protected with the keystore password.
+     * Anyone knowing the seed can predict the salts and IVs: only use it for test keystores. Keystores are written
+     * as usual if not set. Only used by goals writing a keystore.
+     *
+     * @since 2.1
+     */
+    @Parameter(property = "keytool.reproducibleSeed")
+    private String reproducibleSeed;
+
+    /**
+     * Date of the entries of reproducible keystores, as an ISO 8601 date or a number of seconds since the epoch.
+     * Only used with {@link #reproducibleSeed}.
+     *
+     * @since 2.1
+     */
+    @Parameter(defaultValue = "${project.build.outputTimestamp}")
+    private String outputTimestamp;
+
+    /**
+     * Set to {@code true} to write the metadata sidecar of keystores. The sidecar is a small properties file next to
+     * each written keystore ({@code keystore.p12.meta} for {@code keystore.p12}) with the alias, type, fingerprint,
+     * subject and end of validity of its entries, the hash of the keystore and a salted hash of its password. The
+     * {@code list} goal answers from it, without parsing the keystore, as long as both hashes match. The sidecar is
+     * not encrypted: anyone able to read it can see the keystore entries, so do not enable it for keystores under
+     * version control.
+     *
+     * @since 2.1
+     */
+    @Parameter(property = "keytool.metadataSidecar", defaultValue = "false")
+    private boolean metadataSidecar;
+
+    /**
+     * Set to {@code true} to keep modified keystores in memory rather than write them, so that a keystore modified
+     * by several executions, in one or several modules, is written once by the {@code flush} goal. Later goals of
+     * the build see the deferred changes, but other plugins only see the keystore once flushed. The changes to a
+     * keystore are discarded if a goal fails on it or if the file is changed by someone else in the meantime. Only
+     * used by goals writing a keystore.
+     * <p>
+     * An execution of the {@code flush} goal is required: nothing writes the deferred changes at the end of the
+     * build, they are lost without it. Goals deferring changes warn when neither this project binds a
+     * {@code flush} execution nor the command line runs the goal.
+     *
+     * @since 2.1
+     */
+    @Parameter(property = "keytool.writeBehind", defaultValue = "false")
+    private boolean writeBehind;
+
+    /**
+     * Build plugins of the project, to find the {@code flush} execution writing deferred changes.
+     */
+    @Parameter(defaultValue = "${project.build.plugins}", readonly = true)
+    private List<Plugin> buildPlugins;
+
+    /**
+     * Goals given on the command line, to find the {@code flush} goal writing deferred changes.
+     */
+    @Parameter(defaultValue = "${session.request.goals}", readonly = true)
+    private List<String> sessionGoals;
+
+    /**
+     * Descriptor of this plugin, to find it among the build plugins.
+     */
+    @Parameter(defaultValue = "${plugin}", readonly = true)
+    private PluginDescriptor pluginDescriptor;
+
+    /**
+     * Kind of secure random used to generate key pairs, secret keys and certificate serial numbers:
+     * {@code default} (the JVM default, which may block on headless machines short of entropy), {@code drbg} (the
+     * DRBG of Java 9 and later) or {@code non-blocking} ({@code /dev/urandom} on Unix-like systems). Falls back to
+     * the JVM default if the JVM does not provide it. Any other value fails the build. Each thread reuses its
+     * instance. The setting only applies to the execution configuring it, including the key pairs it has generated
+     * ahead of time.
+     *
+     * @since 2.1
+     */
+    @Parameter(property = "keytool.secureRandom", defaultValue = "default")
+    private String secureRandom;
+
     /**
      * <p>isSkip.</p>
      *
@@ -83,6 +201,234 @@ public abstract class AbstractKeyToolMojo extends AbstractMojo {
         this.verbose = verbose;
     }
 
+    /**
+     * <p>isFsync.</p>
+     *
+     * @return value of the {@link #fsync} flag
+     * @since 2.1
+     */
+    public final boolean isFsync() {
+        return fsync;
+    }
+
+    /**
+     * <p>Setter for the field <code>fsync</code>.</p>
+     *
+     * @param fsync the fsync flag value to set.
+     * @since 2.1
+     */
+    public final void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
+
+    /**
+     * <p>isMetadataSidecar.</p>
+     *
+     * @return value of the {@link #metadataSidecar} flag
+     * @since 2.1
+     */
+    public final boolean isMetadataSidecar() {
+        return metadataSidecar;
+    }
+
+    /**
+     * <p>Setter for the field <code>metadataSidecar</code>.</p>
+     *
+     * @param metadataSidecar the metadata sidecar flag value to set.
+     * @since 2.1
+     */
+    public final void setMetadataSidecar(boolean metadataSidecar) {
+        this.metadataSidecar = metadataSidecar;
+    }
+
+    /**
+     * <p>isWriteBehind.</p>
+     *
+     * @return value of the {@link #writeBehind} flag
+     * @since 2.1
+     */
+    public final boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * <p>Setter for the field <code>writeBehind</code>.</p>
+     *
+     * @param writeBehind the write-behind flag value to set.
+     * @since 2.1
+     */
+    public final void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    /**
+     * <p>Setter for the field <code>reproducibleSeed</code>.</p>
+     *
+     * @param reproducibleSeed the seed of reproducible keystores to set.
+     * @since 2.1
+     */
+    public final void setReproducibleSeed(String reproducibleSeed) {
+        this.reproducibleSeed = reproducibleSeed;
+    }
+
+    /**
+     * <p>Setter for the field <code>outputTimestamp</code>.</p>
+     *
+     * @param outputTimestamp the date of the entries of reproducible keystores to set.
+     * @since 2.1
+     */
+    public final void setOutputTimestamp(String outputTimestamp) {
+        this.outputTimestamp = outputTimestamp;
+    }
+
+    /**
+     * <p>Getter for the field <code>secureRandom</code>.</p>
+     *
+     * @return the secure random strategy
+     * @since 2.1
+     */
+    public final String getSecureRandom() {
+        return secureRandom;
+    }
+
+    /**
+     * <p>Setter for the field <code>secureRandom</code>.</p>
+     *
+     * @param secureRandom the secure random strategy to set.
+     * @since 2.1
+     */
+    public final void setSecureRandom(String secureRandom) {
+        this.secureRandom = secureRandom;
+    }
+
+    /**
+     * Keystore cache shared by the goals of this plugin in the build.
+     *
+     * @return the keystore cache
+     * @since 2.1
+     */
+    protected final KeyStoreCache getKeyStoreCache() {
+        return keyStoreCache;
+    }
+
+    /**
+     * Bind the shared keystore cache to the build running this goal, then run the goal: every goal joins the build,
+     * so that keystores loaded or modified by goals of a previous build run by the same JVM are never reused.
+     *
+     * @throws MojoExecutionException if the goal fails
+     * @throws MojoFailureException if the goal finds a problem with the build configuration
+     * @since 2.1
+     */
+    @Override
+    public final void execute() throws MojoExecutionException, MojoFailureException {
+        joinSession();
+        doExecute();
+    }
+
+    /**
+     * Run the goal, once the keystore cache is bound to the build.
+     *
+     * @throws MojoExecutionException if the goal fails
+     * @throws MojoFailureException if the goal finds a problem with the build configuration
+     * @since 2.1
+     */
+    protected abstract void doExecute() throws MojoExecutionException, MojoFailureException;
+
+    private void joinSession() {
+        if (keyStoreCache != null && sessionStartTime != null) {
+            keyStoreCache.joinSession(Long.toString(sessionStartTime.getTime()));
+        }
+    }
+
+    /**
+     * The secure random configured for this goal, to pass to the services generating keys and certificates.
+     *
+     * @return the secure random strategy
+     * @throws MojoExecutionException if the secure random strategy is unknown
+     * @since 2.1
+     */
+    protected final SecureRandomStrategy getSecureRandomStrategy() throws MojoExecutionException {
+        try {
+            return SecureRandomStrategy.forName(secureRandom);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Options to write keystores with, from the configuration of this goal.
+     *
+     * @return the write options
+     * @throws MojoExecutionException if the output timestamp is invalid
+     * @since 2.1
+     */
+    protected KeyStoreWriteOptions getWriteOptions() throws MojoExecutionException {
+        KeyStoreWriteOptions writeOptions = KeyStoreWriteOptions.defaults()
+                .withFsync(fsync)
+                .withMetadataSidecar(metadataSidecar)
+                .withWriteBehind(writeBehind);
+
+        if (writeBehind && !isFlushed()) {
+            getLog().warn("keytool.writeBehind is set but this project binds no flush execution of the keytool plugin:"
+                    + " the deferred keystore changes are lost at the end of the build unless a later module or"
+                    + " goal runs keytool:flush");
+        }
+
+        if (reproducibleSeed != null && !reproducibleSeed.isEmpty()) {
+            getLog().warn("Keystores are written reproducibly, their salts and IVs can be predicted from the seed:"
+                    + " only use it for test keystores");
+            writeOptions = writeOptions.withReproducibleOutput(
+                    reproducibleSeed.getBytes(StandardCharsets.UTF_8), parseOutputTimestamp());
+        }
+
+        return writeOptions;
+    }
+
+    /**
+     * Whether the {@code flush} goal runs in this build: bound to this project or given on the command line. Only
+     * answers {@code false} when it knows the project, so goals run outside a build never warn.
+     */
+    private boolean isFlushed() {
+        if (buildPlugins == null || pluginDescriptor == null) {
+            return true;
+        }
+        if (sessionGoals != null) {
+            for (String goal : sessionGoals) {
+                if (goal.endsWith(":flush")) {
+                    return true;
+                }
+            }
+        }
+        for (Plugin plugin : buildPlugins) {
+            if (plugin.getKey().equals(pluginDescriptor.getPluginLookupKey())) {
+                for (PluginExecution execution : plugin.getExecutions()) {
+                    if (execution.getGoals().contains("flush")) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse the output timestamp the way the Maven plugins for reproducible builds do: a number of seconds since
+     * the epoch or an ISO 8601 date, a single character or nothing meaning no timestamp.
+     */
+    private long parseOutputTimestamp() throws MojoExecutionException {
+        if (outputTimestamp == null || outputTimestamp.length() < 2) {
+            return 0L;
+        }
+        try {
+            if (outputTimestamp.chars().allMatch(Character::isDigit)) {
+                return Long.parseLong(outputTimestamp) * 1000L;
+            }
+            return OffsetDateTime.parse(outputTimestamp).toInstant().toEpochMilli();
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new MojoExecutionException("Invalid outputTimestamp: " + outputTimestamp, e);
+        }
+    }
+
     /**
      * Gets a message for a given key from the resource bundle backing the implementation.
      *
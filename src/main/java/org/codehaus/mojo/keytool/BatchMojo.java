@@ -0,0 +1,171 @@
+package org.codehaus.mojo.keytool;
+
+/*
+ * Copyright 2005-2013 The Codehaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License" );
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import javax.inject.Inject;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.mojo.keytool.services.CertificateManagementService;
+import org.codehaus.mojo.keytool.services.KeyStoreCache;
+import org.codehaus.mojo.keytool.services.KeyStoreManagementService;
+import org.codehaus.mojo.keytool.services.KeyStoreMutation;
+import org.codehaus.mojo.keytool.services.KeyStoreSession;
+import org.codehaus.mojo.keytool.services.SecretKeyService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * To run an ordered list of operations against a single keystore.
+ * <p>
+ * The keystore is loaded once, all operations are applied in order to the in-memory keystore, then it is
+ * stored once. If any operation fails, the keystore file is left untouched.
+ *
+ * @since 2.1
+ */
+@Mojo(name = "batch", threadSafe = true)
+public class BatchMojo extends AbstractKeyStoreWriteMojo {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchMojo.class);
+
+    @Inject
+    private KeyStoreCache keyStoreCache;
+
+    @Inject
+    private KeyStoreManagementService keyStoreService;
+
+    @Inject
+    private CertificateManagementService certificateService;
+
+    @Inject
+    private SecretKeyService secretKeyService;
+
+    /**
+     * Keystore location.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/keystore", required = true)
+    private File keystore;
+
+    /**
+     * Keystore type.
+     */
+    @Parameter
+    private String storetype;
+
+    /**
+     * Keystore password.
+     */
+    @Parameter
+    private String storepass;
+
+    /**
+     * Operations to run, in order. Supported types are {@code importCertificate}, {@code deleteAlias},
+     * {@code changeAlias}, {@code changeKeyPassword} and {@code generateSecretKey}.
+     * <pre>
+     * &lt;operations&gt;
+     *   &lt;operation&gt;
+     *     &lt;type&gt;importCertificate&lt;/type&gt;
+     *     &lt;alias&gt;ca&lt;/alias&gt;
+     *     &lt;file&gt;src/main/certs/ca.cer&lt;/file&gt;
+     *   &lt;/operation&gt;
+     *   &lt;operation&gt;
+     *     &lt;type&gt;deleteAlias&lt;/type&gt;
+     *     &lt;alias&gt;old-ca&lt;/alias&gt;
+     *   &lt;/operation&gt;
+     * &lt;/operations&gt;
+     * </pre>
+     */
+    @Parameter(required = true)
+    private List<KeyStoreOperation> operations;
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doExecute() throws MojoExecutionException {
+        if (isSkip()) {
+            log.info(getMessage("disabled"));
+            return;
+        }
+
+        if (operations == null || operations.isEmpty()) {
+            log.info("No operation to run on {}", keystore);
+            return;
+        }
+
+        char[] password = storepass != null ? storepass.toCharArray() : null;
+
+        try (KeyStoreSession session =
+                keyStoreCache.openSession(keystore, storetype, password, true, getWriteOptions())) {
+            for (KeyStoreOperation operation : operations) {
+                session.queue(toMutation(operation, password));
+            }
+            session.commit();
+        } catch (MojoExecutionException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MojoExecutionException("Failed to run batch on " + keystore + ": " + e.getMessage(), e);
+        }
+
+        log.info("Ran {} operation(s) on {}", operations.size(), keystore);
+    }
+
+    private KeyStoreMutation toMutation(KeyStoreOperation operation, char[] storePassword) throws Exception {
+        String type = operation.getType();
+        if (type == null || type.isEmpty()) {
+            throw new MojoExecutionException("Operation type is required");
+        }
+
+        String alias = operation.getAlias();
+        if (alias == null || alias.isEmpty()) {
+            throw new MojoExecutionException("Alias is required for operation " + operation);
+        }
+
+        char[] keyPassword =
+                operation.getKeypass() != null ? operation.getKeypass().toCharArray() : storePassword;
+
+        switch (type) {
+            case "importCertificate":
+                if (operation.getFile() == null || !operation.getFile().exists()) {
+                    throw new MojoExecutionException(
+                            "Certificate file does not exist for operation " + operation + ": " + operation.getFile());
+                }
+                return certificateService.importCertificateMutation(
+                        alias, operation.getFile(), operation.isSkipIfAliasExists(), keyPassword, storePassword);
+            case "deleteAlias":
+                return certificateService.deleteAliasMutation(alias);
+            case "changeAlias":
+                if (operation.getDestalias() == null || operation.getDestalias().isEmpty()) {
+                    throw new MojoExecutionException("Destination alias is required for operation " + operation);
+                }
+                return keyStoreService.changeAliasMutation(alias, operation.getDestalias(), keyPassword);
+            case "changeKeyPassword":
+                if (operation.getNewPassword() == null) {
+                    throw new MojoExecutionException("New password is required for operation " + operation);
+                }
+                return keyStoreService.changeKeyPasswordMutation(
+                        alias, keyPassword, operation.getNewPassword().toCharArray());
+            case "generateSecretKey":
+                return secretKeyService.generateSecretKeyMutation(
+                        alias, operation.getKeyalg(), operation.getKeysize(), keyPassword, getSecureRandomStrategy());
+            default:
+                throw new MojoExecutionException("Unsupported operation type: " + type);
+        }
+    }
+}
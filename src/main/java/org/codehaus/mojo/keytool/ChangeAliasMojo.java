@@ -36,7 +36,7 @@ import org.slf4j.LoggerFactory;
  * @since 1.2
  */
 @Mojo(name = "changeAlias", threadSafe = true)
-public class ChangeAliasMojo extends AbstractKeyToolMojo {
+public class ChangeAliasMojo extends AbstractKeyStoreWriteMojo {
 
     private static final Logger log = LoggerFactory.getLogger(ChangeAliasMojo.class);
 
@@ -87,7 +87,7 @@ public class ChangeAliasMojo extends AbstractKeyToolMojo {
 
     /** {@inheritDoc} */
     @Override
-    public void execute() throws MojoExecutionException {
+    protected void doExecute() throws MojoExecutionException {
         if (isSkip()) {
             log.info("Skipping execution");
             return;
@@ -101,7 +101,8 @@ public class ChangeAliasMojo extends AbstractKeyToolMojo {
                     storepass != null ? storepass.toCharArray() : null,
                     alias,
                     destalias,
-                    keypass != null ? keypass.toCharArray() : null);
+                    keypass != null ? keypass.toCharArray() : null,
+                    getWriteOptions());
         } catch (Exception e) {
             throw new MojoExecutionException("Failed to change alias", e);
         }
@@ -36,7 +36,7 @@ import org.slf4j.LoggerFactory;
  * @since 1.2
  */
 @Mojo(name = "changeKeyPassword", threadSafe = true)
-public class ChangeKeyPasswordMojo extends AbstractKeyToolMojo {
+public class ChangeKeyPasswordMojo extends AbstractKeyStoreWriteMojo {
 
     private static final Logger log = LoggerFactory.getLogger(ChangeKeyPasswordMojo.class);
 
@@ -87,7 +87,7 @@ public class ChangeKeyPasswordMojo extends AbstractKeyToolMojo {
 
     /** {@inheritDoc} */
     @Override
-    public void execute() throws MojoExecutionException {
+    protected void doExecute() throws MojoExecutionException {
         if (isSkip()) {
             log.info("Skipping execution");
             return;
@@ -101,7 +101,8 @@ public class ChangeKeyPasswordMojo extends AbstractKeyToolMojo {
                     storepass != null ? storepass.toCharArray() : null,
                     alias,
                     keypass != null ? keypass.toCharArray() : null,
-                    newPassword != null ? newPassword.toCharArray() : null);
+                    newPassword != null ? newPassword.toCharArray() : null,
+                    getWriteOptions());
         } catch (Exception e) {
             throw new MojoExecutionException("Failed to change key password", e);
         }
@@ -36,7 +36,7 @@ import org.slf4j.LoggerFactory;
  * @since 1.2
  */
 @Mojo(name = "changeStorePassword", threadSafe = true)
-public class ChangeStorePasswordMojo extends AbstractKeyToolMojo {
+public class ChangeStorePasswordMojo extends AbstractKeyStoreWriteMojo {
 
     private static final Logger log = LoggerFactory.getLogger(ChangeStorePasswordMojo.class);
 
@@ -72,7 +72,7 @@ public class ChangeStorePasswordMojo extends AbstractKeyToolMojo {
 
     /** {@inheritDoc} */
     @Override
-    public void execute() throws MojoExecutionException {
+    protected void doExecute() throws MojoExecutionException {
         if (isSkip()) {
             log.info("Skipping execution");
             return;
@@ -84,7 +84,8 @@ public class ChangeStorePasswordMojo extends AbstractKeyToolMojo {
                     keystore,
                     storetype,
                     storepass != null ? storepass.toCharArray() : null,
-                    newPassword != null ? newPassword.toCharArray() : null);
+                    newPassword != null ? newPassword.toCharArray() : null,
+                    getWriteOptions());
         } catch (Exception e) {
             throw new MojoExecutionException("Failed to change store password", e);
         }
@@ -21,11 +21,12 @@ import java.io.File;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.mojo.keytool.services.KeyStoreSidecar;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * A Mojo that deletes a generated keystore file.
+ * A Mojo that deletes a generated keystore file, and its metadata sidecar if any.
  *
  * @author Sharmarke Aden (<a href="mailto:saden1@gmail.com">saden</a>)
  * @author $Author$
@@ -63,12 +64,21 @@ public class CleanKeyMojo extends AbstractKeyToolMojo {
     /**
      * {@inheritDoc}
      */
-    public void execute() {
+    protected void doExecute() {
         if (isSkip()) {
             log.info(getMessage("disabled", null));
         } else {
             File keystoreFile = new File(this.getKeystore());
-            if (keystoreFile.delete()) {
+            boolean deleted = keystoreFile.delete();
+            File sidecarFile = KeyStoreSidecar.getFile(keystoreFile);
+            if (sidecarFile.delete()) {
+                log.debug("Keystore metadata sidecar '{}' deleted.", sidecarFile);
+            }
+            if (getKeyStoreCache() != null) {
+                // neither a cached instance nor deferred changes may bring the deleted keystore back
+                getKeyStoreCache().invalidate(keystoreFile);
+            }
+            if (deleted) {
                 log.info("Keystore file '{}' deleted successfully.", keystoreFile);
             } else {
                 log.warn("Keystore file '{}' doesn't exist.", keystoreFile);
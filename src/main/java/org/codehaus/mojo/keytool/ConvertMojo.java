@@ -0,0 +1,286 @@
+package org.codehaus.mojo.keytool;
+
+/*
+ * Copyright 2005-2013 The Codehaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License" );
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import javax.inject.Inject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.mojo.keytool.services.KeyStoreConversion;
+import org.codehaus.mojo.keytool.services.KeyStoreConversionService;
+import org.codehaus.mojo.keytool.services.KeyStoreFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * To convert all the keystores of a directory to another format, for instance legacy JKS and JCEKS keystores to
+ * PKCS12 or BCFKS, several keystores at a time.
+ * <p>
+ * Each keystore is written to {@code outputDirectory}, under the same relative path and base name, with the usual
+ * extension of the destination format. Results are logged as keystores get converted, followed by a summary.
+ *
+ * @since 2.1
+ */
+@Mojo(name = "convert", threadSafe = true)
+public class ConvertMojo extends AbstractKeyStoreWriteMojo {
+
+    private static final Logger log = LoggerFactory.getLogger(ConvertMojo.class);
+
+    private static final String GLOB_ANY_DIRECTORY = "**/";
+
+    @Inject
+    private KeyStoreConversionService service;
+
+    /**
+     * Directory holding the keystores to convert.
+     *
+     * @since 2.1
+     */
+    @Parameter(required = true)
+    private File srcdirectory;
+
+    /**
+     * Glob patterns of the keystores to convert, relative to {@code srcdirectory}. Defaults to {@code **}{@code /*.jks}
+     * and {@code **}{@code /*.jceks}.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private List<String> includes;
+
+    /**
+     * Source keystore type, detected from each keystore if not set.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private String srcstoretype;
+
+    /**
+     * Password of the source keystores.
+     *
+     * @since 2.1
+     */
+    @Parameter(required = true)
+    private String srcstorepass;
+
+    /**
+     * Password of the keys of the source keystores, {@code srcstorepass} if not set.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private String srckeypass;
+
+    /**
+     * Directory the converted keystores are written to.
+     *
+     * @since 2.1
+     */
+    @Parameter(defaultValue = "${project.build.directory}/converted-keystores", required = true)
+    private File outputDirectory;
+
+    /**
+     * Destination keystore type.
+     *
+     * @since 2.1
+     */
+    @Parameter(defaultValue = "PKCS12", required = true)
+    private String deststoretype;
+
+    /**
+     * Password of the destination keystores, {@code srcstorepass} if not set.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private String deststorepass;
+
+    /**
+     * Password of the keys of the destination keystores, {@code deststorepass} if not set.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private String destkeypass;
+
+    /**
+     * If value is {@code true}, existing destination keystores are replaced, otherwise they are left as is.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private boolean overwrite;
+
+    /**
+     * Number of keystores converted at a time, {@code 0} for the number of processors.
+     *
+     * @since 2.1
+     */
+    @Parameter(defaultValue = "0")
+    private int threads;
+
+    /**
+     * If value is {@code false}, keystores that cannot be converted are reported without failing the build.
+     *
+     * @since 2.1
+     */
+    @Parameter(defaultValue = "true")
+    private boolean failOnError;
+
+    @Override
+    protected void doExecute() throws MojoExecutionException {
+        if (isSkip()) {
+            log.info(getMessage("disabled"));
+            return;
+        }
+
+        if (!srcdirectory.isDirectory()) {
+            throw new MojoExecutionException("Source directory does not exist: " + srcdirectory);
+        }
+        KeyStoreFormat destFormat = KeyStoreFormat.forType(deststoretype);
+        if (destFormat == null) {
+            throw new MojoExecutionException("Unsupported destination keystore type: " + deststoretype);
+        }
+
+        List<File> sources;
+        try {
+            sources = findKeystores();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to list keystores in " + srcdirectory + ": " + e.getMessage(), e);
+        }
+        if (sources.isEmpty()) {
+            log.warn("No keystore to convert in {}", srcdirectory);
+            return;
+        }
+
+        List<File> destinations = new ArrayList<>(sources.size());
+        for (File source : sources) {
+            destinations.add(destination(source, destFormat));
+        }
+
+        List<KeyStoreConversion> results;
+        try {
+            results = service.convert(
+                    sources,
+                    destinations,
+                    srcstoretype,
+                    srcstorepass.toCharArray(),
+                    srckeypass != null ? srckeypass.toCharArray() : null,
+                    destFormat.getType(),
+                    deststorepass != null ? deststorepass.toCharArray() : null,
+                    destkeypass != null ? destkeypass.toCharArray() : null,
+                    overwrite,
+                    threads,
+                    getWriteOptions());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to convert keystores: " + e.getMessage(), e);
+        }
+
+        summarize(results);
+    }
+
+    private List<File> findKeystores() throws IOException {
+        List<String> patterns = includes != null && !includes.isEmpty()
+                ? includes
+                : Arrays.asList(GLOB_ANY_DIRECTORY + "*.jks", GLOB_ANY_DIRECTORY + "*.jceks");
+
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String pattern : patterns) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+            // as in Ant patterns, **/ also matches no directory at all
+            if (pattern.startsWith(GLOB_ANY_DIRECTORY)) {
+                matchers.add(FileSystems.getDefault()
+                        .getPathMatcher("glob:" + pattern.substring(GLOB_ANY_DIRECTORY.length())));
+            }
+        }
+
+        Path root = srcdirectory.toPath();
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> matchers.stream().anyMatch(matcher -> matcher.matches(root.relativize(file))))
+                    .sorted()
+                    .map(Path::toFile)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private File destination(File source, KeyStoreFormat destFormat) {
+        Path relative = srcdirectory.toPath().relativize(source.toPath());
+        String name = source.getName();
+        int dot = name.lastIndexOf('.');
+        String destName = (dot > 0 ? name.substring(0, dot) : name) + destFormat.getFileExtension();
+        Path parent = relative.getParent();
+        return (parent != null ? outputDirectory.toPath().resolve(parent) : outputDirectory.toPath())
+                .resolve(destName)
+                .toFile();
+    }
+
+    private void summarize(List<KeyStoreConversion> results) throws MojoExecutionException {
+        int converted = 0;
+        int skipped = 0;
+        int entries = 0;
+        List<KeyStoreConversion> failures = new ArrayList<>();
+        for (KeyStoreConversion result : results) {
+            switch (result.getStatus()) {
+                case CONVERTED:
+                    converted++;
+                    entries += result.getEntryCount();
+                    break;
+                case SKIPPED:
+                    skipped++;
+                    break;
+                default:
+                    failures.add(result);
+            }
+        }
+
+        log.info("");
+        log.info("Keystore conversion summary:");
+        for (KeyStoreConversion result : results) {
+            log.info("  {} {}", result.getStatus(), result);
+        }
+        log.info(
+                "Converted {} keystore(s) ({} entries), skipped {}, failed {}",
+                converted,
+                entries,
+                skipped,
+                failures.size());
+
+        if (!failures.isEmpty()) {
+            for (KeyStoreConversion failure : failures) {
+                log.error("Failed to convert {}: {}", failure.getSource(), failure.getError());
+            }
+            if (failOnError) {
+                throw new MojoExecutionException(failures.size() + " keystore(s) could not be converted");
+            }
+        }
+    }
+}
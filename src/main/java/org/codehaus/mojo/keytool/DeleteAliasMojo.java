@@ -35,7 +35,7 @@ import org.slf4j.LoggerFactory;
  * @since 1.2
  */
 @Mojo(name = "deleteAlias", threadSafe = true)
-public class DeleteAliasMojo extends AbstractKeyToolMojo {
+public class DeleteAliasMojo extends AbstractKeyStoreWriteMojo {
 
     private static final Logger log = LoggerFactory.getLogger(DeleteAliasMojo.class);
 
@@ -55,7 +55,7 @@ public class DeleteAliasMojo extends AbstractKeyToolMojo {
     private String alias;
 
     @Override
-    public void execute() throws MojoExecutionException {
+    protected void doExecute() throws MojoExecutionException {
         if (isSkip()) {
             log.info(getMessage("disabled"));
             return;
@@ -68,8 +68,8 @@ public class DeleteAliasMojo extends AbstractKeyToolMojo {
 
             char[] password = (storepass != null) ? storepass.toCharArray() : null;
 
-            service.deleteAlias(keystore, storetype, password, alias);
-            service.deleteAlias(keystore, storetype, password, alias);
+            service.deleteAlias(keystore, storetype, password, alias, getWriteOptions());
+            service.deleteAlias(keystore, storetype, password, alias, getWriteOptions());
 
         } catch (Exception e) {
             throw new MojoExecutionException("Failed to delete alias: " + e.getMessage(), e);
@@ -64,7 +64,7 @@ public class ExportCertificateMojo extends AbstractKeyToolMojo {
 
     /** {@inheritDoc} */
     @Override
-    public void execute() throws MojoExecutionException {
+    protected void doExecute() throws MojoExecutionException {
         if (isSkip()) {
             log.info(getMessage("disabled"));
             return;
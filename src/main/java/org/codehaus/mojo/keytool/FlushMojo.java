@@ -0,0 +1,52 @@
+package org.codehaus.mojo.keytool;
+
+/*
+ * Copyright 2005-2013 The Codehaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License" );
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the keystores modified by goals run with {@code writeBehind}, each of them once.
+ * <p>
+ * Bind it to the phase after which the keystores are needed on disk, in the last module of the reactor modifying
+ * them: keystores with deferred changes are not written otherwise.
+ *
+ * @since 2.1
+ */
+@Mojo(name = "flush", defaultPhase = LifecyclePhase.PREPARE_PACKAGE, threadSafe = true)
+public class FlushMojo extends AbstractKeyToolMojo {
+
+    private static final Logger log = LoggerFactory.getLogger(FlushMojo.class);
+
+    @Override
+    protected void doExecute() throws MojoExecutionException {
+        if (isSkip()) {
+            log.info(getMessage("disabled"));
+            return;
+        }
+
+        try {
+            int count = getKeyStoreCache().flush();
+            log.info("Wrote {} keystore(s) with deferred changes", count);
+        } catch (Exception e) {
+            throw new MojoExecutionException("Failed to write keystores: " + e.getMessage(), e);
+        }
+    }
+}
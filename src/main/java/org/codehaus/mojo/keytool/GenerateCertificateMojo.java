@@ -9,6 +9,7 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.mojo.keytool.services.CertificateGenerationService;
+import org.codehaus.mojo.keytool.services.SecureRandomStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,12 +64,14 @@ public class GenerateCertificateMojo extends AbstractKeyToolMojo {
     private CertificateGenerationService certGenService;
 
     @Override
-    public void execute() throws MojoExecutionException {
+    protected void doExecute() throws MojoExecutionException {
         if (isSkip()) {
             log.info("Skipping execution");
             return;
         }
 
+        SecureRandomStrategy secureRandom = getSecureRandomStrategy();
+
         createParentDirIfNecessary(outfile.getPath());
 
         try {
@@ -85,7 +88,8 @@ public class GenerateCertificateMojo extends AbstractKeyToolMojo {
                     validityInt,
                     sigalg,
                     rfc,
-                    exts != null && !exts.isEmpty() ? exts : null);
+                    exts != null && !exts.isEmpty() ? exts : null,
+                    secureRandom);
 
         } catch (Exception e) {
             throw new MojoExecutionException("Failed to generate certificate", e);
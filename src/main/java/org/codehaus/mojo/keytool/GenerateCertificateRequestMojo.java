@@ -54,7 +54,7 @@ public class GenerateCertificateRequestMojo extends AbstractKeyToolMojo {
     private CertificateGenerationService certGenService;
 
     @Override
-    public void execute() throws MojoExecutionException {
+    protected void doExecute() throws MojoExecutionException {
         if (isSkip()) {
             log.info("Skipping execution");
             return;
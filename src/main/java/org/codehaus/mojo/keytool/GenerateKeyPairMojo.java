@@ -25,6 +25,8 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.mojo.keytool.services.CertificateGenerationService;
+import org.codehaus.mojo.keytool.services.KeyPairCache;
+import org.codehaus.mojo.keytool.services.KeyPairSpec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,7 +38,7 @@ import org.slf4j.LoggerFactory;
  * @since 1.0
  */
 @Mojo(name = "generateKeyPair", threadSafe = true)
-public class GenerateKeyPairMojo extends AbstractKeyToolMojo {
+public class GenerateKeyPairMojo extends AbstractKeyStoreWriteMojo {
 
     private static final Logger log = LoggerFactory.getLogger(GenerateKeyPairMojo.class);
 
@@ -58,6 +60,17 @@ public class GenerateKeyPairMojo extends AbstractKeyToolMojo {
     @Parameter(defaultValue = "2048")
     private String keysize;
 
+    /**
+     * Named curve of EC keys, for example {@code secp256r1} (or {@code P-256}), {@code secp384r1} or
+     * {@code secp521r1}, used instead of {@code keysize}. With {@code keyalg} {@code EdDSA}, {@code Ed25519} (the
+     * default) or {@code Ed448}. The {@code Ed25519} and {@code Ed448} algorithms can also be given directly as
+     * {@code keyalg}, and need no key size.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private String groupname;
+
     @Parameter
     private String keypass;
 
@@ -73,37 +86,104 @@ public class GenerateKeyPairMojo extends AbstractKeyToolMojo {
     @Parameter
     private List<String> exts;
 
+    /**
+     * Number of key pairs of the same algorithm and size to keep generated ahead of time on background threads, so
+     * that the next executions of this goal in the build, for example in later modules, find their key pair ready.
+     * {@code 0} generates each key pair when needed.
+     *
+     * @since 2.1
+     */
+    @Parameter(property = "keytool.keyPairPool", defaultValue = "0")
+    private int keyPairPool;
+
+    /**
+     * Set to {@code true} to reuse the key pair cached by a previous build in {@link #keyPairCacheDirectory} for
+     * the same algorithm, key size and {@link #keyPairCacheSlot}, rather than generate a new one. Every build then
+     * gets the same key pair: only use it for test keys. The cached private key is encrypted with the key password,
+     * or the keystore password if there is none.
+     *
+     * @since 2.1
+     */
+    @Parameter(property = "keytool.keyPairCache", defaultValue = "false")
+    private boolean keyPairCache;
+
+    /**
+     * Name of the cached key pair, the alias if not set. Executions using the same slot, algorithm and key size
+     * share the same key pair.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private String keyPairCacheSlot;
+
+    /**
+     * Directory of the key pairs cached across builds.
+     *
+     * @since 2.1
+     */
+    @Parameter(
+            property = "keytool.keyPairCacheDirectory",
+            defaultValue = "${settings.localRepository}/.cache/keytool/key-pairs")
+    private File keyPairCacheDirectory;
+
+    /**
+     * Maximum number of key pairs kept in {@link #keyPairCacheDirectory}; the least recently used ones are deleted
+     * above it.
+     *
+     * @since 2.1
+     */
+    @Parameter(property = "keytool.keyPairCacheMaxEntries", defaultValue = "500")
+    private int keyPairCacheMaxEntries;
+
     @Inject
     private CertificateGenerationService certGenService;
 
     @Override
-    public void execute() throws MojoExecutionException {
+    protected void doExecute() throws MojoExecutionException {
         if (isSkip()) {
             log.info("Skipping execution");
             return;
         }
 
+        KeyPairCache cache = keyPairCache ? createKeyPairCache() : null;
         try {
             int keySizeInt = Integer.parseInt(keysize != null ? keysize : "2048");
             int validityInt = Integer.parseInt(validity != null ? validity : "90");
 
             List<String> extensions = exts != null && !exts.isEmpty() ? exts : null;
 
+            KeyPairSpec spec = KeyPairSpec.of(keyalg != null ? keyalg : "RSA", keySizeInt, groupname)
+                    .withSecureRandom(getSecureRandomStrategy());
+
+            certGenService.reserveKeyPairs(spec, keyPairPool);
             certGenService.generateKeyPair(
                     keystore,
                     storetype,
                     storepass != null ? storepass.toCharArray() : null,
                     alias,
-                    keyalg != null ? keyalg : "RSA",
-                    keySizeInt,
+                    spec,
                     sigalg,
                     dname,
                     validityInt,
                     keypass != null ? keypass.toCharArray() : null,
-                    extensions);
+                    extensions,
+                    getWriteOptions(),
+                    cache,
+                    keyPairCacheSlot != null ? keyPairCacheSlot : alias);
 
         } catch (Exception e) {
             throw new MojoExecutionException("Failed to generate key pair", e);
         }
     }
+
+    private KeyPairCache createKeyPairCache() throws MojoExecutionException {
+        String password = keypass != null ? keypass : storepass;
+        if (password == null || password.isEmpty()) {
+            throw new MojoExecutionException("The key pair cache needs a key or keystore password");
+        }
+        if (keyPairCacheSlot == null && alias == null) {
+            throw new MojoExecutionException("The key pair cache needs a slot or an alias");
+        }
+        return new KeyPairCache(keyPairCacheDirectory, keyPairCacheMaxEntries, password.toCharArray());
+    }
 }
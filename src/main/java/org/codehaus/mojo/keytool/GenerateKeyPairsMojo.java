@@ -0,0 +1,236 @@
+package org.codehaus.mojo.keytool;
+
+/*
+ * Copyright 2005-2013 The Codehaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License" );
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import javax.inject.Inject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.mojo.keytool.services.CertificateGenerationService;
+import org.codehaus.mojo.keytool.services.KeyPairSpec;
+import org.codehaus.mojo.keytool.services.SecureRandomStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * To generate many key pairs with self-signed certificates into a keystore, several at a time, and store them all
+ * with a single write of the keystore.
+ * <p>
+ * The key pairs are either given by {@code names}, or numbered from 1 to {@code count}. Their alias and
+ * distinguished name come from the {@code alias} and {@code dname} templates, in which {@code {name}} is replaced
+ * by the name of the key pair and {@code {index}} by its number, starting at 1.
+ *
+ * @since 2.1
+ */
+@Mojo(name = "generateKeyPairs", threadSafe = true)
+public class GenerateKeyPairsMojo extends AbstractKeyStoreWriteMojo {
+
+    private static final Logger log = LoggerFactory.getLogger(GenerateKeyPairsMojo.class);
+
+    private static final String NAME_PLACEHOLDER = "{name}";
+
+    private static final String INDEX_PLACEHOLDER = "{index}";
+
+    @Inject
+    private CertificateGenerationService certGenService;
+
+    /**
+     * Keystore location, created if missing.
+     *
+     * @since 2.1
+     */
+    @Parameter(required = true)
+    private File keystore;
+
+    /**
+     * Keystore type.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private String storetype;
+
+    /**
+     * Keystore password.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private String storepass;
+
+    /**
+     * Names of the key pairs to generate. If not set, {@code count} key pairs named after their number are
+     * generated.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private List<String> names;
+
+    /**
+     * Number of key pairs to generate when {@code names} is not set.
+     *
+     * @since 2.1
+     */
+    @Parameter(defaultValue = "0")
+    private int count;
+
+    /**
+     * Template of the alias of each key pair.
+     *
+     * @since 2.1
+     */
+    @Parameter(defaultValue = NAME_PLACEHOLDER)
+    private String alias;
+
+    /**
+     * Template of the distinguished name of each certificate, for example {@code CN={name}.example.com, O=Test}.
+     *
+     * @since 2.1
+     */
+    @Parameter(required = true)
+    private String dname;
+
+    /**
+     * Key algorithm.
+     *
+     * @since 2.1
+     */
+    @Parameter(defaultValue = "RSA")
+    private String keyalg;
+
+    /**
+     * Key size.
+     *
+     * @since 2.1
+     */
+    @Parameter(defaultValue = "2048")
+    private int keysize;
+
+    /**
+     * Named curve of EC keys, for example {@code secp256r1} (or {@code P-256}), used instead of {@code keysize}.
+     * With {@code keyalg} {@code EdDSA}, {@code Ed25519} (the default) or {@code Ed448}.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private String groupname;
+
+    /**
+     * Key password, the keystore password if not set.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private String keypass;
+
+    /**
+     * Signature algorithm, one matching the key algorithm if not set.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private String sigalg;
+
+    /**
+     * Validity of the certificates, in days.
+     *
+     * @since 2.1
+     */
+    @Parameter(defaultValue = "90")
+    private int validity;
+
+    /**
+     * Extensions of every certificate.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private List<String> exts;
+
+    /**
+     * Number of key pairs generated at a time, {@code 0} for the number of processors.
+     *
+     * @since 2.1
+     */
+    @Parameter(defaultValue = "0")
+    private int threads;
+
+    @Override
+    protected void doExecute() throws MojoExecutionException {
+        if (isSkip()) {
+            log.info(getMessage("disabled"));
+            return;
+        }
+
+        List<String> keyNames = keyNames();
+        if (keyNames.isEmpty()) {
+            log.warn("No key pair to generate, set names or count");
+            return;
+        }
+
+        List<String> aliases = new ArrayList<>(keyNames.size());
+        List<String> dnames = new ArrayList<>(keyNames.size());
+        for (int i = 0; i < keyNames.size(); i++) {
+            aliases.add(expand(alias, keyNames.get(i), i + 1));
+            dnames.add(expand(dname, keyNames.get(i), i + 1));
+        }
+
+        SecureRandomStrategy secureRandom = getSecureRandomStrategy();
+        KeyPairSpec spec;
+        try {
+            spec = KeyPairSpec.of(keyalg, keysize, groupname).withSecureRandom(secureRandom);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+
+        char[] password = storepass != null ? storepass.toCharArray() : null;
+        certGenService.generateKeyPairs(
+                keystore,
+                storetype,
+                password,
+                aliases,
+                dnames,
+                spec,
+                sigalg,
+                validity,
+                keypass != null ? keypass.toCharArray() : password,
+                exts != null && !exts.isEmpty() ? exts : null,
+                threads,
+                getWriteOptions());
+    }
+
+    private List<String> keyNames() {
+        if (names != null && !names.isEmpty()) {
+            return names;
+        }
+        List<String> numbered = new ArrayList<>(Math.max(count, 0));
+        for (int i = 1; i <= count; i++) {
+            numbered.add(String.valueOf(i));
+        }
+        return numbered;
+    }
+
+    private static String expand(String template, String name, int index) {
+        return template.replace(NAME_PLACEHOLDER, name).replace(INDEX_PLACEHOLDER, String.valueOf(index));
+    }
+}
@@ -35,7 +35,7 @@ import org.slf4j.LoggerFactory;
  * @since 1.2
  */
 @Mojo(name = "generateSecretKey", threadSafe = true)
-public class GenerateSecretKeyMojo extends AbstractKeyToolMojo {
+public class GenerateSecretKeyMojo extends AbstractKeyStoreWriteMojo {
 
     /**
      * Keystore location.
@@ -95,12 +95,21 @@ public class GenerateSecretKeyMojo extends AbstractKeyToolMojo {
 
     /** {@inheritDoc} */
     @Override
-    public void execute() throws MojoExecutionException {
+    protected void doExecute() throws MojoExecutionException {
         if (isSkip()) {
             log.info("Skipping execution");
             return;
         }
 
-        secretKeyService.generateSecretKey(keystore, storetype, storepass, alias, keyalg, keysize, keypass);
+        secretKeyService.generateSecretKey(
+                keystore,
+                storetype,
+                storepass,
+                alias,
+                keyalg,
+                keysize,
+                keypass,
+                getWriteOptions(),
+                getSecureRandomStrategy());
     }
 }
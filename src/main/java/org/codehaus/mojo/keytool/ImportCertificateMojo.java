@@ -39,7 +39,7 @@ import org.slf4j.LoggerFactory;
  * @since 1.2
  */
 @Mojo(name = "importCertificate", threadSafe = true)
-public class ImportCertificateMojo extends AbstractKeyToolMojo {
+public class ImportCertificateMojo extends AbstractKeyStoreWriteMojo {
 
     private static final Logger log = LoggerFactory.getLogger(ImportCertificateMojo.class);
 
@@ -125,7 +125,7 @@ public class ImportCertificateMojo extends AbstractKeyToolMojo {
 
     /** {@inheritDoc} */
     @Override
-    public void execute() throws MojoExecutionException {
+    protected void doExecute() throws MojoExecutionException {
 
         if (isSkip()) {
             log.info(getMessage("disabled"));
@@ -153,7 +153,8 @@ public class ImportCertificateMojo extends AbstractKeyToolMojo {
             char[] password = (storepass != null) ? storepass.toCharArray() : null;
             char[] keyPassword = (keypass != null) ? keypass.toCharArray() : null;
 
-            service.importCertificate(keystore, storetype, password, alias, certFile, skipIfAliasExists, keyPassword);
+            service.importCertificate(
+                    keystore, storetype, password, alias, certFile, skipIfAliasExists, keyPassword, getWriteOptions());
 
         } catch (Exception e) {
             throw new MojoExecutionException("Failed to import certificate: " + e.getMessage(), e);
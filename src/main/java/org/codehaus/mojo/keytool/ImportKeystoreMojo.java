@@ -24,6 +24,7 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.mojo.keytool.services.KeyStoreManagementService;
+import org.codehaus.mojo.keytool.services.KeyStoreShards;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,7 +38,7 @@ import org.slf4j.LoggerFactory;
  * @since 1.2
  */
 @Mojo(name = "importKeystore", threadSafe = true)
-public class ImportKeystoreMojo extends AbstractKeyToolMojo {
+public class ImportKeystoreMojo extends AbstractKeyStoreWriteMojo {
 
     private static final Logger log = LoggerFactory.getLogger(ImportKeystoreMojo.class);
 
@@ -205,9 +206,39 @@ public class ImportKeystoreMojo extends AbstractKeyToolMojo {
     @Parameter
     private boolean skipIfExist;
 
+    /**
+     * If value is {@code true}, the destination keystore is synchronized with the source keystore instead of
+     * receiving all its entries: only the entries added, changed or renamed since the last import are written, and
+     * the entries no longer in the source keystore are removed. Ignored when {@code srcalias} is set.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private boolean sync;
+
+    /**
+     * If value is {@code true}, trusted certificates already in the destination keystore, or imported earlier in the
+     * same run, under another alias are not imported again. Ignored when {@code srcalias} or {@code sync} is set.
+     *
+     * @since 2.1
+     */
+    @Parameter
+    private boolean dedup;
+
+    /**
+     * Number of shards to split the destination keystore in, {@code 0} not to split it. When set, the entries are
+     * written to {@code shards} keystores next to {@code destkeystore}, partitioned by certificate fingerprint, with
+     * a {@code .shards} manifest describing them; only the shards whose entries changed are written. Cannot be
+     * combined with {@code srcalias} or {@code sync}.
+     *
+     * @since 2.1
+     */
+    @Parameter(defaultValue = "0")
+    private int shards;
+
     /** {@inheritDoc} */
     @Override
-    public void execute() throws MojoExecutionException {
+    protected void doExecute() throws MojoExecutionException {
         if (isSkip()) {
             log.info("Skipping execution");
             return;
@@ -215,7 +246,9 @@ public class ImportKeystoreMojo extends AbstractKeyToolMojo {
 
         if (skipIfExist) {
             // check if keystore already exist
-            File destinationKeystoreFile = new File(destkeystore);
+            File destinationKeystoreFile = shards > 0
+                    ? new KeyStoreShards(new File(destkeystore), shards).getManifestFile()
+                    : new File(destkeystore);
             boolean keystoreFileExists = destinationKeystoreFile.exists();
 
             if (keystoreFileExists) {
@@ -224,7 +257,41 @@ public class ImportKeystoreMojo extends AbstractKeyToolMojo {
             }
         }
 
+        if (shards > 0 && (sync || (srcalias != null && !srcalias.isEmpty()))) {
+            throw new MojoExecutionException("shards cannot be combined with sync or srcalias");
+        }
+
         try {
+            if (shards > 0) {
+                service.importKeystoreSharded(
+                        new File(srckeystore),
+                        srcstoretype,
+                        srcstorepass != null ? srcstorepass.toCharArray() : null,
+                        new File(destkeystore),
+                        deststoretype,
+                        deststorepass != null ? deststorepass.toCharArray() : null,
+                        srckeypass != null ? srckeypass.toCharArray() : null,
+                        destkeypass != null ? destkeypass.toCharArray() : null,
+                        shards,
+                        dedup,
+                        getWriteOptions());
+                return;
+            }
+
+            if (sync && (srcalias == null || srcalias.isEmpty())) {
+                service.syncKeystore(
+                        new File(srckeystore),
+                        srcstoretype,
+                        srcstorepass != null ? srcstorepass.toCharArray() : null,
+                        new File(destkeystore),
+                        deststoretype,
+                        deststorepass != null ? deststorepass.toCharArray() : null,
+                        srckeypass != null ? srckeypass.toCharArray() : null,
+                        destkeypass != null ? destkeypass.toCharArray() : null,
+                        getWriteOptions());
+                return;
+            }
+
             // Using injected service
             service.importKeystore(
                     new File(srckeystore),
@@ -236,7 +303,9 @@ public class ImportKeystoreMojo extends AbstractKeyToolMojo {
                     srcalias,
                     destalias,
                     srckeypass != null ? srckeypass.toCharArray() : null,
-                    destkeypass != null ? destkeypass.toCharArray() : null);
+                    destkeypass != null ? destkeypass.toCharArray() : null,
+                    dedup,
+                    getWriteOptions());
         } catch (Exception e) {
             throw new MojoExecutionException("Failed to import keystore", e);
         }
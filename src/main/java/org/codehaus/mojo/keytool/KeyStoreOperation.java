@@ -0,0 +1,213 @@
+package org.codehaus.mojo.keytool;
+
+/*
+ * Copyright 2005-2013 The Codehaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License" );
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+
+/**
+ * One keystore operation of the {@link BatchMojo batch} goal.
+ * <p>
+ * The {@link #getType() type} selects the operation, the other fields are only read by the operations that
+ * need them:
+ * <ul>
+ *   <li>{@code importCertificate}: {@code alias}, {@code file}, {@code keypass}, {@code skipIfAliasExists}</li>
+ *   <li>{@code deleteAlias}: {@code alias}</li>
+ *   <li>{@code changeAlias}: {@code alias}, {@code destalias}, {@code keypass}</li>
+ *   <li>{@code changeKeyPassword}: {@code alias}, {@code keypass}, {@code newPassword}</li>
+ *   <li>{@code generateSecretKey}: {@code alias}, {@code keyalg}, {@code keysize}, {@code keypass}</li>
+ * </ul>
+ *
+ * @since 2.1
+ */
+public class KeyStoreOperation {
+
+    /**
+     * Operation to run, named after the goal running it on its own.
+     */
+    private String type;
+
+    /**
+     * Alias of the entry the operation works on.
+     */
+    private String alias;
+
+    /**
+     * Destination alias of a {@code changeAlias} operation.
+     */
+    private String destalias;
+
+    /**
+     * Certificate file of an {@code importCertificate} operation.
+     */
+    private File file;
+
+    /**
+     * Key password, defaults to the keystore password.
+     */
+    private String keypass;
+
+    /**
+     * New key password of a {@code changeKeyPassword} operation.
+     */
+    private String newPassword;
+
+    /**
+     * Key algorithm of a {@code generateSecretKey} operation.
+     */
+    private String keyalg;
+
+    /**
+     * Key size of a {@code generateSecretKey} operation.
+     */
+    private String keysize;
+
+    /**
+     * Skip an {@code importCertificate} operation if the alias already exists.
+     */
+    private boolean skipIfAliasExists;
+
+    /**
+     * @return the operation type
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @param type the operation type to set
+     */
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * @return the alias
+     */
+    public String getAlias() {
+        return alias;
+    }
+
+    /**
+     * @param alias the alias to set
+     */
+    public void setAlias(String alias) {
+        this.alias = alias;
+    }
+
+    /**
+     * @return the destination alias
+     */
+    public String getDestalias() {
+        return destalias;
+    }
+
+    /**
+     * @param destalias the destination alias to set
+     */
+    public void setDestalias(String destalias) {
+        this.destalias = destalias;
+    }
+
+    /**
+     * @return the certificate file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @param file the certificate file to set
+     */
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the key password
+     */
+    public String getKeypass() {
+        return keypass;
+    }
+
+    /**
+     * @param keypass the key password to set
+     */
+    public void setKeypass(String keypass) {
+        this.keypass = keypass;
+    }
+
+    /**
+     * @return the new key password
+     */
+    public String getNewPassword() {
+        return newPassword;
+    }
+
+    /**
+     * @param newPassword the new key password to set
+     */
+    public void setNewPassword(String newPassword) {
+        this.newPassword = newPassword;
+    }
+
+    /**
+     * @return the key algorithm
+     */
+    public String getKeyalg() {
+        return keyalg;
+    }
+
+    /**
+     * @param keyalg the key algorithm to set
+     */
+    public void setKeyalg(String keyalg) {
+        this.keyalg = keyalg;
+    }
+
+    /**
+     * @return the key size
+     */
+    public String getKeysize() {
+        return keysize;
+    }
+
+    /**
+     * @param keysize the key size to set
+     */
+    public void setKeysize(String keysize) {
+        this.keysize = keysize;
+    }
+
+    /**
+     * @return {@code true} to skip an import if the alias already exists
+     */
+    public boolean isSkipIfAliasExists() {
+        return skipIfAliasExists;
+    }
+
+    /**
+     * @param skipIfAliasExists {@code true} to skip an import if the alias already exists
+     */
+    public void setSkipIfAliasExists(boolean skipIfAliasExists) {
+        this.skipIfAliasExists = skipIfAliasExists;
+    }
+
+    @Override
+    public String toString() {
+        return type + (alias != null ? " " + alias : "");
+    }
+}
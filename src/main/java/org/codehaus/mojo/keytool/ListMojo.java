@@ -55,7 +55,7 @@ public class ListMojo extends AbstractKeyToolMojo {
     private String alias;
 
     @Override
-    public void execute() throws MojoExecutionException {
+    protected void doExecute() throws MojoExecutionException {
         if (isSkip()) {
             log.info(getMessage("disabled"));
             return;
@@ -65,7 +65,7 @@ public class ListMojo extends AbstractKeyToolMojo {
             char[] password = (storepass != null) ? storepass.toCharArray() : null;
 
             // Using injected service
-            service.listAliases(keystore, storetype, password, alias);
+            service.listAliases(keystore, storetype, password, alias, isMetadataSidecar());
 
         } catch (Exception e) {
             throw new MojoExecutionException("Failed to list keystore: " + e.getMessage(), e);
@@ -0,0 +1,112 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.security.UnrecoverableKeyException;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Access to the Bouncy Castle provider for the services that need it, without registering it.
+ * <p>
+ * Creating the provider registers thousands of algorithms, so services first try the JDK providers and only ask
+ * for this one for what the JDK does not provide. It is then created once, by the first thread asking for it, and
+ * only added to the JVM-wide providers when a keystore holds a key of an algorithm the JDK does not provide, such as
+ * an EdDSA key before Java 15: the JDK keystores only find the key factories of registered providers.
+ *
+ * @since 2.1
+ */
+final class BouncyCastle {
+
+    private static final Logger log = LoggerFactory.getLogger(BouncyCastle.class);
+
+    private BouncyCastle() {
+        // static only
+    }
+
+    /**
+     * @return the registered Bouncy Castle provider, or a private instance if it is not registered
+     */
+    static Provider provider() {
+        Provider registered = Security.getProvider(BouncyCastleProvider.PROVIDER_NAME);
+        return registered != null ? registered : Holder.PROVIDER;
+    }
+
+    /**
+     * Read a key from a keystore, registering the Bouncy Castle provider, last, if the key is of an algorithm the JDK
+     * does not provide, which the JDK PKCS12 keystore fails to read otherwise.
+     *
+     * @param keystore keystore
+     * @param alias alias of the key
+     * @param password password of the key
+     * @return the key, {@code null} if the alias does not name a key
+     * @throws GeneralSecurityException if the key cannot be read
+     */
+    static Key getKey(KeyStore keystore, String alias, char[] password) throws GeneralSecurityException {
+        try {
+            return keystore.getKey(alias, password);
+        } catch (UnrecoverableKeyException e) {
+            if (!isMissingAlgorithm(e)) {
+                throw e;
+            }
+            register();
+            return keystore.getKey(alias, password);
+        }
+    }
+
+    private static boolean isMissingAlgorithm(Throwable e) {
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof NoSuchAlgorithmException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static synchronized void register() {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            log.debug("Registering the Bouncy Castle provider to read a key of an algorithm the JDK does not provide");
+            Security.addProvider(Holder.PROVIDER);
+        }
+    }
+
+    /**
+     * Initialized on first use only, which the JVM does once and thread-safely. Creating the provider is done here
+     * rather than in the outer class, whose verification would otherwise load the provider class.
+     */
+    private static final class Holder {
+        private static final Provider PROVIDER = load();
+
+        private static Provider load() {
+            long start = System.nanoTime();
+            Provider provider = new BouncyCastleProvider();
+            log.debug("Loaded the Bouncy Castle provider in {} ms", (System.nanoTime() - start) / 1_000_000L);
+            return provider;
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.codehaus.mojo.keytool.services;
  * under the License.
  */
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.security.auth.x500.X500Principal;
@@ -30,22 +31,32 @@ import java.io.FileWriter;
 import java.io.InputStream;
 import java.math.BigInteger;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.SecureRandom;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.security.interfaces.ECKey;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.edec.EdECObjectIdentifiers;
 import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.BasicConstraints;
 import org.bouncycastle.asn1.x509.Extension;
@@ -58,11 +69,12 @@ import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openssl.PEMException;
 import org.bouncycastle.openssl.PEMParser;
 import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
 import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
 import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.bouncycastle.pkcs.PKCS10CertificationRequest;
 import org.bouncycastle.pkcs.PKCS10CertificationRequestBuilder;
@@ -82,7 +94,70 @@ public class CertificateGenerationService {
 
     private static final Logger log = LoggerFactory.getLogger(CertificateGenerationService.class);
     private static final String DEFAULT_SIGNATURE_ALGORITHM = "SHA256WithRSA";
-    private static final String BOUNCY_CASTLE_PROVIDER = "BC";
+
+    private static final ThreadFactory KEY_GENERATION_THREADS = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "keytool-keygen-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private final KeyStoreCache keyStoreCache;
+
+    private final KeyPairPool keyPairPool;
+
+    private final SecureRandomSource secureRandomSource;
+
+    /**
+     * Creates a service with its own keystore cache.
+     */
+    public CertificateGenerationService() {
+        this(new KeyStoreCache());
+    }
+
+    /**
+     * Creates a service sharing the given keystore cache.
+     *
+     * @param keyStoreCache keystore cache
+     */
+    public CertificateGenerationService(KeyStoreCache keyStoreCache) {
+        this(keyStoreCache, new SecureRandomSource());
+    }
+
+    private CertificateGenerationService(KeyStoreCache keyStoreCache, SecureRandomSource secureRandomSource) {
+        this(keyStoreCache, new KeyPairPool(secureRandomSource), secureRandomSource);
+    }
+
+    /**
+     * Creates a service sharing the given keystore cache, key pair pool and secure random source.
+     *
+     * @param keyStoreCache keystore cache
+     * @param keyPairPool key pair pool
+     * @param secureRandomSource secure random source, for certificate serial numbers
+     * @since 2.1
+     */
+    @Inject
+    public CertificateGenerationService(
+            KeyStoreCache keyStoreCache, KeyPairPool keyPairPool, SecureRandomSource secureRandomSource) {
+        this.keyStoreCache = keyStoreCache;
+        this.keyPairPool = keyPairPool;
+        this.secureRandomSource = secureRandomSource;
+    }
+
+    /**
+     * Keep key pairs of a spec ready for the next key pair generations, see {@link KeyPairPool}.
+     *
+     * @param spec key pair spec
+     * @param count number of key pairs to keep ready, {@code 0} for none
+     * @since 2.1
+     */
+    public void reserveKeyPairs(KeyPairSpec spec, int count) {
+        keyPairPool.reserve(spec, count);
+    }
 
     /**
      * Generate a key pair and self-signed certificate.
@@ -100,33 +175,257 @@ public class CertificateGenerationService {
             char[] keypass,
             List<String> exts)
             throws MojoExecutionException {
+        generateKeyPair(
+                keystore,
+                storetype,
+                storepass,
+                alias,
+                keyalg,
+                keysize,
+                sigalg,
+                dname,
+                validity,
+                keypass,
+                exts,
+                KeyStoreWriteOptions.defaults());
+    }
+
+    /**
+     * Generate a key pair and self-signed certificate.
+     *
+     * @param writeOptions how to write the keystore
+     */
+    public void generateKeyPair(
+            File keystore,
+            String storetype,
+            char[] storepass,
+            String alias,
+            String keyalg,
+            int keysize,
+            String sigalg,
+            String dname,
+            int validity,
+            char[] keypass,
+            List<String> exts,
+            KeyStoreWriteOptions writeOptions)
+            throws MojoExecutionException {
+        generateKeyPair(
+                keystore,
+                storetype,
+                storepass,
+                alias,
+                KeyPairSpec.of(keyalg, keysize, null),
+                sigalg,
+                dname,
+                validity,
+                keypass,
+                exts,
+                writeOptions,
+                null,
+                null);
+    }
+
+    /**
+     * Generate a key pair and self-signed certificate, reusing the key pair cached in a slot of a
+     * {@link KeyPairCache}, or caching the generated one there.
+     *
+     * @param spec key pair spec
+     * @param sigalg signature algorithm, {@code null} to pick one matching the key
+     * @param writeOptions how to write the keystore
+     * @param keyPairCache cache of key pairs, {@code null} to always generate the key pair
+     * @param slot slot of the key pair in the cache
+     * @since 2.1
+     */
+    public void generateKeyPair(
+            File keystore,
+            String storetype,
+            char[] storepass,
+            String alias,
+            KeyPairSpec spec,
+            String sigalg,
+            String dname,
+            int validity,
+            char[] keypass,
+            List<String> exts,
+            KeyStoreWriteOptions writeOptions,
+            KeyPairCache keyPairCache,
+            String slot)
+            throws MojoExecutionException {
 
         try {
-            ensureBouncyCastleProvider();
+            KeyStoreMutation mutation =
+                    generateKeyPairMutation(alias, spec, sigalg, dname, validity, keypass, exts, keyPairCache, slot);
+
+            if (keystore == null) {
+                throw new IllegalArgumentException("Keystore file cannot be null");
+            }
+
+            try (KeyStoreSession session =
+                    keyStoreCache.openSession(keystore, storetype, storepass, true, writeOptions)) {
+                session.queue(mutation);
+                session.commit();
+            }
+            log.info("Key pair generation completed successfully");
+
+        } catch (Exception e) {
+            throw new MojoExecutionException("Failed to generate key pair", e);
+        }
+    }
 
-            // Generate key pair
-            log.info("Generating {} key pair with key size {}", keyalg, keysize);
-            KeyPair keyPair = generateKeyPair(keyalg, keysize);
+    /**
+     * Generate a key pair and its self-signed certificate, and return the mutation storing them.
+     * <p>
+     * Key generation happens right away, only storing the entry is deferred to the commit of the session.
+     *
+     * @param alias alias of the key entry
+     * @param keyalg key algorithm
+     * @param keysize key size
+     * @param sigalg signature algorithm, {@code null} to pick one matching the key algorithm
+     * @param dname distinguished name of the certificate
+     * @param validity certificate validity in days
+     * @param keypass key password
+     * @param exts certificate extensions, may be {@code null}
+     * @return the mutation, to be queued in a {@link KeyStoreSession}
+     * @throws Exception if the key pair or the certificate cannot be generated
+     */
+    public KeyStoreMutation generateKeyPairMutation(
+            String alias,
+            String keyalg,
+            int keysize,
+            String sigalg,
+            String dname,
+            int validity,
+            char[] keypass,
+            List<String> exts)
+            throws Exception {
+        return generateKeyPairMutation(
+                alias, KeyPairSpec.of(keyalg, keysize, null), sigalg, dname, validity, keypass, exts, null, null);
+    }
+
+    /**
+     * Same as {@link #generateKeyPairMutation(String, String, int, String, String, int, char[], List)}, for a
+     * {@link KeyPairSpec}, reusing the key pair cached in a slot of a {@link KeyPairCache}, or caching the generated
+     * one there.
+     *
+     * @param spec key pair spec
+     * @param keyPairCache cache of key pairs, {@code null} to always generate the key pair
+     * @param slot slot of the key pair in the cache
+     * @since 2.1
+     */
+    public KeyStoreMutation generateKeyPairMutation(
+            String alias,
+            KeyPairSpec spec,
+            String sigalg,
+            String dname,
+            int validity,
+            char[] keypass,
+            List<String> exts,
+            KeyPairCache keyPairCache,
+            String slot)
+            throws Exception {
 
-            // Determine signature algorithm
-            String effectiveSigAlg = determineSignatureAlgorithm(keyalg, sigalg);
+        KeyPair keyPair = obtainKeyPair(spec, keyPairCache, slot);
 
-            // Generate self-signed certificate
-            X509Certificate cert = generateSelfSignedCertificate(keyPair, dname, validity, effectiveSigAlg, exts);
-            log.info("Generated self-signed certificate for: {}", dname);
+        // Determine signature algorithm
+        String effectiveSigAlg = determineSignatureAlgorithm(keyPair.getPrivate(), sigalg);
 
-            // Load or create keystore and store the key pair
-            KeyStore ks = loadOrCreateKeyStore(keystore, storetype, storepass);
-            Certificate[] chain = new Certificate[] {cert};
-            ks.setKeyEntry(alias, keyPair.getPrivate(), keypass, chain);
+        // Generate self-signed certificate
+        X509Certificate cert =
+                generateSelfSignedCertificate(keyPair, dname, validity, effectiveSigAlg, exts, spec.getSecureRandom());
+        log.info("Generated self-signed certificate for: {}", dname);
+
+        Certificate[] chain = new Certificate[] {cert};
+        return (ks, protection) -> {
+            protection.setKeyEntry(ks, alias, keyPair.getPrivate(), keypass, chain);
             log.info("Stored key pair with alias: {}", alias);
+            return true;
+        };
+    }
 
-            // Save keystore
-            saveKeyStore(ks, keystore, storepass);
-            log.info("Key pair generation completed successfully");
+    /**
+     * Generate key pairs and their self-signed certificates on a worker pool, then store them all with a single
+     * write of the keystore.
+     * <p>
+     * If any key pair cannot be generated, nothing is written.
+     *
+     * @param keystore keystore file, created if missing
+     * @param storetype keystore type
+     * @param storepass keystore password
+     * @param aliases alias of each key entry
+     * @param dnames distinguished name of each certificate, in the same order as the aliases
+     * @param spec key pair spec
+     * @param sigalg signature algorithm, {@code null} to pick one matching the key
+     * @param validity certificate validity in days
+     * @param keypass key password
+     * @param exts certificate extensions, may be {@code null}
+     * @param threads number of workers, {@code 0} or less for the number of processors
+     * @param writeOptions how to write the keystore
+     * @throws MojoExecutionException if a key pair cannot be generated or the keystore cannot be written
+     * @since 2.1
+     */
+    public void generateKeyPairs(
+            File keystore,
+            String storetype,
+            char[] storepass,
+            List<String> aliases,
+            List<String> dnames,
+            KeyPairSpec spec,
+            String sigalg,
+            int validity,
+            char[] keypass,
+            List<String> exts,
+            int threads,
+            KeyStoreWriteOptions writeOptions)
+            throws MojoExecutionException {
 
+        if (keystore == null) {
+            throw new IllegalArgumentException("Keystore file cannot be null");
+        }
+        if (aliases.size() != dnames.size()) {
+            throw new IllegalArgumentException("Each alias needs a distinguished name");
+        }
+        Set<String> distinct = new HashSet<>();
+        for (String alias : aliases) {
+            if (!distinct.add(alias)) {
+                throw new MojoExecutionException("Alias " + alias + " is generated more than once");
+            }
+        }
+        if (aliases.isEmpty()) {
+            return;
+        }
+
+        int workers = Math.min(
+                aliases.size(), threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        log.info("Generating {} {} key pair(s) on {} thread(s)", aliases.size(), spec, workers);
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers, KEY_GENERATION_THREADS);
+        try {
+            List<Future<KeyStoreMutation>> generations = new ArrayList<>(aliases.size());
+            for (int i = 0; i < aliases.size(); i++) {
+                String alias = aliases.get(i);
+                String dname = dnames.get(i);
+                generations.add(executor.submit(() ->
+                        generateKeyPairMutation(alias, spec, sigalg, dname, validity, keypass, exts, null, null)));
+            }
+
+            try (KeyStoreSession session =
+                    keyStoreCache.openSession(keystore, storetype, storepass, true, writeOptions)) {
+                for (Future<KeyStoreMutation> generation : generations) {
+                    session.queue(generation.get());
+                }
+                session.commit();
+            }
+            log.info("Stored {} key pair(s) in {}", aliases.size(), keystore);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while generating key pairs", e);
+        } catch (ExecutionException e) {
+            throw new MojoExecutionException("Failed to generate key pairs", e.getCause());
         } catch (Exception e) {
-            throw new MojoExecutionException("Failed to generate key pair", e);
+            throw new MojoExecutionException("Failed to generate key pairs", e);
+        } finally {
+            executor.shutdownNow();
         }
     }
 
@@ -146,8 +445,6 @@ public class CertificateGenerationService {
             throws MojoExecutionException {
 
         try {
-            ensureBouncyCastleProvider();
-
             // Load keystore and retrieve key/certificate
             KeyStore ks = loadKeyStore(keystore, storetype, storepass);
             PrivateKey privateKey = getPrivateKey(ks, alias, keypass);
@@ -164,8 +461,8 @@ public class CertificateGenerationService {
             addExtensionsToCSR(csrBuilder, exts, cert);
 
             // Sign and write CSR
-            String signatureAlg = sigalg != null ? sigalg : DEFAULT_SIGNATURE_ALGORITHM;
-            ContentSigner signer = new JcaContentSignerBuilder(signatureAlg).build(privateKey);
+            String signatureAlg = determineSignatureAlgorithm(privateKey, sigalg);
+            ContentSigner signer = contentSigner(signatureAlg, privateKey);
             PKCS10CertificationRequest csr = csrBuilder.build(signer);
 
             writePEMObject(outputFile, csr);
@@ -193,10 +490,44 @@ public class CertificateGenerationService {
             boolean rfc,
             List<String> exts)
             throws MojoExecutionException {
+        generateCertificate(
+                keystore,
+                storetype,
+                storepass,
+                alias,
+                keypass,
+                infile,
+                outfile,
+                dname,
+                validity,
+                sigalg,
+                rfc,
+                exts,
+                SecureRandomStrategy.DEFAULT);
+    }
 
-        try {
-            ensureBouncyCastleProvider();
+    /**
+     * Generate certificate from a certificate request, with a serial number from the given secure random strategy.
+     *
+     * @since 2.1
+     */
+    public void generateCertificate(
+            File keystore,
+            String storetype,
+            char[] storepass,
+            String alias,
+            char[] keypass,
+            File infile,
+            File outfile,
+            String dname,
+            int validity,
+            String sigalg,
+            boolean rfc,
+            List<String> exts,
+            SecureRandomStrategy secureRandom)
+            throws MojoExecutionException {
 
+        try {
             // Load keystore and signing credentials
             KeyStore ks = loadKeyStore(keystore, storetype, storepass);
             PrivateKey signingKey = getPrivateKey(ks, alias, keypass);
@@ -212,7 +543,8 @@ public class CertificateGenerationService {
             log.info("Issuer X500Name: {}", issuer);
 
             // Build certificate
-            X509Certificate certificate = buildSignedCertificate(csr, issuer, signingKey, validity, sigalg, exts);
+            X509Certificate certificate =
+                    buildSignedCertificate(csr, issuer, signingKey, validity, sigalg, exts, secureRandom);
 
             log.info("Generated certificate for: {}", subject);
 
@@ -227,42 +559,93 @@ public class CertificateGenerationService {
 
     // ==================== Private Helper Methods ====================
 
-    private void ensureBouncyCastleProvider() {
-        if (java.security.Security.getProvider(BOUNCY_CASTLE_PROVIDER) == null) {
-            java.security.Security.addProvider(new BouncyCastleProvider());
+    /**
+     * Signer using the JDK providers, or Bouncy Castle for the signature algorithms they do not provide.
+     */
+    private static ContentSigner contentSigner(String signatureAlgorithm, PrivateKey key)
+            throws OperatorCreationException {
+        try {
+            return new JcaContentSignerBuilder(signatureAlgorithm).build(key);
+        } catch (OperatorCreationException e) {
+            log.debug("No JDK provider signs with {}, using Bouncy Castle", signatureAlgorithm);
+            return new JcaContentSignerBuilder(signatureAlgorithm)
+                    .setProvider(BouncyCastle.provider())
+                    .build(key);
         }
     }
 
-    private KeyPair generateKeyPair(String keyalg, int keysize) throws Exception {
-        KeyPairGenerator keyGen = KeyPairGenerator.getInstance(keyalg);
-        keyGen.initialize(keysize, new SecureRandom());
-        return keyGen.generateKeyPair();
+    /**
+     * Public key using the JDK providers, or Bouncy Castle for the key algorithms they do not provide.
+     */
+    private static PublicKey publicKey(SubjectPublicKeyInfo publicKeyInfo) throws PEMException {
+        try {
+            return new JcaPEMKeyConverter().getPublicKey(publicKeyInfo);
+        } catch (PEMException e) {
+            return new JcaPEMKeyConverter().setProvider(BouncyCastle.provider()).getPublicKey(publicKeyInfo);
+        }
     }
 
-    private String determineSignatureAlgorithm(String keyalg, String sigalg) {
+    private KeyPair generateKeyPair(KeyPairSpec spec) throws Exception {
+        return keyPairPool.take(spec);
+    }
+
+    private KeyPair obtainKeyPair(KeyPairSpec spec, KeyPairCache keyPairCache, String slot) throws Exception {
+        if (keyPairCache == null) {
+            log.info("Generating {} key pair", spec);
+            return generateKeyPair(spec);
+        }
+
+        KeyPair keyPair = keyPairCache.get(spec, slot);
+        if (keyPair != null) {
+            log.info("Reusing cached {} key pair of slot {}", spec, slot);
+            return keyPair;
+        }
+        log.info("Generating {} key pair for slot {}", spec, slot);
+        keyPair = generateKeyPair(spec);
+        keyPairCache.put(spec, slot, keyPair);
+        return keyPair;
+    }
+
+    private String determineSignatureAlgorithm(PrivateKey key, String sigalg) {
         if (sigalg != null) {
             return sigalg;
         }
 
-        // Default signature algorithms based on key algorithm
-        switch (keyalg.toUpperCase()) {
+        // Default signature algorithms based on the key, with a hash as strong as the curve for EC keys
+        switch (key.getAlgorithm().toUpperCase(Locale.ROOT)) {
             case "EC":
-                return "SHA256withECDSA";
+            case "ECDSA":
+                int fieldSize = ((ECKey) key).getParams().getCurve().getField().getFieldSize();
+                return fieldSize > 384 ? "SHA512withECDSA" : fieldSize > 256 ? "SHA384withECDSA" : "SHA256withECDSA";
             case "DSA":
                 return "SHA256WithDSA";
+            case "ED25519":
+                return KeyPairSpec.ED25519;
+            case "ED448":
+                return KeyPairSpec.ED448;
+            case "EDDSA":
+                ASN1ObjectIdentifier curve = PrivateKeyInfo.getInstance(key.getEncoded())
+                        .getPrivateKeyAlgorithm()
+                        .getAlgorithm();
+                return EdECObjectIdentifiers.id_Ed448.equals(curve) ? KeyPairSpec.ED448 : KeyPairSpec.ED25519;
             case "RSA":
             default:
-                return "SHA256WithRSA";
+                return DEFAULT_SIGNATURE_ALGORITHM;
         }
     }
 
     private X509Certificate generateSelfSignedCertificate(
-            KeyPair keyPair, String dnName, int validity, String signatureAlgorithm, List<String> exts)
+            KeyPair keyPair,
+            String dnName,
+            int validity,
+            String signatureAlgorithm,
+            List<String> exts,
+            SecureRandomStrategy secureRandom)
             throws Exception {
 
         X500Principal principal = new X500Principal(dnName);
         X500Name issuer = X500Name.getInstance(principal.getEncoded());
-        BigInteger serial = BigInteger.valueOf(System.currentTimeMillis());
+        BigInteger serial = nextSerial(secureRandom);
         Date notBefore = new Date();
         Date notAfter = new Date(notBefore.getTime() + ((long) validity * 24 * 60 * 60 * 1000));
 
@@ -272,12 +655,17 @@ public class CertificateGenerationService {
         // Add extensions if specified
         addExtensionsToCertificate(certBuilder, exts);
 
-        ContentSigner signer = new JcaContentSignerBuilder(signatureAlgorithm).build(keyPair.getPrivate());
+        ContentSigner signer = contentSigner(signatureAlgorithm, keyPair.getPrivate());
         X509CertificateHolder certHolder = certBuilder.build(signer);
 
-        return new JcaX509CertificateConverter()
-                .setProvider(BOUNCY_CASTLE_PROVIDER)
-                .getCertificate(certHolder);
+        return new JcaX509CertificateConverter().getCertificate(certHolder);
+    }
+
+    /**
+     * @return a random positive serial number of at most 64 bits
+     */
+    private BigInteger nextSerial(SecureRandomStrategy secureRandom) {
+        return new BigInteger(63, secureRandomSource.get(secureRandom)).add(BigInteger.ONE);
     }
 
     private X509Certificate buildSignedCertificate(
@@ -286,18 +674,18 @@ public class CertificateGenerationService {
             PrivateKey signingKey,
             int validity,
             String sigalg,
-            List<String> exts)
+            List<String> exts,
+            SecureRandomStrategy secureRandom)
             throws Exception {
 
         X500Name subject = csr.getSubject();
-        BigInteger serial = BigInteger.valueOf(System.currentTimeMillis());
+        BigInteger serial = nextSerial(secureRandom);
         Date notBefore = new Date();
         Date notAfter = new Date(notBefore.getTime() + ((long) validity * 24 * 60 * 60 * 1000));
 
         // Extract public key from CSR
         SubjectPublicKeyInfo publicKeyInfo = csr.getSubjectPublicKeyInfo();
-        PublicKey publicKey =
-                new JcaPEMKeyConverter().setProvider(BOUNCY_CASTLE_PROVIDER).getPublicKey(publicKeyInfo);
+        PublicKey publicKey = publicKey(publicKeyInfo);
 
         X509v3CertificateBuilder certBuilder =
                 new JcaX509v3CertificateBuilder(issuer, serial, notBefore, notAfter, subject, publicKey);
@@ -309,13 +697,11 @@ public class CertificateGenerationService {
         addExtensionsToCertificate(certBuilder, exts);
 
         // Sign certificate
-        String signatureAlg = sigalg != null ? sigalg : DEFAULT_SIGNATURE_ALGORITHM;
-        ContentSigner signer = new JcaContentSignerBuilder(signatureAlg).build(signingKey);
+        String signatureAlg = determineSignatureAlgorithm(signingKey, sigalg);
+        ContentSigner signer = contentSigner(signatureAlg, signingKey);
         X509CertificateHolder certHolder = certBuilder.build(signer);
 
-        return new JcaX509CertificateConverter()
-                .setProvider(BOUNCY_CASTLE_PROVIDER)
-                .getCertificate(certHolder);
+        return new JcaX509CertificateConverter().getCertificate(certHolder);
     }
 
     private void addExtensionsToCertificate(X509v3CertificateBuilder certBuilder, List<String> exts) throws Exception {
@@ -605,7 +991,7 @@ public class CertificateGenerationService {
     }
 
     private PrivateKey getPrivateKey(KeyStore ks, String alias, char[] keypass) throws Exception {
-        PrivateKey privateKey = (PrivateKey) ks.getKey(alias, keypass);
+        PrivateKey privateKey = (PrivateKey) BouncyCastle.getKey(ks, alias, keypass);
         if (privateKey == null) {
             throw new MojoExecutionException("Private key not found for alias: " + alias);
         }
@@ -620,52 +1006,13 @@ public class CertificateGenerationService {
         return cert;
     }
 
-    private KeyStore loadOrCreateKeyStore(File keystoreFile, String storeType, char[] storePassword) throws Exception {
-        String effectiveStoreType = storeType != null ? storeType : KeyStore.getDefaultType();
-        KeyStore ks = KeyStore.getInstance(effectiveStoreType);
-
-        if (keystoreFile != null && keystoreFile.exists()) {
-            log.info("Loading existing keystore: {}", keystoreFile.getAbsolutePath());
-            try (FileInputStream fis = new FileInputStream(keystoreFile)) {
-                ks.load(fis, storePassword);
-            }
-        } else {
-            log.info("Creating new keystore");
-            ks.load(null, storePassword);
-
-            if (keystoreFile != null && keystoreFile.getParentFile() != null) {
-                keystoreFile.getParentFile().mkdirs();
-            }
-        }
-
-        return ks;
-    }
-
     private KeyStore loadKeyStore(File keystoreFile, String storeType, char[] storePassword) throws Exception {
-        if (keystoreFile == null || !keystoreFile.exists()) {
+        if (keystoreFile == null || !keyStoreCache.exists(keystoreFile)) {
             throw new MojoExecutionException("Keystore file not found: " + keystoreFile);
         }
 
-        String effectiveStoreType = storeType != null ? storeType : KeyStore.getDefaultType();
-        KeyStore ks = KeyStore.getInstance(effectiveStoreType);
-
         log.info("Loading keystore: {}", keystoreFile.getAbsolutePath());
-        try (FileInputStream fis = new FileInputStream(keystoreFile)) {
-            ks.load(fis, storePassword);
-        }
-
-        return ks;
-    }
-
-    private void saveKeyStore(KeyStore ks, File keystoreFile, char[] storePassword) throws Exception {
-        if (keystoreFile == null) {
-            throw new IllegalArgumentException("Keystore file cannot be null");
-        }
-
-        log.info("Saving keystore to: {}", keystoreFile.getAbsolutePath());
-        try (FileOutputStream fos = new FileOutputStream(keystoreFile)) {
-            ks.store(fos, storePassword);
-        }
+        return keyStoreCache.load(keystoreFile, storeType, storePassword);
     }
 
     // ==================== Inner Classes ====================
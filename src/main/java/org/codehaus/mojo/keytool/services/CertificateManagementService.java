@@ -19,11 +19,11 @@ package org.codehaus.mojo.keytool.services;
  * under the License.
  */
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,8 +34,10 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
+import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,6 +54,25 @@ public class CertificateManagementService {
 
     private static final Logger log = LoggerFactory.getLogger(CertificateManagementService.class);
 
+    private final KeyStoreCache keyStoreCache;
+
+    /**
+     * Creates a service with its own keystore cache.
+     */
+    public CertificateManagementService() {
+        this(new KeyStoreCache());
+    }
+
+    /**
+     * Creates a service sharing the given keystore cache.
+     *
+     * @param keyStoreCache keystore cache
+     */
+    @Inject
+    public CertificateManagementService(KeyStoreCache keyStoreCache) {
+        this.keyStoreCache = keyStoreCache;
+    }
+
     /**
      * Import a certificate into a keystore.
      * <p>
@@ -82,49 +103,145 @@ public class CertificateManagementService {
             boolean skipIfAliasExists,
             char[] keyPassword)
             throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+        importCertificate(
+                keystoreFile,
+                keystoreType,
+                keystorePassword,
+                alias,
+                certificateFile,
+                skipIfAliasExists,
+                keyPassword,
+                KeyStoreWriteOptions.defaults());
+    }
 
-        KeyStore keystore = loadOrCreateKeyStore(keystoreFile, keystoreType, keystorePassword);
+    /**
+     * Import a certificate into a keystore.
+     * <p>
+     * This method supports two scenarios:
+     * <ul>
+     *   <li>Importing a trusted certificate (new alias or replacing a trusted certificate)</li>
+     *   <li>Importing a certificate reply to replace the certificate chain of an existing key pair</li>
+     * </ul>
+     *
+     * @param keystoreFile keystore file
+     * @param keystoreType keystore type (e.g., "JKS", "PKCS12")
+     * @param keystorePassword keystore password
+     * @param alias certificate alias
+     * @param certificateFile certificate file to import
+     * @param skipIfAliasExists if true, skip import if alias already exists
+     * @param keyPassword password for the private key (if different from keystore password); may be null
+     * @param writeOptions how to write the keystore
+     * @throws KeyStoreException if keystore operation fails
+     * @throws IOException if file operations fail
+     * @throws NoSuchAlgorithmException if algorithm is not available
+     * @throws CertificateException if certificate is invalid
+     */
+    public void importCertificate(
+            File keystoreFile,
+            String keystoreType,
+            char[] keystorePassword,
+            String alias,
+            File certificateFile,
+            boolean skipIfAliasExists,
+            char[] keyPassword,
+            KeyStoreWriteOptions writeOptions)
+            throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
 
-        if (skipIfAliasExists && keystore.containsAlias(alias)) {
-            log.info("Certificate alias '{}' already exists in keystore. Skipping import.", alias);
-            return;
+        try (KeyStoreSession session =
+                keyStoreCache.openSession(keystoreFile, keystoreType, keystorePassword, true, writeOptions)) {
+            session.queue(importCertificateMutation(
+                    alias, certificateFile, skipIfAliasExists, keyPassword, keystorePassword));
+            session.commit();
         }
+    }
+
+    /**
+     * Mutation importing a certificate, either as a trusted certificate or as a certificate reply.
+     *
+     * @param alias certificate alias
+     * @param certificateFile certificate file to import, read when the mutation is applied
+     * @param skipIfAliasExists if true, do nothing if alias already exists
+     * @param keyPassword password for the private key; may be null to use the keystore password
+     * @param keystorePassword keystore password
+     * @return the mutation, to be queued in a {@link KeyStoreSession}
+     * @see #importCertificate(File, String, char[], String, File, boolean, char[])
+     */
+    public KeyStoreMutation importCertificateMutation(
+            String alias,
+            File certificateFile,
+            boolean skipIfAliasExists,
+            char[] keyPassword,
+            char[] keystorePassword) {
+        return (keystore, protection) -> {
+            if (skipIfAliasExists && keystore.containsAlias(alias)) {
+                log.info("Certificate alias '{}' already exists in keystore. Skipping import.", alias);
+                return false;
+            }
 
-        Certificate certificate = loadCertificate(certificateFile);
-
-        // Check if the alias contains a key entry (private key + certificate chain)
-        if (keystore.containsAlias(alias) && keystore.isKeyEntry(alias)) {
-            // This is a certificate reply - we need to replace the certificate chain
-            // while keeping the private key intact
-            try {
-                // Use keyPassword if provided, otherwise fall back to keystorePassword
-                // In keytool, if -keypass is not specified, it defaults to -storepass
-                char[] actualKeyPassword = (keyPassword != null) ? keyPassword : keystorePassword;
-                Key key = keystore.getKey(alias, actualKeyPassword);
-
-                // Create a new certificate chain with the imported certificate
-                // In a proper implementation, we should validate that the certificate's public key
-                // matches the private key's public key
-                Certificate[] newChain = new Certificate[] {certificate};
-
-                // Replace the key entry with the new certificate chain
-                keystore.setKeyEntry(alias, key, actualKeyPassword, newChain);
-                saveKeyStore(keystore, keystoreFile, keystorePassword);
-
-                log.info("Certificate reply was imported for key pair alias '{}'", alias);
-            } catch (UnrecoverableKeyException e) {
-                throw new KeyStoreException(
-                        "Cannot retrieve private key for alias '" + alias
-                                + "'. The key password may differ from the store password.",
-                        e);
+            Certificate certificate = loadCertificate(certificateFile);
+
+            if (isAlreadyImported(keystore, alias, certificate)) {
+                log.info("Certificate is already present under alias '{}'. Keystore left unchanged.", alias);
+                return false;
+            }
+
+            // Check if the alias contains a key entry (private key + certificate chain)
+            if (keystore.containsAlias(alias) && keystore.isKeyEntry(alias)) {
+                // This is a certificate reply - we need to replace the certificate chain
+                // while keeping the private key intact
+                try {
+                    // Use keyPassword if provided, otherwise fall back to keystorePassword
+                    // In keytool, if -keypass is not specified, it defaults to -storepass
+                    char[] actualKeyPassword = (keyPassword != null) ? keyPassword : keystorePassword;
+                    Key key = BouncyCastle.getKey(keystore, alias, actualKeyPassword);
+
+                    // Create a new certificate chain with the imported certificate
+                    // In a proper implementation, we should validate that the certificate's public key
+                    // matches the private key's public key
+                    Certificate[] newChain = new Certificate[] {certificate};
+
+                    // Replace the key entry with the new certificate chain
+                    protection.setKeyEntry(keystore, alias, key, actualKeyPassword, newChain);
+
+                    log.info("Certificate reply was imported for key pair alias '{}'", alias);
+                } catch (UnrecoverableKeyException e) {
+                    throw new KeyStoreException(
+                            "Cannot retrieve private key for alias '" + alias
+                                    + "'. The key password may differ from the store password.",
+                            e);
+                }
+            } else {
+                // This is a trusted certificate entry
+                keystore.setCertificateEntry(alias, certificate);
+
+                log.info("Certificate was added to keystore");
             }
-        } else {
-            // This is a trusted certificate entry
-            keystore.setCertificateEntry(alias, certificate);
-            saveKeyStore(keystore, keystoreFile, keystorePassword);
+            return true;
+        };
+    }
 
-            log.info("Certificate was added to keystore");
+    /**
+     * Tell whether importing a certificate under an alias would leave the keystore as it is: the alias is a
+     * trusted certificate entry holding the same certificate, or a key entry whose chain is that certificate only.
+     * Certificates are compared by their DER encoding.
+     */
+    private static boolean isAlreadyImported(KeyStore keystore, String alias, Certificate certificate)
+            throws KeyStoreException, CertificateEncodingException {
+        if (!keystore.containsAlias(alias)) {
+            return false;
         }
+
+        if (keystore.isKeyEntry(alias)) {
+            Certificate[] chain = keystore.getCertificateChain(alias);
+            return chain != null && chain.length == 1 && sameEncoding(chain[0], certificate);
+        }
+
+        return sameEncoding(keystore.getCertificate(alias), certificate);
+    }
+
+    private static boolean sameEncoding(Certificate existing, Certificate certificate)
+            throws CertificateEncodingException {
+        return existing != null && Arrays.equals(existing.getEncoded(), certificate.getEncoded());
     }
 
     /**
@@ -175,18 +292,52 @@ public class CertificateManagementService {
      */
     public void deleteAlias(File keystoreFile, String keystoreType, char[] keystorePassword, String alias)
             throws Exception {
+        deleteAlias(keystoreFile, keystoreType, keystorePassword, alias, KeyStoreWriteOptions.defaults());
+    }
 
-        KeyStore keystore = loadOrCreateKeyStore(keystoreFile, keystoreType, keystorePassword);
+    /**
+     * Delete an alias from keystore.
+     *
+     * @param keystoreFile keystore file
+     * @param keystoreType keystore type
+     * @param keystorePassword keystore password
+     * @param alias alias to delete
+     * @param writeOptions how to write the keystore
+     * @throws Exception if operation fails
+     */
+    public void deleteAlias(
+            File keystoreFile,
+            String keystoreType,
+            char[] keystorePassword,
+            String alias,
+            KeyStoreWriteOptions writeOptions)
+            throws Exception {
 
-        if (!keystore.containsAlias(alias)) {
-            log.warn("Alias '{}' does not exist in keystore", alias);
-            return;
+        try (KeyStoreSession session =
+                keyStoreCache.openSession(keystoreFile, keystoreType, keystorePassword, true, writeOptions)) {
+            session.queue(deleteAliasMutation(alias));
+            session.commit();
         }
+    }
 
-        keystore.deleteEntry(alias);
-        saveKeyStore(keystore, keystoreFile, keystorePassword);
+    /**
+     * Mutation deleting an alias; does nothing if the alias does not exist.
+     *
+     * @param alias alias to delete
+     * @return the mutation, to be queued in a {@link KeyStoreSession}
+     */
+    public KeyStoreMutation deleteAliasMutation(String alias) {
+        return (keystore, protection) -> {
+            if (!keystore.containsAlias(alias)) {
+                log.warn("Alias '{}' does not exist in keystore", alias);
+                return false;
+            }
+
+            keystore.deleteEntry(alias);
 
-        log.info("Deleted alias: {}", alias);
+            log.info("Deleted alias: {}", alias);
+            return true;
+        };
     }
 
     /**
@@ -194,18 +345,7 @@ public class CertificateManagementService {
      */
     private KeyStore loadOrCreateKeyStore(File keystoreFile, String keystoreType, char[] password)
             throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
-
-        KeyStore keystore = KeyStore.getInstance(keystoreType != null ? keystoreType : KeyStore.getDefaultType());
-
-        if (keystoreFile.exists()) {
-            try (FileInputStream fis = new FileInputStream(keystoreFile)) {
-                keystore.load(fis, password);
-            }
-        } else {
-            keystore.load(null, password);
-        }
-
-        return keystore;
+        return keyStoreCache.loadOrCreate(keystoreFile, keystoreType, password);
     }
 
     /**
@@ -218,20 +358,4 @@ public class CertificateManagementService {
             return certFactory.generateCertificate(is);
         }
     }
-
-    /**
-     * Save keystore to file.
-     */
-    private void saveKeyStore(KeyStore keystore, File keystoreFile, char[] password)
-            throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
-
-        File parentDir = keystoreFile.getParentFile();
-        if (parentDir != null && !parentDir.exists()) {
-            parentDir.mkdirs();
-        }
-
-        try (FileOutputStream fos = new FileOutputStream(keystoreFile)) {
-            keystore.store(fos, password);
-        }
-    }
 }
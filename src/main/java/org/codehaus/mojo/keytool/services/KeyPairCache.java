@@ -0,0 +1,246 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.openssl.PEMException;
+import org.bouncycastle.openssl.PEMParser;
+import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.openssl.jcajce.JcaPKCS8Generator;
+import org.bouncycastle.openssl.jcajce.JceOpenSSLPKCS8DecryptorProviderBuilder;
+import org.bouncycastle.openssl.jcajce.JceOpenSSLPKCS8EncryptorBuilder;
+import org.bouncycastle.pkcs.PKCS8EncryptedPrivateKeyInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Key pairs kept on disk across builds, so that test keys do not have to be generated again by each build.
+ * <p>
+ * A key pair is cached under its {@link KeyPairSpec spec} and a slot name chosen by the user, as a PEM file holding the
+ * public key and the private key encrypted with the password of the cache (PKCS#8, AES-256-CBC). Each use of a key
+ * pair marks it as recently used; once the cache holds more than its maximum number of key pairs, the least
+ * recently used ones are deleted. The file of a key pair is named after its algorithm and parameters, followed by the
+ * SHA-256 of the spec and slot, so that slots never share a file whatever characters they hold.
+ * <p>
+ * A cached key pair is reused by every build asking for the same slot: only use it for test keys. A key pair that
+ * cannot be read, for instance because it was cached with another password, is treated as missing and replaced.
+ *
+ * @since 2.1
+ */
+public final class KeyPairCache {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyPairCache.class);
+
+    private static final String EXTENSION = ".pem";
+
+    private final File directory;
+
+    private final int maxEntries;
+
+    private final char[] password;
+
+    /**
+     * @param directory directory of the cache, created when the first key pair is cached
+     * @param maxEntries maximum number of key pairs kept
+     * @param password password encrypting the cached private keys
+     */
+    public KeyPairCache(File directory, int maxEntries, char[] password) {
+        if (password == null || password.length == 0) {
+            throw new IllegalArgumentException("A password is required to cache key pairs");
+        }
+        this.directory = directory;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.password = password.clone();
+    }
+
+    /**
+     * @return directory of the cache
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Get a cached key pair, and mark it as recently used.
+     *
+     * @param spec key pair spec
+     * @param slot slot name
+     * @return the cached key pair, or {@code null} if there is none or it cannot be read
+     */
+    public KeyPair get(KeyPairSpec spec, String slot) {
+        File file = getFile(spec, slot);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            KeyPair keyPair = read(file);
+            Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(System.currentTimeMillis()));
+            log.debug("Reusing cached {} key pair of slot {}", spec, slot);
+            return keyPair;
+        } catch (Exception e) {
+            log.warn("Ignoring cached key pair {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Cache a key pair, replacing the one of the same slot, then evict the least recently used key pairs above the
+     * maximum.
+     *
+     * @param spec key pair spec
+     * @param slot slot name
+     * @param keyPair key pair to cache
+     */
+    public void put(KeyPairSpec spec, String slot, KeyPair keyPair) {
+        File file = getFile(spec, slot);
+        try {
+            write(file, keyPair);
+            evict();
+        } catch (Exception e) {
+            // a cache that cannot be written only costs the next build a key generation
+            log.warn("Could not cache key pair in {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * @return file of a cached key pair
+     */
+    File getFile(KeyPairSpec spec, String slot) {
+        String parameters = spec.getGroupName() != null ? spec.getGroupName() : String.valueOf(spec.getKeySize());
+        // only the slot, last, may hold a NUL character, so the hashed name is unambiguous
+        String name = spec.getAlgorithm() + '\0' + parameters + '\0' + slot;
+        return new File(
+                directory, sanitize(spec.getAlgorithm()) + '-' + sanitize(parameters) + '-' + sha256(name) + EXTENSION);
+    }
+
+    private KeyPair read(File file) throws Exception {
+        SubjectPublicKeyInfo publicKeyInfo = null;
+        PKCS8EncryptedPrivateKeyInfo privateKeyInfo = null;
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.US_ASCII);
+                PEMParser parser = new PEMParser(reader)) {
+            Object object;
+            while ((object = parser.readObject()) != null) {
+                if (object instanceof SubjectPublicKeyInfo) {
+                    publicKeyInfo = (SubjectPublicKeyInfo) object;
+                } else if (object instanceof PKCS8EncryptedPrivateKeyInfo) {
+                    privateKeyInfo = (PKCS8EncryptedPrivateKeyInfo) object;
+                }
+            }
+        }
+        if (publicKeyInfo == null || privateKeyInfo == null) {
+            throw new IOException("Incomplete key pair");
+        }
+
+        PrivateKeyInfo decrypted = privateKeyInfo.decryptPrivateKeyInfo(new JceOpenSSLPKCS8DecryptorProviderBuilder()
+                .setProvider(BouncyCastle.provider())
+                .build(password));
+        try {
+            JcaPEMKeyConverter converter = new JcaPEMKeyConverter();
+            return new KeyPair(converter.getPublicKey(publicKeyInfo), converter.getPrivateKey(decrypted));
+        } catch (PEMException e) {
+            // key algorithms the JDK does not provide, such as EdDSA before Java 15
+            JcaPEMKeyConverter converter = new JcaPEMKeyConverter().setProvider(BouncyCastle.provider());
+            return new KeyPair(converter.getPublicKey(publicKeyInfo), converter.getPrivateKey(decrypted));
+        }
+    }
+
+    private void write(File file, KeyPair keyPair) throws Exception {
+        Files.createDirectories(directory.toPath());
+
+        Path temp = Files.createTempFile(directory.toPath(), "." + file.getName() + ".", ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.US_ASCII);
+                    JcaPEMWriter pemWriter = new JcaPEMWriter(writer)) {
+                pemWriter.writeObject(keyPair.getPublic());
+                pemWriter.writeObject(new JcaPKCS8Generator(
+                        keyPair.getPrivate(),
+                        new JceOpenSSLPKCS8EncryptorBuilder(JcaPKCS8Generator.AES_256_CBC)
+                                .setProvider(BouncyCastle.provider())
+                                .setPassword(password)
+                                .build()));
+            }
+            try {
+                Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory.toPath(), "*" + EXTENSION)) {
+            for (Path entry : files) {
+                entries.add(entry);
+            }
+        }
+        if (entries.size() <= maxEntries) {
+            return;
+        }
+
+        entries.sort(Comparator.comparingLong(entry -> entry.toFile().lastModified()));
+        for (Path entry : entries.subList(0, entries.size() - maxEntries)) {
+            log.debug("Evicting cached key pair {}", entry);
+            // another build may have evicted it first
+            Files.deleteIfExists(entry);
+        }
+    }
+
+    private static String sha256(String name) {
+        try {
+            return KeyStoreIndex.toHex(
+                    MessageDigest.getInstance("SHA-256").digest(name.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String sanitize(String name) {
+        StringBuilder sanitized = new StringBuilder(name.length());
+        for (char c : name.toLowerCase(Locale.ROOT).toCharArray()) {
+            sanitized.append(c < 128 && (Character.isLetterOrDigit(c) || c == '.' || c == '_') ? c : '_');
+        }
+        return sanitized.toString();
+    }
+}
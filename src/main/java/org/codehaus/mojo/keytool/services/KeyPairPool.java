@@ -0,0 +1,200 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Key pairs generated ahead of time on background threads, so that generating a key pair does not wait for the
+ * key pair generator.
+ * <p>
+ * Nothing is generated ahead of time until {@link #reserve(KeyPairSpec, int)} asks to keep key pairs of a
+ * {@link KeyPairSpec spec} ready; {@link #take(KeyPairSpec)} then hands out a ready key pair, and the pool generates
+ * another one in the background. When no key pair is ready, it is generated right away, as without the pool. Each
+ * key pair is handed out once.
+ *
+ * @since 2.1
+ */
+@Named
+@Singleton
+public class KeyPairPool {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyPairPool.class);
+
+    private static final ThreadFactory KEY_PAIR_THREADS = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "keytool-key-pair-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            // ahead of time generation must not slow down the build itself
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    };
+
+    private final ConcurrentMap<KeyPairSpec, Slot> slots = new ConcurrentHashMap<>();
+
+    private final SecureRandomSource secureRandomSource;
+
+    private volatile ExecutorService executor;
+
+    /**
+     * Creates a pool with its own secure random source.
+     */
+    public KeyPairPool() {
+        this(new SecureRandomSource());
+    }
+
+    /**
+     * Creates a pool generating key pairs with the given secure random source.
+     *
+     * @param secureRandomSource secure random source
+     */
+    @Inject
+    public KeyPairPool(SecureRandomSource secureRandomSource) {
+        this.secureRandomSource = secureRandomSource;
+    }
+
+    /**
+     * Keep key pairs of a spec ready, starting to generate them in the background.
+     * <p>
+     * Reserving the same spec again only raises the number of key pairs kept ready.
+     *
+     * @param spec key pair spec
+     * @param count number of key pairs to keep ready
+     */
+    public void reserve(KeyPairSpec spec, int count) {
+        if (count <= 0) {
+            return;
+        }
+        Slot slot = slots.computeIfAbsent(spec, Slot::new);
+        slot.target.accumulateAndGet(count, Math::max);
+        refill(slot);
+    }
+
+    /**
+     * Take a key pair, generated ahead of time if one is ready.
+     *
+     * @param spec key pair spec
+     * @return a key pair never handed out before
+     * @throws GeneralSecurityException if the key pair cannot be generated
+     */
+    public KeyPair take(KeyPairSpec spec) throws GeneralSecurityException {
+        Slot slot = slots.get(spec);
+        if (slot == null) {
+            return generate(spec);
+        }
+
+        KeyPair keyPair = slot.ready.poll();
+        refill(slot);
+        if (keyPair != null) {
+            log.debug("Using a {} key pair generated ahead of time", spec);
+            return keyPair;
+        }
+        log.debug("No {} key pair ready, generating one", spec);
+        return generate(spec);
+    }
+
+    /**
+     * @param spec key pair spec
+     * @return number of key pairs ready to be taken
+     */
+    public int getReadyCount(KeyPairSpec spec) {
+        Slot slot = slots.get(spec);
+        return slot != null ? slot.ready.size() : 0;
+    }
+
+    private void refill(Slot slot) {
+        while (true) {
+            int pending = slot.pending.get();
+            if (slot.failed || slot.ready.size() + pending >= slot.target.get()) {
+                return;
+            }
+            if (slot.pending.compareAndSet(pending, pending + 1)) {
+                executor().execute(() -> fill(slot));
+            }
+        }
+    }
+
+    private void fill(Slot slot) {
+        try {
+            slot.ready.add(generate(slot.spec));
+        } catch (GeneralSecurityException | RuntimeException e) {
+            // requests generate their own key pair, and report the error if it is not transient
+            log.debug("Could not generate a {} key pair ahead of time", slot.spec, e);
+            slot.failed = true;
+        } finally {
+            slot.pending.decrementAndGet();
+        }
+        refill(slot);
+    }
+
+    private ExecutorService executor() {
+        ExecutorService result = executor;
+        if (result == null) {
+            synchronized (this) {
+                result = executor;
+                if (result == null) {
+                    int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+                    result = Executors.newFixedThreadPool(threads, KEY_PAIR_THREADS);
+                    executor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private KeyPair generate(KeyPairSpec spec) throws GeneralSecurityException {
+        return spec.generate(secureRandomSource.get(spec.getSecureRandom()));
+    }
+
+    /**
+     * Key pairs of one spec.
+     */
+    private static final class Slot {
+        private final KeyPairSpec spec;
+        private final Queue<KeyPair> ready = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger target = new AtomicInteger();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean failed;
+
+        Slot(KeyPairSpec spec) {
+            this.spec = spec;
+        }
+    }
+}
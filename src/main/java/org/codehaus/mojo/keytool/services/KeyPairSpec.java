@@ -0,0 +1,217 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * What key pair to generate: an algorithm with either a key size or, for EC keys, a named curve.
+ * <p>
+ * {@code EdDSA} keys are {@code Ed25519} keys unless the group name is {@code Ed448}; their key size is implied by
+ * the curve, so the one given is ignored. NIST curve names such as {@code P-256} are accepted for their SEC names.
+ * <p>
+ * The spec also tells which {@link SecureRandomStrategy secure random} generates its key pairs, so that key pairs
+ * generated ahead of time use the one of the goal asking for them.
+ *
+ * @since 2.1
+ */
+public final class KeyPairSpec {
+
+    /**
+     * EdDSA on Curve25519.
+     */
+    public static final String ED25519 = "Ed25519";
+
+    /**
+     * EdDSA on Curve448.
+     */
+    public static final String ED448 = "Ed448";
+
+    private static final String EC = "EC";
+
+    private final String algorithm;
+
+    private final int keySize;
+
+    private final String groupName;
+
+    private final SecureRandomStrategy secureRandom;
+
+    private KeyPairSpec(String algorithm, int keySize, String groupName) {
+        this(algorithm, keySize, groupName, SecureRandomStrategy.DEFAULT);
+    }
+
+    private KeyPairSpec(String algorithm, int keySize, String groupName, SecureRandomStrategy secureRandom) {
+        this.algorithm = algorithm;
+        this.keySize = keySize;
+        this.groupName = groupName;
+        this.secureRandom = secureRandom;
+    }
+
+    /**
+     * @param algorithm key pair algorithm
+     * @param keySize key size, ignored for a named curve
+     * @param groupName named curve of EC keys or {@code Ed25519} or {@code Ed448} for EdDSA keys, {@code null} for
+     *     none
+     * @return the key pair spec
+     * @throws IllegalArgumentException if a group name is given for another algorithm
+     */
+    public static KeyPairSpec of(String algorithm, int keySize, String groupName) {
+        String name = algorithm.trim();
+        String group = groupName != null && !groupName.trim().isEmpty() ? groupName.trim() : null;
+
+        switch (name.toUpperCase(Locale.ROOT)) {
+            case "EDDSA":
+                if (group != null && !ED25519.equalsIgnoreCase(group) && !ED448.equalsIgnoreCase(group)) {
+                    throw new IllegalArgumentException(
+                            "Unknown EdDSA group '" + group + "', expected " + ED25519 + " or " + ED448);
+                }
+                return ED448.equalsIgnoreCase(group) ? new KeyPairSpec(ED448, 448, null) : ed25519();
+            case "ED25519":
+                return ed25519();
+            case "ED448":
+                return new KeyPairSpec(ED448, 448, null);
+            case EC:
+                return group != null ? new KeyPairSpec(EC, 0, curveName(group)) : new KeyPairSpec(EC, keySize, null);
+            default:
+                if (group != null) {
+                    throw new IllegalArgumentException("A group name only applies to EC and EdDSA keys, not " + name);
+                }
+                return new KeyPairSpec(name.toUpperCase(Locale.ROOT), keySize, null);
+        }
+    }
+
+    /**
+     * @param secureRandom secure random strategy, {@code null} for the {@link SecureRandomStrategy#DEFAULT default}
+     *     one
+     * @return the same spec, generating its key pairs with the given secure random strategy
+     */
+    public KeyPairSpec withSecureRandom(SecureRandomStrategy secureRandom) {
+        return new KeyPairSpec(
+                algorithm, keySize, groupName, secureRandom != null ? secureRandom : SecureRandomStrategy.DEFAULT);
+    }
+
+    /**
+     * @return the key pair algorithm
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return the key size, {@code 0} for a named curve
+     */
+    public int getKeySize() {
+        return keySize;
+    }
+
+    /**
+     * @return the named curve, {@code null} for none
+     */
+    public String getGroupName() {
+        return groupName;
+    }
+
+    /**
+     * @return the secure random strategy generating the key pairs
+     */
+    public SecureRandomStrategy getSecureRandom() {
+        return secureRandom;
+    }
+
+    /**
+     * Generate a key pair of this spec, with the JDK providers, or with Bouncy Castle for the algorithms and curves
+     * they do not provide, such as EdDSA before Java 15 or Brainpool curves.
+     *
+     * @param random secure random
+     * @return a new key pair
+     * @throws GeneralSecurityException if the algorithm, key size or curve is not supported
+     */
+    public KeyPair generate(SecureRandom random) throws GeneralSecurityException {
+        try {
+            return generate(KeyPairGenerator.getInstance(algorithm), random);
+        } catch (NoSuchAlgorithmException | InvalidAlgorithmParameterException e) {
+            return generate(KeyPairGenerator.getInstance(algorithm, BouncyCastle.provider()), random);
+        }
+    }
+
+    private KeyPair generate(KeyPairGenerator keyGen, SecureRandom random) throws GeneralSecurityException {
+        if (groupName != null) {
+            keyGen.initialize(new ECGenParameterSpec(groupName), random);
+        } else {
+            keyGen.initialize(keySize, random);
+        }
+        return keyGen.generateKeyPair();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof KeyPairSpec)) {
+            return false;
+        }
+        KeyPairSpec other = (KeyPairSpec) o;
+        return keySize == other.keySize
+                && algorithm.equals(other.algorithm)
+                && Objects.equals(groupName, other.groupName)
+                && secureRandom == other.secureRandom;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(algorithm, keySize, groupName, secureRandom);
+    }
+
+    @Override
+    public String toString() {
+        if (groupName != null) {
+            return algorithm + ' ' + groupName;
+        }
+        return ED25519.equals(algorithm) || ED448.equals(algorithm) ? algorithm : algorithm + ' ' + keySize;
+    }
+
+    private static KeyPairSpec ed25519() {
+        return new KeyPairSpec(ED25519, 255, null);
+    }
+
+    private static String curveName(String group) {
+        switch (group.toUpperCase(Locale.ROOT).replace("NIST ", "")) {
+            case "P-256":
+            case "PRIME256V1":
+                return "secp256r1";
+            case "P-384":
+                return "secp384r1";
+            case "P-521":
+                return "secp521r1";
+            default:
+                return group;
+        }
+    }
+}
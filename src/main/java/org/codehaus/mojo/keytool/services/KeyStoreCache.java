@@ -0,0 +1,940 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process cache of loaded keystores, shared by all services.
+ * <p>
+ * Loading a keystore is expensive (PKCS12 stores run a PBKDF2 derivation to check their MAC), so a keystore
+ * that was already loaded is reused as long as its file did not change. An entry is keyed by the canonical
+ * path of the file and is only reused when the store type, file size, modification time, SHA-256 of the
+ * content and the password all match the ones used for the previous load.
+ * <p>
+ * A keystore file is read in a single pass (or memory mapped if it is large) and the same bytes are used to
+ * hash and to load it. Its format is detected from its first bytes, so JKS, JCEKS, PKCS12 and BCFKS keystores
+ * load whatever type is configured.
+ * <p>
+ * The cached {@link KeyStore} instance is handed out as is: callers that modify it must either persist it
+ * through {@link #store(KeyStore, File, char[])} or drop it with {@link #invalidate(File)}. Services should
+ * rather modify keystores through a {@link KeyStoreSession}, which takes care of both, and holds the
+ * {@link KeyStoreLocks lock} of the file while doing so.
+ * <p>
+ * A keystore with {@link #defer(KeyStore, File, char[], KeyStoreWriteOptions) deferred} changes is never modified
+ * again: sessions modify a copy of it, which replaces it once all their mutations succeeded, so readers can share
+ * it and a failed session leaves it as it was.
+ * <p>
+ * The cache is a singleton of the plugin realm, which Maven shares between the modules of a build, so a keystore
+ * loaded by one execution is reused by the following ones, in any module. A JVM running several builds, such as a
+ * build daemon, may keep the realm from one build to the next: goals {@link #joinSession(String) join} the build
+ * they run in, and a new build starts from an empty cache.
+ *
+ * @since 2.1
+ */
+@Named
+@Singleton
+public class KeyStoreCache {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyStoreCache.class);
+
+    /**
+     * Size from which keystore files are memory mapped rather than read.
+     */
+    private static final long MAP_THRESHOLD = 8L * 1024 * 1024;
+
+    private static final boolean WINDOWS = File.separatorChar == '\\';
+
+    private final ConcurrentMap<String, CachedKeyStore> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Keystores taken out of the cache by {@link #checkout(File, String, char[])}, until they are stored or
+     * {@link #checkin(KeyStore, File) checked in} unmodified.
+     */
+    private final ConcurrentMap<String, CachedKeyStore> checkedOut = new ConcurrentHashMap<>();
+
+    /**
+     * Modified keystores not written yet, see {@link #defer(KeyStore, File, char[], KeyStoreWriteOptions)}.
+     */
+    private final ConcurrentMap<String, Deferred> deferred = new ConcurrentHashMap<>();
+
+    /**
+     * Indexes of loaded keystores, by keystore instance.
+     */
+    private final Map<KeyStore, KeyStoreIndex> indexes = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Content loaded or stored keystore instances were read from, as long as they are not modified.
+     */
+    private final Map<KeyStore, Origin> origins = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Build the cached keystores belong to.
+     */
+    private volatile String sessionId;
+
+    /**
+     * Per instance salt, so that the password digests kept in memory cannot be matched across JVMs.
+     */
+    private final byte[] passwordSalt = new byte[16];
+
+    /**
+     * Creates an empty cache.
+     */
+    public KeyStoreCache() {
+        new SecureRandom().nextBytes(passwordSalt);
+    }
+
+    /**
+     * Load an existing keystore, reusing the cached instance if the file did not change since last load.
+     *
+     * @param keystoreFile keystore file (must exist)
+     * @param keystoreType keystore type, {@code null} to detect it from the file content
+     * @param password keystore password
+     * @return the loaded keystore
+     * @throws KeyStoreException if the keystore type is not available
+     * @throws IOException if the file cannot be read or the password is wrong
+     * @throws NoSuchAlgorithmException if the integrity algorithm is not available
+     * @throws CertificateException if a certificate of the keystore cannot be loaded
+     */
+    public KeyStore load(File keystoreFile, String keystoreType, char[] password)
+            throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+        return load(keystoreFile, keystoreType, password, false);
+    }
+
+    /**
+     * Load an existing keystore to modify it, taking its instance out of the cache until it gets stored again.
+     * <p>
+     * Readers loading the same file in the meantime get their own instance instead of one being modified. A
+     * keystore with deferred changes is copied: the deferred one stays as it is until the copy is deferred or
+     * stored in its place.
+     *
+     * @param keystoreFile keystore file (must exist)
+     * @param keystoreType keystore type, {@code null} to detect it from the file content
+     * @param password keystore password
+     * @return the loaded keystore
+     * @throws KeyStoreException if the keystore type is not available
+     * @throws IOException if the file cannot be read or the password is wrong
+     * @throws NoSuchAlgorithmException if the integrity algorithm is not available
+     * @throws CertificateException if a certificate of the keystore cannot be loaded
+     */
+    KeyStore checkout(File keystoreFile, String keystoreType, char[] password)
+            throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+        return load(keystoreFile, keystoreType, password, true);
+    }
+
+    private KeyStore load(File keystoreFile, String keystoreType, char[] password, boolean checkout)
+            throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+
+        File file = keystoreFile.getCanonicalFile();
+        String key = file.getPath();
+
+        Deferred pending = deferred.get(key);
+        if (pending != null) {
+            if (!MessageDigest.isEqual(pending.passwordHash, digest(password))) {
+                throw new IOException("keystore password was incorrect");
+            }
+            if (checkout) {
+                log.debug("Copying keystore with deferred changes: {}", key);
+                return pending.copy();
+            }
+            log.debug("Using keystore with deferred changes: {}", key);
+            return pending.keystore;
+        }
+
+        ByteBuffer content = read(file);
+        KeyStoreFormat format = KeyStoreFormat.detect(content);
+        String type = resolveType(file, keystoreType, format);
+        Fingerprint fingerprint = new Fingerprint(
+                type, content.remaining(), file.lastModified(), sha256(content.duplicate()), digest(password));
+
+        CachedKeyStore cached = checkout ? entries.remove(key) : entries.get(key);
+        if (cached != null && checkout) {
+            origins.remove(cached.keystore);
+        }
+        if (cached != null && cached.fingerprint.equals(fingerprint)) {
+            log.debug("Reusing cached keystore: {}", key);
+            if (checkout) {
+                checkedOut.put(key, cached);
+            }
+            return cached.keystore;
+        }
+
+        KeyStore keystore =
+                format != null && format.getType().equals(type) ? format.newKeyStore() : KeyStore.getInstance(type);
+        keystore.load(new ByteBufferInputStream(content.duplicate()), password);
+
+        if (checkout) {
+            checkedOut.put(key, new CachedKeyStore(fingerprint, keystore));
+            return keystore;
+        }
+        entries.put(key, new CachedKeyStore(fingerprint, keystore));
+        origins.put(keystore, new Origin(content, password));
+        log.debug("Cached keystore: {}", key);
+
+        return keystore;
+    }
+
+    /**
+     * Forget the keystore {@link #checkout(File, String, char[]) checked out} of a file by a session that failed,
+     * which may hold part of its changes. The cached and deferred states of the file are left as they are.
+     *
+     * @param keystoreFile keystore file
+     * @throws IOException if the path of the file cannot be resolved
+     */
+    void abandon(File keystoreFile) throws IOException {
+        checkedOut.remove(keystoreFile.getCanonicalPath());
+    }
+
+    /**
+     * Give back a keystore {@link #checkout(File, String, char[]) checked out} and left unmodified, so that it is
+     * reused by the next load of its file.
+     *
+     * @param keystore checked out keystore
+     * @param keystoreFile keystore file
+     * @throws IOException if the path of the file cannot be resolved
+     */
+    void checkin(KeyStore keystore, File keystoreFile) throws IOException {
+        String key = keystoreFile.getCanonicalPath();
+        CachedKeyStore cached = checkedOut.remove(key);
+        if (cached != null && cached.keystore == keystore) {
+            entries.putIfAbsent(key, cached);
+        }
+    }
+
+    /**
+     * SHA-256 of the content of a keystore file, as hashed when the file was last loaded or stored through this
+     * cache. The file is only read and hashed again if its size or modification time changed since, or if it was
+     * not loaded through this cache.
+     *
+     * @param keystoreFile keystore file (must exist)
+     * @return SHA-256 of the file content
+     * @throws IOException if the file cannot be read
+     * @throws NoSuchAlgorithmException if SHA-256 is not available
+     */
+    public byte[] contentHash(File keystoreFile) throws IOException, NoSuchAlgorithmException {
+        File file = keystoreFile.getCanonicalFile();
+        CachedKeyStore cached = entries.get(file.getPath());
+        if (cached != null
+                && cached.fingerprint.size == file.length()
+                && cached.fingerprint.lastModified == file.lastModified()) {
+            return cached.fingerprint.contentHash.clone();
+        }
+        return sha256(read(file));
+    }
+
+    /**
+     * Load an existing keystore, or create an empty one if the file does not exist.
+     * <p>
+     * An empty keystore is not cached until it gets stored.
+     *
+     * @param keystoreFile keystore file
+     * @param keystoreType keystore type, {@code null} for {@link KeyStore#getDefaultType()}
+     * @param password keystore password
+     * @return the loaded or created keystore
+     * @throws KeyStoreException if the keystore type is not available
+     * @throws IOException if the file cannot be read or the password is wrong
+     * @throws NoSuchAlgorithmException if the integrity algorithm is not available
+     * @throws CertificateException if a certificate of the keystore cannot be loaded
+     */
+    public KeyStore loadOrCreate(File keystoreFile, String keystoreType, char[] password)
+            throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+
+        if (exists(keystoreFile)) {
+            return load(keystoreFile, keystoreType, password);
+        }
+
+        KeyStore keystore = KeyStore.getInstance(effectiveType(keystoreType));
+        keystore.load(null, password);
+        return keystore;
+    }
+
+    /**
+     * Store a keystore to file and refresh the cache entry of that file with the stored instance.
+     *
+     * @param keystore keystore to store
+     * @param keystoreFile target file
+     * @param password keystore password
+     * @throws KeyStoreException if the keystore was not loaded
+     * @throws IOException if the file cannot be written
+     * @throws NoSuchAlgorithmException if the integrity algorithm is not available
+     * @throws CertificateException if a certificate of the keystore cannot be stored
+     */
+    public void store(KeyStore keystore, File keystoreFile, char[] password)
+            throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+        store(keystore, keystoreFile, password, KeyStoreWriteOptions.defaults());
+    }
+
+    /**
+     * Store a keystore to file and refresh the cache entry of that file with the stored instance.
+     * <p>
+     * The keystore is serialized in memory and written with a single write to a temporary file next to the
+     * target, which then atomically replaces the target: readers of the file never see a partially written
+     * keystore, and a failed store leaves the previous content in place.
+     * <p>
+     * With {@link KeyStoreWriteOptions#withReproducibleOutput(byte[], long) reproducible output}, the serialized
+     * keystore is rewritten so that the same entries always give the same file.
+     * <p>
+     * With the {@link KeyStoreWriteOptions#withMetadataSidecar(boolean) metadata sidecar} option, the
+     * {@link KeyStoreSidecar} of the keystore is written after it.
+     *
+     * @param keystore keystore to store
+     * @param keystoreFile target file
+     * @param password keystore password
+     * @param writeOptions how to write the file
+     * @throws KeyStoreException if the keystore was not loaded
+     * @throws IOException if the file cannot be written
+     * @throws NoSuchAlgorithmException if the integrity algorithm is not available
+     * @throws CertificateException if a certificate of the keystore cannot be stored
+     */
+    public void store(KeyStore keystore, File keystoreFile, char[] password, KeyStoreWriteOptions writeOptions)
+            throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+
+        File file = keystoreFile.getCanonicalFile();
+        String key = file.getPath();
+
+        // whatever happens next, the cached state of this file is no longer trustworthy
+        entries.remove(key);
+        checkedOut.remove(key);
+        indexes.remove(keystore);
+        origins.remove(keystore);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        keystore.store(out, password);
+        byte[] content = writeOptions.getProtection().finish(keystore, out.toByteArray(), password);
+        if (writeOptions.isReproducible()) {
+            content = ReproducibleKeyStoreWriter.rewrite(keystore, content, password, writeOptions);
+        }
+
+        writeAtomically(file, content, writeOptions.isFsync());
+        // deferred changes are kept until written, by this keystore or one it replaces
+        deferred.remove(key);
+        if (writeOptions.isMetadataSidecar()) {
+            writeSidecar(keystore, file, content, password, writeOptions.isFsync());
+        }
+
+        Fingerprint fingerprint = new Fingerprint(
+                keystore.getType(), content.length, file.lastModified(), sha256(content), digest(password));
+        entries.put(key, new CachedKeyStore(fingerprint, keystore));
+        origins.put(keystore, new Origin(ByteBuffer.wrap(content), password));
+    }
+
+    /**
+     * Keep a modified keystore in memory instead of writing it, until {@link #flush()}.
+     * <p>
+     * Until then, loading the file gives this keystore instance, and checking it out gives a copy of it, so that
+     * later changes apply on top of it; deferring or storing that copy replaces the deferred state. Changes
+     * deferred several times are written once. The keystore must not be modified once deferred.
+     *
+     * @param keystore modified keystore
+     * @param keystoreFile keystore file
+     * @param password keystore password to store it with
+     * @param writeOptions how to write the keystore on flush
+     * @throws IOException if the path of the file cannot be resolved
+     * @throws NoSuchAlgorithmException if SHA-256 is not available
+     */
+    void defer(KeyStore keystore, File keystoreFile, char[] password, KeyStoreWriteOptions writeOptions)
+            throws IOException, NoSuchAlgorithmException {
+        File file = keystoreFile.getCanonicalFile();
+        String key = file.getPath();
+
+        entries.remove(key);
+        checkedOut.remove(key);
+        indexes.remove(keystore);
+        origins.remove(keystore);
+
+        // the file must still be as it was before the first deferred change when flushed
+        Deferred previous = deferred.get(key);
+        long size = previous != null ? previous.originalSize : file.exists() ? file.length() : -1L;
+        long lastModified = previous != null ? previous.originalLastModified : file.lastModified();
+        deferred.put(
+                key,
+                new Deferred(
+                        keystore,
+                        password != null ? password.clone() : null,
+                        digest(password),
+                        writeOptions.withWriteBehind(false),
+                        size,
+                        lastModified));
+        log.debug("Deferred write of keystore: {}", key);
+    }
+
+    /**
+     * Write all keystores with deferred changes, each under the {@link KeyStoreLocks lock} of its file.
+     *
+     * @return number of written keystores
+     * @throws KeyStoreException if a keystore cannot be stored
+     * @throws IOException if a file cannot be written, or was modified by someone else since its changes were
+     *                     deferred, in which case its deferred changes are discarded
+     * @throws NoSuchAlgorithmException if the integrity algorithm is not available
+     * @throws CertificateException if a certificate of a keystore cannot be stored
+     */
+    public int flush() throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+        int count = 0;
+        for (String key : new TreeSet<>(deferred.keySet())) {
+            File file = new File(key);
+            try (KeyStoreLocks.Handle lock = KeyStoreLocks.lock(file)) {
+                Deferred pending = deferred.get(key);
+                if (pending == null) {
+                    // flushed meanwhile
+                    continue;
+                }
+                long size = file.exists() ? file.length() : -1L;
+                if (size != pending.originalSize || file.lastModified() != pending.originalLastModified) {
+                    deferred.remove(key);
+                    throw new IOException("Keystore " + file
+                            + " was modified since changes to it were deferred, its deferred changes are discarded");
+                }
+                store(pending.keystore, file, pending.password, pending.writeOptions);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param keystoreFile keystore file
+     * @return {@code true} if the file exists, or will exist once deferred changes are {@link #flush() flushed}
+     */
+    public boolean exists(File keystoreFile) {
+        return keystoreFile.exists() || isDeferred(keystoreFile);
+    }
+
+    /**
+     * @param keystoreFile keystore file
+     * @return {@code true} if the cache holds the keystore, loaded, checked out or with deferred changes
+     * @since 2.1
+     */
+    public boolean isCached(File keystoreFile) {
+        try {
+            String key = keystoreFile.getCanonicalPath();
+            return entries.containsKey(key) || checkedOut.containsKey(key) || deferred.containsKey(key);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param keystoreFile keystore file
+     * @return {@code true} if changes to the keystore are deferred
+     */
+    public boolean isDeferred(File keystoreFile) {
+        if (deferred.isEmpty()) {
+            return false;
+        }
+        try {
+            return deferred.containsKey(keystoreFile.getCanonicalPath());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return number of keystores with deferred changes
+     */
+    public int getDeferredCount() {
+        return deferred.size();
+    }
+
+    /**
+     * The keystore is already written: a sidecar that cannot be written is only reported, since a stale sidecar
+     * no longer matches the keystore hash and is ignored by readers.
+     */
+    private static void writeSidecar(KeyStore keystore, File file, byte[] content, char[] password, boolean fsync) {
+        try {
+            KeyStoreSidecar.write(file, KeyStoreMetadata.of(keystore), content, password, fsync);
+        } catch (IOException | KeyStoreException e) {
+            log.warn("Could not write the metadata sidecar of {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Index of a loaded keystore, built on first use and kept as long as the keystore instance is not modified.
+     * <p>
+     * The index is dropped when the keystore is stored or modified by a {@link KeyStoreSession}; code modifying
+     * the keystore by other means must keep it up to date with {@link KeyStoreIndex#update(KeyStore, String)}.
+     *
+     * @param keystore loaded keystore
+     * @return index of the keystore
+     * @throws KeyStoreException if an entry of the keystore cannot be read
+     */
+    public KeyStoreIndex index(KeyStore keystore) throws KeyStoreException {
+        KeyStoreIndex index = indexes.get(keystore);
+        if (index == null) {
+            index = KeyStoreIndex.build(keystore);
+            indexes.put(keystore, index);
+        }
+        return index;
+    }
+
+    /**
+     * Drop the index of a keystore that was modified.
+     *
+     * @param keystore keystore
+     */
+    void dropIndex(KeyStore keystore) {
+        indexes.remove(keystore);
+        origins.remove(keystore);
+    }
+
+    /**
+     * Source of independent instances of a keystore loaded or stored by this cache, for code that reads it from
+     * several threads: a {@link KeyStore} is not safe for concurrent use, so each thread loads its own instance.
+     *
+     * @param keystore keystore loaded or stored by this cache
+     * @return a callable loading a new instance with the entries of the keystore each time it is called, or
+     *         {@code null} if the keystore was not loaded by this cache or may have been modified since
+     */
+    Callable<KeyStore> replicator(KeyStore keystore) {
+        Origin origin = origins.get(keystore);
+        if (origin == null) {
+            return null;
+        }
+        return () -> {
+            KeyStore replica = KeyStore.getInstance(keystore.getType(), keystore.getProvider());
+            replica.load(new ByteBufferInputStream(origin.content.duplicate()), origin.password);
+            return replica;
+        };
+    }
+
+    /**
+     * Open a session to apply several mutations to a keystore file with a single load and store.
+     *
+     * @param keystoreFile keystore file
+     * @param keystoreType keystore type, {@code null} for {@link KeyStore#getDefaultType()}
+     * @param password keystore password
+     * @param createIfMissing {@code true} to start from an empty keystore if the file does not exist
+     * @return the new session
+     */
+    public KeyStoreSession openSession(
+            File keystoreFile, String keystoreType, char[] password, boolean createIfMissing) {
+        return openSession(keystoreFile, keystoreType, password, createIfMissing, KeyStoreWriteOptions.defaults());
+    }
+
+    /**
+     * Open a session to apply several mutations to a keystore file with a single load and store.
+     *
+     * @param keystoreFile keystore file
+     * @param keystoreType keystore type, {@code null} for {@link KeyStore#getDefaultType()}
+     * @param password keystore password
+     * @param createIfMissing {@code true} to start from an empty keystore if the file does not exist
+     * @param writeOptions how to write the keystore on commit
+     * @return the new session
+     */
+    public KeyStoreSession openSession(
+            File keystoreFile,
+            String keystoreType,
+            char[] password,
+            boolean createIfMissing,
+            KeyStoreWriteOptions writeOptions) {
+        return new KeyStoreSession(this, keystoreFile, keystoreType, password, createIfMissing, writeOptions);
+    }
+
+    /**
+     * Drop the cached keystore of the given file, if any.
+     *
+     * @param keystoreFile keystore file
+     */
+    public void invalidate(File keystoreFile) {
+        try {
+            entries.remove(keystoreFile.getCanonicalPath());
+            checkedOut.remove(keystoreFile.getCanonicalPath());
+            if (deferred.remove(keystoreFile.getCanonicalPath()) != null) {
+                log.warn("Deferred changes to keystore {} are discarded", keystoreFile);
+            }
+        } catch (IOException e) {
+            // canonical path could not be resolved, nothing can have been cached under it
+            log.debug("Could not resolve keystore path {}", keystoreFile, e);
+        }
+    }
+
+    /**
+     * Bind the cache to a build: keystores cached or deferred by another build are dropped.
+     *
+     * @param sessionId identifier of the build
+     */
+    public void joinSession(String sessionId) {
+        if (sessionId.equals(this.sessionId)) {
+            return;
+        }
+        synchronized (this) {
+            if (sessionId.equals(this.sessionId)) {
+                return;
+            }
+            if (this.sessionId != null) {
+                if (!deferred.isEmpty()) {
+                    log.warn(
+                            "Deferred changes to {} keystore(s) were never flushed by the previous build, discarded",
+                            deferred.size());
+                }
+                deferred.clear();
+                entries.clear();
+                checkedOut.clear();
+                indexes.clear();
+                origins.clear();
+                log.debug("New build, keystore cache cleared");
+            }
+            this.sessionId = sessionId;
+        }
+    }
+
+    /**
+     * Drop all cached keystores.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    static void writeAtomically(File file, byte[] content, boolean fsync) throws IOException {
+        File parentDir = file.getAbsoluteFile().getParentFile();
+        if (!parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+
+        Path target = file.toPath();
+        Path temp = createTempFile(parentDir.toPath(), file.getName());
+        try {
+            copyPermissions(target, temp);
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (fsync) {
+                    channel.force(true);
+                }
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                log.debug("Atomic move not supported for {}, replacing it", target);
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            if (fsync) {
+                syncDirectory(parentDir.toPath());
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Create the file the keystore is written to before replacing it, with the default permissions of a new file, as
+     * the umask gives them, rather than the owner only ones of {@link Files#createTempFile}: a new keystore is then
+     * as readable as one written in place.
+     */
+    private static Path createTempFile(Path dir, String name) throws IOException {
+        while (true) {
+            Path temp = dir.resolve("." + name + "."
+                    + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException e) {
+                // another writer drew the same name, draw again
+            }
+        }
+    }
+
+    /**
+     * Keep the permissions of a keystore being replaced.
+     */
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        if (Files.exists(from)
+                && FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        }
+    }
+
+    /**
+     * Persist the rename itself. Not all platforms can open a directory (Windows cannot), in which case the
+     * rename is left to the file system.
+     */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Could not sync directory {}", dir, e);
+        }
+    }
+
+    /**
+     * Read a keystore file in one go, or map it in memory if it is large.
+     * <p>
+     * Mapping is not used on Windows, where a mapped file cannot be replaced until the mapping is garbage
+     * collected.
+     */
+    static ByteBuffer read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD && !WINDOWS) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Keystore file is too large: " + file);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read until the buffer is full or the file ends
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * Type to load a keystore file with: the configured type, unless the file content is recognized as another
+     * format, in which case loading it with the configured type would fail.
+     */
+    private static String resolveType(File file, String keystoreType, KeyStoreFormat format) {
+        if (format == null) {
+            return effectiveType(keystoreType);
+        }
+        if (keystoreType == null) {
+            return format.getType();
+        }
+
+        KeyStoreFormat configuredFormat = KeyStoreFormat.forType(keystoreType);
+        if (configuredFormat == null || configuredFormat == format) {
+            return keystoreType;
+        }
+
+        log.warn("Keystore {} is a {} keystore, not {}: loading it as {}", file, format, keystoreType, format);
+        return format.getType();
+    }
+
+    private static String effectiveType(String keystoreType) {
+        return keystoreType != null ? keystoreType : KeyStore.getDefaultType();
+    }
+
+    private static byte[] sha256(byte[] content) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-256").digest(content);
+    }
+
+    private static byte[] sha256(ByteBuffer content) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(content);
+        return digest.digest();
+    }
+
+    private byte[] digest(char[] password) throws NoSuchAlgorithmException {
+        if (password == null) {
+            return new byte[0];
+        }
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(passwordSalt);
+
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+        byte[] raw = new byte[bytes.remaining()];
+        bytes.get(raw);
+        digest.update(raw);
+        Arrays.fill(raw, (byte) 0);
+
+        return digest.digest();
+    }
+
+    /**
+     * What a cached keystore was loaded from.
+     */
+    private static final class Fingerprint {
+        private final String type;
+        private final long size;
+        private final long lastModified;
+        private final byte[] contentHash;
+        private final byte[] passwordHash;
+
+        Fingerprint(String type, long size, long lastModified, byte[] contentHash, byte[] passwordHash) {
+            this.type = type;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.passwordHash = passwordHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Fingerprint)) {
+                return false;
+            }
+            Fingerprint that = (Fingerprint) o;
+            return size == that.size
+                    && lastModified == that.lastModified
+                    && type.equalsIgnoreCase(that.type)
+                    && MessageDigest.isEqual(contentHash, that.contentHash)
+                    && MessageDigest.isEqual(passwordHash, that.passwordHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type.toUpperCase(), size, lastModified, Arrays.hashCode(contentHash));
+        }
+    }
+
+    /**
+     * A modified keystore waiting to be written.
+     */
+    private static final class Deferred {
+        private final KeyStore keystore;
+        private final char[] password;
+        private final byte[] passwordHash;
+        private final KeyStoreWriteOptions writeOptions;
+        private final long originalSize;
+        private final long originalLastModified;
+        private byte[] encoded;
+
+        Deferred(
+                KeyStore keystore,
+                char[] password,
+                byte[] passwordHash,
+                KeyStoreWriteOptions writeOptions,
+                long originalSize,
+                long originalLastModified) {
+            this.keystore = keystore;
+            this.password = password;
+            this.passwordHash = passwordHash;
+            this.writeOptions = writeOptions;
+            this.originalSize = originalSize;
+            this.originalLastModified = originalLastModified;
+        }
+
+        /**
+         * New instance with the entries of the deferred keystore, loaded from its encoding.
+         */
+        KeyStore copy() throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+            KeyStore copy = KeyStore.getInstance(keystore.getType(), keystore.getProvider());
+            copy.load(new ByteArrayInputStream(encoded()), password);
+            return copy;
+        }
+
+        /**
+         * The keystore is not modified once deferred, so it is encoded once for all its copies.
+         */
+        private synchronized byte[] encoded()
+                throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+            if (encoded == null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                keystore.store(out, password);
+                encoded = out.toByteArray();
+            }
+            return encoded;
+        }
+    }
+
+    /**
+     * Content a keystore instance was loaded from, and the password to load it again.
+     */
+    private static final class Origin {
+        private final ByteBuffer content;
+        private final char[] password;
+
+        Origin(ByteBuffer content, char[] password) {
+            this.content = content;
+            this.password = password != null ? password.clone() : null;
+        }
+    }
+
+    /**
+     * Stream over a byte buffer, so that heap and mapped buffers are loaded without copy.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    private static final class CachedKeyStore {
+        private final Fingerprint fingerprint;
+        private final KeyStore keystore;
+
+        CachedKeyStore(Fingerprint fingerprint, KeyStore keystore) {
+            this.fingerprint = fingerprint;
+            this.keystore = keystore;
+        }
+    }
+}
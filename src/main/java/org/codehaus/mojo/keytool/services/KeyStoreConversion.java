@@ -0,0 +1,125 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+
+/**
+ * Result of the conversion of one keystore file, see {@link KeyStoreConversionService}.
+ *
+ * @since 2.1
+ */
+public final class KeyStoreConversion {
+
+    /**
+     * Outcome of a conversion.
+     */
+    public enum Status {
+        /**
+         * The keystore was converted.
+         */
+        CONVERTED,
+
+        /**
+         * The destination keystore already existed and was left as is.
+         */
+        SKIPPED,
+
+        /**
+         * The keystore could not be converted.
+         */
+        FAILED
+    }
+
+    private final File source;
+
+    private final File destination;
+
+    private final Status status;
+
+    private final int entryCount;
+
+    private final long elapsedMillis;
+
+    private final String error;
+
+    KeyStoreConversion(File source, File destination, Status status, int entryCount, long elapsedMillis, String error) {
+        this.source = source;
+        this.destination = destination;
+        this.status = status;
+        this.entryCount = entryCount;
+        this.elapsedMillis = elapsedMillis;
+        this.error = error;
+    }
+
+    /**
+     * @return source keystore file
+     */
+    public File getSource() {
+        return source;
+    }
+
+    /**
+     * @return destination keystore file
+     */
+    public File getDestination() {
+        return destination;
+    }
+
+    /**
+     * @return outcome of the conversion
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return number of converted entries, 0 unless converted
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return time spent on this keystore, in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return why the conversion failed, {@code null} unless it failed
+     */
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        switch (status) {
+            case CONVERTED:
+                return source + " -> " + destination + ": " + entryCount + " entries in " + elapsedMillis + " ms";
+            case SKIPPED:
+                return source + " -> " + destination + ": skipped, destination exists";
+            default:
+                return source + ": failed, " + error;
+        }
+    }
+}
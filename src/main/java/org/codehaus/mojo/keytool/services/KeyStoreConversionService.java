@@ -0,0 +1,272 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts keystore files to another format, several files at a time.
+ * <p>
+ * Each keystore is converted by one worker: it is loaded, every key is recovered once with the source key password
+ * and protected once with the destination key password, and the destination keystore is written once. The workers
+ * run on a pool of a configurable size, and each result is logged as soon as it is known.
+ *
+ * @since 2.1
+ */
+@Named
+@Singleton
+public class KeyStoreConversionService {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyStoreConversionService.class);
+
+    private static final ThreadFactory CONVERSION_THREADS = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "keytool-convert-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private final KeyStoreCache keyStoreCache;
+
+    /**
+     * Creates a service with its own keystore cache.
+     */
+    public KeyStoreConversionService() {
+        this(new KeyStoreCache());
+    }
+
+    /**
+     * Creates a service sharing the given keystore cache.
+     *
+     * @param keyStoreCache keystore cache
+     */
+    @Inject
+    public KeyStoreConversionService(KeyStoreCache keyStoreCache) {
+        this.keyStoreCache = keyStoreCache;
+    }
+
+    /**
+     * Convert keystore files on a worker pool.
+     * <p>
+     * A keystore failing to convert does not stop the others: its result is {@link KeyStoreConversion.Status#FAILED
+     * failed}.
+     *
+     * @param sources source keystore files
+     * @param destinations destination keystore files, in the same order as the sources
+     * @param sourceType source keystore type, {@code null} to detect it from each file
+     * @param sourcePassword source keystore password
+     * @param sourceKeyPassword source key password, {@code null} for the source keystore password
+     * @param destType destination keystore type
+     * @param destPassword destination keystore password, {@code null} for the source keystore password
+     * @param destKeyPassword destination key password, {@code null} for the destination keystore password
+     * @param overwrite {@code true} to replace existing destination keystores, otherwise they are skipped
+     * @param threads number of workers, {@code 0} or less for the number of processors
+     * @param writeOptions how to write the destination keystores
+     * @return the result of each conversion, in the order of the sources
+     * @throws IOException if interrupted
+     */
+    public List<KeyStoreConversion> convert(
+            List<File> sources,
+            List<File> destinations,
+            String sourceType,
+            char[] sourcePassword,
+            char[] sourceKeyPassword,
+            String destType,
+            char[] destPassword,
+            char[] destKeyPassword,
+            boolean overwrite,
+            int threads,
+            KeyStoreWriteOptions writeOptions)
+            throws IOException {
+
+        if (sources.size() != destinations.size()) {
+            throw new IllegalArgumentException("Each source keystore needs a destination");
+        }
+        if (sources.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        char[] storePassword = destPassword != null ? destPassword : sourcePassword;
+        char[] keyPassword = destKeyPassword != null ? destKeyPassword : storePassword;
+        char[] recoveryPassword = sourceKeyPassword != null ? sourceKeyPassword : sourcePassword;
+
+        int workers = Math.min(
+                sources.size(), threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        log.info("Converting {} keystore(s) to {} on {} thread(s)", sources.size(), destType, workers);
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers, CONVERSION_THREADS);
+        try {
+            CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+            List<KeyStoreConversion> results = new ArrayList<>(Collections.nCopies(sources.size(), null));
+            for (int i = 0; i < sources.size(); i++) {
+                int index = i;
+                completion.submit(() -> {
+                    results.set(
+                            index,
+                            convert(
+                                    sources.get(index),
+                                    destinations.get(index),
+                                    sourceType,
+                                    sourcePassword,
+                                    recoveryPassword,
+                                    destType,
+                                    storePassword,
+                                    keyPassword,
+                                    overwrite,
+                                    writeOptions));
+                    return index;
+                });
+            }
+
+            for (int done = 1; done <= sources.size(); done++) {
+                int index = completion.take().get();
+                log.info("[{}/{}] {}", done, sources.size(), results.get(index));
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while converting keystores");
+        } catch (ExecutionException e) {
+            // conversions report their own failures, only errors get here
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private KeyStoreConversion convert(
+            File source,
+            File destination,
+            String sourceType,
+            char[] sourcePassword,
+            char[] sourceKeyPassword,
+            String destType,
+            char[] destPassword,
+            char[] destKeyPassword,
+            boolean overwrite,
+            KeyStoreWriteOptions writeOptions) {
+
+        long start = System.nanoTime();
+        try {
+            if (source.getCanonicalFile().equals(destination.getCanonicalFile())) {
+                throw new IOException("source and destination are the same file");
+            }
+
+            // always locked in the same order, so that conversions in opposite directions cannot deadlock
+            boolean sourceFirst = source.getCanonicalFile().compareTo(destination.getCanonicalFile()) < 0;
+            int entryCount;
+            try (KeyStoreLocks.Handle firstLock = KeyStoreLocks.lock(sourceFirst ? source : destination);
+                    KeyStoreLocks.Handle secondLock = KeyStoreLocks.lock(sourceFirst ? destination : source)) {
+                if (!overwrite && keyStoreCache.exists(destination)) {
+                    return new KeyStoreConversion(
+                            source, destination, KeyStoreConversion.Status.SKIPPED, 0, elapsedMillis(start), null);
+                }
+
+                // the source is converted with its deferred changes, which stay deferred for the flush
+                boolean sourceCached = keyStoreCache.isCached(source);
+                try {
+                    KeyStore sourceKs = keyStoreCache.load(source, sourceType, sourcePassword);
+                    KeyStore destKs = newKeyStore(destType);
+                    destKs.load(null, destPassword);
+                    entryCount = copyEntries(
+                            sourceKs, destKs, writeOptions.getProtection(), sourceKeyPassword, destKeyPassword);
+                    keyStoreCache.store(destKs, destination, destPassword, writeOptions.withWriteBehind(false));
+                    // converted keystores are not used again by this build
+                    keyStoreCache.invalidate(destination);
+                } finally {
+                    // only drop what the conversion cached, keystores other goals use stay cached
+                    if (!sourceCached) {
+                        keyStoreCache.invalidate(source);
+                    }
+                }
+            }
+
+            return new KeyStoreConversion(
+                    source, destination, KeyStoreConversion.Status.CONVERTED, entryCount, elapsedMillis(start), null);
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            log.debug("Failed to convert {}", source, e);
+            String message =
+                    e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+            return new KeyStoreConversion(
+                    source, destination, KeyStoreConversion.Status.FAILED, 0, elapsedMillis(start), message);
+        }
+    }
+
+    private static int copyEntries(
+            KeyStore sourceKs,
+            KeyStore destKs,
+            KeyStoreProtection protection,
+            char[] sourceKeyPassword,
+            char[] destKeyPassword)
+            throws GeneralSecurityException {
+        int count = 0;
+        for (String alias : Collections.list(sourceKs.aliases())) {
+            if (sourceKs.isKeyEntry(alias)) {
+                Key key = BouncyCastle.getKey(sourceKs, alias, sourceKeyPassword);
+                Certificate[] chain = sourceKs.getCertificateChain(alias);
+                protection.setKeyEntry(destKs, alias, key, destKeyPassword, chain);
+            } else {
+                destKs.setCertificateEntry(alias, sourceKs.getCertificate(alias));
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private static KeyStore newKeyStore(String type) throws GeneralSecurityException {
+        KeyStoreFormat format = KeyStoreFormat.forType(type);
+        return format != null ? format.newKeyStore() : KeyStore.getInstance(type);
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000L;
+    }
+}
@@ -0,0 +1,285 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.Certificate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Differences between a source and a destination keystore, as the changes turning the destination into the source.
+ * <p>
+ * Entries of both keystores are indexed by alias and by SHA-256 fingerprint: the fingerprint of the certificate
+ * for trusted certificate entries, of the whole certificate chain for private key entries and of the key material
+ * for secret key entries. Only secret key entries need their key to be recovered. An entry is then:
+ * <ul>
+ *     <li>unchanged when both keystores have the same fingerprint under the same alias,</li>
+ *     <li>{@link ChangeType#CHANGED changed} when both keystores have the alias with different fingerprints,</li>
+ *     <li>{@link ChangeType#RENAMED renamed} when an alias only in the source and an alias only in the destination
+ *     have the same fingerprint,</li>
+ *     <li>{@link ChangeType#ADDED added} or {@link ChangeType#REMOVED removed} when its alias is only in the source or
+ *     only in the destination.</li>
+ * </ul>
+ *
+ * @since 2.1
+ */
+public final class KeyStoreDiff {
+
+    /**
+     * Kind of change of an entry.
+     */
+    public enum ChangeType {
+        /**
+         * Entry only in the source keystore.
+         */
+        ADDED,
+
+        /**
+         * Entry only in the destination keystore.
+         */
+        REMOVED,
+
+        /**
+         * Same entry under another alias in the source keystore.
+         */
+        RENAMED,
+
+        /**
+         * Alias in both keystores with another entry in the source keystore.
+         */
+        CHANGED
+    }
+
+    private final List<Change> changes;
+
+    private final int unchangedCount;
+
+    private KeyStoreDiff(List<Change> changes, int unchangedCount) {
+        this.changes = Collections.unmodifiableList(changes);
+        this.unchangedCount = unchangedCount;
+    }
+
+    /**
+     * Compute the changes turning the destination keystore into the source keystore.
+     *
+     * @param source source keystore
+     * @param sourceKeyPassword password of the source secret key entries
+     * @param dest destination keystore
+     * @param destKeyPassword password of the destination secret key entries
+     * @return differences between both keystores
+     * @throws GeneralSecurityException if an entry cannot be read
+     */
+    public static KeyStoreDiff compute(KeyStore source, char[] sourceKeyPassword, KeyStore dest, char[] destKeyPassword)
+            throws GeneralSecurityException {
+
+        Map<String, String> sourceIndex = fingerprints(source, sourceKeyPassword);
+        Map<String, String> destIndex = fingerprints(dest, destKeyPassword);
+
+        List<Change> changes = new ArrayList<>();
+        int unchanged = 0;
+
+        List<String> sourceOnly = new ArrayList<>();
+        for (Map.Entry<String, String> entry : sourceIndex.entrySet()) {
+            String destFingerprint = destIndex.get(entry.getKey());
+            if (destFingerprint == null) {
+                sourceOnly.add(entry.getKey());
+            } else if (destFingerprint.equals(entry.getValue())) {
+                unchanged++;
+            } else {
+                changes.add(new Change(ChangeType.CHANGED, entry.getKey(), null, entry.getValue()));
+            }
+        }
+
+        Map<String, Deque<String>> destOnlyByFingerprint = new HashMap<>();
+        for (Map.Entry<String, String> entry : destIndex.entrySet()) {
+            if (!sourceIndex.containsKey(entry.getKey())) {
+                destOnlyByFingerprint
+                        .computeIfAbsent(entry.getValue(), fingerprint -> new ArrayDeque<>())
+                        .add(entry.getKey());
+            }
+        }
+
+        for (String alias : sourceOnly) {
+            String fingerprint = sourceIndex.get(alias);
+            Deque<String> candidates = destOnlyByFingerprint.get(fingerprint);
+            String previousAlias = candidates != null ? candidates.poll() : null;
+            if (previousAlias != null) {
+                changes.add(new Change(ChangeType.RENAMED, alias, previousAlias, fingerprint));
+            } else {
+                changes.add(new Change(ChangeType.ADDED, alias, null, fingerprint));
+            }
+        }
+
+        for (Map.Entry<String, String> entry : destIndex.entrySet()) {
+            Deque<String> remaining = destOnlyByFingerprint.get(entry.getValue());
+            if (remaining != null && remaining.remove(entry.getKey())) {
+                changes.add(new Change(ChangeType.REMOVED, entry.getKey(), null, entry.getValue()));
+            }
+        }
+
+        return new KeyStoreDiff(changes, unchanged);
+    }
+
+    /**
+     * @return all changes, changed entries first, then added or renamed entries in source order, then removed
+     * entries in destination order
+     */
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * @param type kind of change
+     * @return changes of the given kind
+     */
+    public List<Change> getChanges(ChangeType type) {
+        List<Change> result = new ArrayList<>();
+        for (Change change : changes) {
+            if (change.getType() == type) {
+                result.add(change);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of entries identical in both keystores
+     */
+    public int getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    /**
+     * @return {@code true} if both keystores have the same entries under the same aliases
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return getChanges(ChangeType.ADDED).size() + " added, "
+                + getChanges(ChangeType.REMOVED).size()
+                + " removed, " + getChanges(ChangeType.RENAMED).size() + " renamed, "
+                + getChanges(ChangeType.CHANGED).size() + " changed, " + unchangedCount + " unchanged";
+    }
+
+    /**
+     * Index the entries of a keystore by alias, in keystore order. The fingerprint is prefixed with the entry type,
+     * so that a trusted certificate never matches a key entry with the same certificate.
+     */
+    private static Map<String, String> fingerprints(KeyStore keystore, char[] keyPassword)
+            throws GeneralSecurityException {
+
+        Map<String, String> index = new LinkedHashMap<>();
+        for (String alias : Collections.list(keystore.aliases())) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String entryType;
+            if (keystore.isCertificateEntry(alias)) {
+                entryType = "cert";
+                digest.update(keystore.getCertificate(alias).getEncoded());
+            } else {
+                Certificate[] chain = keystore.getCertificateChain(alias);
+                if (chain != null) {
+                    entryType = "key";
+                    for (Certificate certificate : chain) {
+                        digest.update(certificate.getEncoded());
+                    }
+                } else {
+                    entryType = "secret";
+                    Key key = BouncyCastle.getKey(keystore, alias, keyPassword);
+                    digest.update(key.getAlgorithm().getBytes(StandardCharsets.UTF_8));
+                    byte[] encoded = key.getEncoded();
+                    if (encoded != null) {
+                        digest.update(encoded);
+                    }
+                }
+            }
+            index.put(alias, entryType + ':' + KeyStoreIndex.toHex(digest.digest()));
+        }
+        return index;
+    }
+
+    /**
+     * One change between the destination and the source keystore.
+     */
+    public static final class Change {
+
+        private final ChangeType type;
+
+        private final String alias;
+
+        private final String previousAlias;
+
+        private final String fingerprint;
+
+        Change(ChangeType type, String alias, String previousAlias, String fingerprint) {
+            this.type = type;
+            this.alias = alias;
+            this.previousAlias = previousAlias;
+            this.fingerprint = fingerprint;
+        }
+
+        /**
+         * @return kind of change
+         */
+        public ChangeType getType() {
+            return type;
+        }
+
+        /**
+         * @return alias of the entry, in the source keystore except for removed entries
+         */
+        public String getAlias() {
+            return alias;
+        }
+
+        /**
+         * @return alias of a renamed entry in the destination keystore, {@code null} for other changes
+         */
+        public String getPreviousAlias() {
+            return previousAlias;
+        }
+
+        /**
+         * @return SHA-256 fingerprint of the entry, prefixed with its kind ({@code cert:}, {@code key:} or
+         * {@code secret:})
+         */
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        @Override
+        public String toString() {
+            return type == ChangeType.RENAMED ? type + " " + previousAlias + " -> " + alias : type + " " + alias;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.util.Locale;
+
+/**
+ * Keystore file formats that can be recognized from their first bytes.
+ *
+ * @since 2.1
+ */
+public enum KeyStoreFormat {
+
+    /**
+     * Sun JKS keystore, starting with magic number {@code 0xFEEDFEED}.
+     */
+    JKS("JKS", ".jks"),
+
+    /**
+     * Sun JCEKS keystore, starting with magic number {@code 0xCECECECE}.
+     */
+    JCEKS("JCEKS", ".jceks"),
+
+    /**
+     * PKCS#12 keystore: a DER (or BER) sequence starting with version 3.
+     */
+    PKCS12("PKCS12", ".p12"),
+
+    /**
+     * Bouncy Castle FIPS keystore: a DER sequence starting with another sequence.
+     */
+    BCFKS("BCFKS", ".bcfks");
+
+    private static final int JKS_MAGIC = 0xFEEDFEED;
+
+    private static final int JCEKS_MAGIC = 0xCECECECE;
+
+    private static final int DER_SEQUENCE = 0x30;
+
+    private static final int DER_INTEGER = 0x02;
+
+    private final String type;
+
+    private final String fileExtension;
+
+    KeyStoreFormat(String type, String fileExtension) {
+        this.type = type;
+        this.fileExtension = fileExtension;
+    }
+
+    /**
+     * @return the {@link KeyStore} type of this format
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return usual extension of files of this format, dot included
+     */
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    /**
+     * Detect the format of keystore content from its first bytes.
+     *
+     * @param content keystore content, from its current position; the position is not changed
+     * @return the detected format, {@code null} if it is not recognized
+     */
+    public static KeyStoreFormat detect(ByteBuffer content) {
+        ByteBuffer header = content.duplicate();
+        if (header.remaining() < 4) {
+            return null;
+        }
+
+        int magic = header.getInt(header.position());
+        if (magic == JKS_MAGIC) {
+            return JKS;
+        }
+        if (magic == JCEKS_MAGIC) {
+            return JCEKS;
+        }
+
+        if ((header.get() & 0xFF) != DER_SEQUENCE) {
+            return null;
+        }
+
+        // skip the length of the outer sequence
+        int length = header.get() & 0xFF;
+        if (length > 0x80) {
+            int lengthBytes = length & 0x7F;
+            if (lengthBytes > 4 || header.remaining() < lengthBytes) {
+                return null;
+            }
+            header.position(header.position() + lengthBytes);
+        }
+
+        if (header.remaining() < 3) {
+            return null;
+        }
+
+        int tag = header.get() & 0xFF;
+        if (tag == DER_INTEGER && header.get() == 1 && header.get() == 3) {
+            return PKCS12;
+        }
+        if (tag == DER_SEQUENCE) {
+            return BCFKS;
+        }
+        return null;
+    }
+
+    /**
+     * Get the format of a keystore type.
+     *
+     * @param type keystore type
+     * @return the format of that type, {@code null} for a type without a recognizable format
+     */
+    public static KeyStoreFormat forType(String type) {
+        if (type == null) {
+            return null;
+        }
+
+        String upperType = type.toUpperCase(Locale.ROOT);
+        for (KeyStoreFormat format : values()) {
+            if (format.type.equals(upperType)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Create an empty keystore instance of this format.
+     * <p>
+     * BCFKS keystores are created with the Bouncy Castle provider even if it is not registered.
+     *
+     * @return an uninitialized keystore
+     * @throws KeyStoreException if the keystore type is not available
+     */
+    public KeyStore newKeyStore() throws KeyStoreException {
+        if (this == BCFKS) {
+            return KeyStore.getInstance(type, BouncyCastle.provider());
+        }
+        return KeyStore.getInstance(type);
+    }
+}
@@ -0,0 +1,321 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.security.auth.x500.X500Principal;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+
+/**
+ * Lookup tables from certificate attributes to the aliases of a keystore, so that finding a certificate does not
+ * take a scan of all aliases decoding every certificate.
+ * <p>
+ * The certificate of a trusted certificate entry, and the first certificate of the chain of a private key entry,
+ * is indexed by SHA-256 fingerprint, subject, issuer, subject key identifier, authority key identifier and
+ * SHA-256 hash of its public key. Secret key entries are not indexed.
+ * <p>
+ * An index is obtained from {@link KeyStoreCache#index(KeyStore)}, which builds it once per loaded keystore. Code
+ * changing an entry of an indexed keystore must call {@link #update(KeyStore, String)} for the alias it changed;
+ * a {@link KeyStoreSession} drops the index of its keystore after a mutation modified it.
+ * <p>
+ * Instances are not thread safe.
+ *
+ * @since 2.1
+ */
+public final class KeyStoreIndex {
+
+    private final Map<String, Set<String>> byFingerprint = new HashMap<>();
+
+    private final Map<X500Principal, Set<String>> bySubject = new HashMap<>();
+
+    private final Map<X500Principal, Set<String>> byIssuer = new HashMap<>();
+
+    private final Map<String, Set<String>> bySubjectKeyIdentifier = new HashMap<>();
+
+    private final Map<String, Set<String>> byAuthorityKeyIdentifier = new HashMap<>();
+
+    private final Map<String, Set<String>> byPublicKey = new HashMap<>();
+
+    /**
+     * Indexed attributes by alias, to unindex an entry that changed.
+     */
+    private final Map<String, Attributes> attributes = new HashMap<>();
+
+    private KeyStoreIndex() {}
+
+    /**
+     * Index all entries of a keystore.
+     *
+     * @param keystore loaded keystore
+     * @return the index
+     * @throws KeyStoreException if an entry cannot be read
+     */
+    public static KeyStoreIndex build(KeyStore keystore) throws KeyStoreException {
+        KeyStoreIndex index = new KeyStoreIndex();
+        for (String alias : Collections.list(keystore.aliases())) {
+            index.add(alias, certificate(keystore, alias));
+        }
+        return index;
+    }
+
+    /**
+     * Index the current entry of an alias again, after it was set or deleted.
+     *
+     * @param keystore indexed keystore
+     * @param alias alias that changed
+     * @throws KeyStoreException if the entry cannot be read
+     */
+    public void update(KeyStore keystore, String alias) throws KeyStoreException {
+        remove(alias);
+        if (keystore.containsAlias(alias)) {
+            add(alias, certificate(keystore, alias));
+        }
+    }
+
+    /**
+     * @param fingerprint hex encoded SHA-256 fingerprint of a certificate
+     * @return aliases of the entries with that certificate
+     */
+    public Set<String> findByFingerprint(String fingerprint) {
+        return find(byFingerprint, fingerprint);
+    }
+
+    /**
+     * @param subject subject distinguished name
+     * @return aliases of the entries whose certificate has that subject
+     */
+    public Set<String> findBySubject(X500Principal subject) {
+        return find(bySubject, subject);
+    }
+
+    /**
+     * @param issuer issuer distinguished name
+     * @return aliases of the entries whose certificate has that issuer
+     */
+    public Set<String> findByIssuer(X500Principal issuer) {
+        return find(byIssuer, issuer);
+    }
+
+    /**
+     * @param keyIdentifier key identifier
+     * @return aliases of the entries whose certificate has that subject key identifier
+     */
+    public Set<String> findBySubjectKeyIdentifier(byte[] keyIdentifier) {
+        return find(bySubjectKeyIdentifier, toHex(keyIdentifier));
+    }
+
+    /**
+     * @param keyIdentifier key identifier
+     * @return aliases of the entries whose certificate has that authority key identifier
+     */
+    public Set<String> findByAuthorityKeyIdentifier(byte[] keyIdentifier) {
+        return find(byAuthorityKeyIdentifier, toHex(keyIdentifier));
+    }
+
+    /**
+     * @param publicKey public key
+     * @return aliases of the entries whose certificate certifies that public key
+     */
+    public Set<String> findByPublicKey(PublicKey publicKey) {
+        try {
+            return find(byPublicKey, sha256(publicKey.getEncoded()));
+        } catch (GeneralSecurityException e) {
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * Candidate issuers of a certificate: the entries whose subject key identifier is the authority key
+     * identifier of the certificate if it has one, else the entries whose subject is the issuer of the certificate.
+     * Signatures are not verified.
+     *
+     * @param certificate certificate
+     * @return aliases of the candidate issuers
+     */
+    public Set<String> findIssuers(X509Certificate certificate) {
+        byte[] authorityKeyIdentifier = authorityKeyIdentifier(certificate);
+        if (authorityKeyIdentifier != null) {
+            Set<String> aliases = findBySubjectKeyIdentifier(authorityKeyIdentifier);
+            if (!aliases.isEmpty()) {
+                return aliases;
+            }
+        }
+        return findBySubject(certificate.getIssuerX500Principal());
+    }
+
+    /**
+     * @param certificate certificate
+     * @return hex encoded SHA-256 fingerprint of the certificate
+     * @throws GeneralSecurityException if the certificate cannot be encoded
+     */
+    public static String fingerprint(Certificate certificate) throws GeneralSecurityException {
+        return sha256(certificate.getEncoded());
+    }
+
+    private void add(String alias, Certificate certificate) throws KeyStoreException {
+        if (certificate == null) {
+            return;
+        }
+
+        Attributes entry = new Attributes();
+        try {
+            entry.fingerprint = fingerprint(certificate);
+            entry.publicKey = sha256(certificate.getPublicKey().getEncoded());
+        } catch (GeneralSecurityException e) {
+            throw new KeyStoreException("Cannot index certificate of alias '" + alias + "'", e);
+        }
+        if (certificate instanceof X509Certificate) {
+            X509Certificate x509 = (X509Certificate) certificate;
+            entry.subject = x509.getSubjectX500Principal();
+            entry.issuer = x509.getIssuerX500Principal();
+            byte[] subjectKeyIdentifier = subjectKeyIdentifier(x509);
+            entry.subjectKeyIdentifier = subjectKeyIdentifier != null ? toHex(subjectKeyIdentifier) : null;
+            byte[] authorityKeyIdentifier = authorityKeyIdentifier(x509);
+            entry.authorityKeyIdentifier = authorityKeyIdentifier != null ? toHex(authorityKeyIdentifier) : null;
+        }
+
+        attributes.put(alias, entry);
+        put(byFingerprint, entry.fingerprint, alias);
+        put(byPublicKey, entry.publicKey, alias);
+        put(bySubject, entry.subject, alias);
+        put(byIssuer, entry.issuer, alias);
+        put(bySubjectKeyIdentifier, entry.subjectKeyIdentifier, alias);
+        put(byAuthorityKeyIdentifier, entry.authorityKeyIdentifier, alias);
+    }
+
+    private void remove(String alias) {
+        Attributes entry = attributes.remove(alias);
+        if (entry == null) {
+            return;
+        }
+        delete(byFingerprint, entry.fingerprint, alias);
+        delete(byPublicKey, entry.publicKey, alias);
+        delete(bySubject, entry.subject, alias);
+        delete(byIssuer, entry.issuer, alias);
+        delete(bySubjectKeyIdentifier, entry.subjectKeyIdentifier, alias);
+        delete(byAuthorityKeyIdentifier, entry.authorityKeyIdentifier, alias);
+    }
+
+    private static Certificate certificate(KeyStore keystore, String alias) throws KeyStoreException {
+        if (keystore.isCertificateEntry(alias)) {
+            return keystore.getCertificate(alias);
+        }
+        Certificate[] chain = keystore.getCertificateChain(alias);
+        return chain != null && chain.length > 0 ? chain[0] : null;
+    }
+
+    private static <K> Set<String> find(Map<K, Set<String>> map, K key) {
+        Set<String> aliases = map.get(key);
+        return aliases != null ? Collections.unmodifiableSet(aliases) : Collections.<String>emptySet();
+    }
+
+    private static <K> void put(Map<K, Set<String>> map, K key, String alias) {
+        if (key != null) {
+            map.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(alias);
+        }
+    }
+
+    private static <K> void delete(Map<K, Set<String>> map, K key, String alias) {
+        if (key == null) {
+            return;
+        }
+        Set<String> aliases = map.get(key);
+        if (aliases != null && aliases.remove(alias) && aliases.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    private static byte[] subjectKeyIdentifier(X509Certificate certificate) {
+        ASN1OctetString value = extensionValue(certificate, Extension.subjectKeyIdentifier.getId());
+        try {
+            return value != null
+                    ? SubjectKeyIdentifier.getInstance(value.getOctets()).getKeyIdentifier()
+                    : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static byte[] authorityKeyIdentifier(X509Certificate certificate) {
+        ASN1OctetString value = extensionValue(certificate, Extension.authorityKeyIdentifier.getId());
+        try {
+            return value != null
+                    ? AuthorityKeyIdentifier.getInstance(value.getOctets()).getKeyIdentifierOctets()
+                    : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Value of an extension, or {@code null} if the certificate does not have it or it cannot be parsed.
+     */
+    private static ASN1OctetString extensionValue(X509Certificate certificate, String oid) {
+        byte[] encoded = certificate.getExtensionValue(oid);
+        if (encoded == null) {
+            return null;
+        }
+        try {
+            return ASN1OctetString.getInstance(encoded);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String sha256(byte[] content) throws GeneralSecurityException {
+        return toHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * What an alias is indexed under.
+     */
+    private static final class Attributes {
+        private String fingerprint;
+        private String publicKey;
+        private X500Principal subject;
+        private X500Principal issuer;
+        private String subjectKeyIdentifier;
+        private String authorityKeyIdentifier;
+    }
+}
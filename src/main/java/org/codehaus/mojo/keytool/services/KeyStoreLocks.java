@@ -0,0 +1,215 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Locks guarding the load-modify-store cycle of a keystore file.
+ * <p>
+ * Threads of this JVM are serialized by reentrant locks striped by the canonical path of the keystore; other
+ * processes (and other class loaders of this JVM) by a {@link FileLock} on a lock file named after the SHA-256 of
+ * that path, in a {@code keytool-locks-<user>} directory of {@code java.io.tmpdir}. Lock files are kept out of the
+ * directory of the keystore, which may be packaged or committed. A lock file is never deleted, so that two processes
+ * always lock the same file.
+ *
+ * @since 2.1
+ */
+public final class KeyStoreLocks {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyStoreLocks.class);
+
+    private static final int STRIPE_COUNT = 64;
+
+    private static final long OVERLAP_RETRY_MILLIS = 20;
+
+    private static final File LOCK_DIRECTORY = new File(
+            System.getProperty("java.io.tmpdir"),
+            "keytool-locks-" + System.getProperty("user.name", "").replaceAll("[^A-Za-z0-9._-]", "_"));
+
+    private static final ReentrantLock[] STRIPES = new ReentrantLock[STRIPE_COUNT];
+
+    static {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            STRIPES[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * File locks held by this JVM, by canonical keystore path. An entry is only read or written by the thread
+     * holding the stripe of its path.
+     */
+    private static final Map<String, HeldFileLock> FILE_LOCKS = new ConcurrentHashMap<>();
+
+    private KeyStoreLocks() {
+        // static only
+    }
+
+    /**
+     * Lock a keystore file, blocking until both the in-JVM and the file lock are acquired.
+     * <p>
+     * Locks are reentrant: a thread may lock the same keystore again, the file lock is only released when the
+     * outermost handle is closed.
+     *
+     * @param keystoreFile keystore file to lock
+     * @return handle to close to release the lock
+     * @throws IOException if the lock file cannot be created or locked
+     */
+    public static Handle lock(File keystoreFile) throws IOException {
+        File file = keystoreFile.getCanonicalFile();
+        String key = file.getPath();
+        ReentrantLock stripe = STRIPES[(key.hashCode() & Integer.MAX_VALUE) % STRIPE_COUNT];
+
+        stripe.lock();
+        try {
+            HeldFileLock held = FILE_LOCKS.get(key);
+            if (held == null) {
+                held = acquireFileLock(file);
+                FILE_LOCKS.put(key, held);
+            }
+            held.holdCount++;
+        } catch (IOException | RuntimeException e) {
+            stripe.unlock();
+            throw e;
+        }
+
+        return new Handle(key, stripe);
+    }
+
+    /**
+     * @param keystoreFile keystore file
+     * @return the file locked to guard the keystore against other processes
+     * @throws IOException if the canonical path of the keystore cannot be resolved
+     */
+    static File getLockFile(File keystoreFile) throws IOException {
+        byte[] path = keystoreFile.getCanonicalPath().getBytes(StandardCharsets.UTF_8);
+        try {
+            return new File(
+                    LOCK_DIRECTORY,
+                    KeyStoreIndex.toHex(MessageDigest.getInstance("SHA-256").digest(path)) + ".lock");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static HeldFileLock acquireFileLock(File file) throws IOException {
+        File lockFile = getLockFile(file);
+        Files.createDirectories(LOCK_DIRECTORY.toPath());
+        FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            while (true) {
+                try {
+                    return new HeldFileLock(channel, channel.lock());
+                } catch (OverlappingFileLockException e) {
+                    // held through another class loader of this JVM, FileChannel.lock would not block on it
+                    log.debug("Waiting for lock on {}", lockFile);
+                    Thread.sleep(OVERLAP_RETRY_MILLIS);
+                }
+            }
+        } catch (InterruptedException e) {
+            channel.close();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for lock on " + lockFile);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void release(String key, ReentrantLock stripe) throws IOException {
+        try {
+            HeldFileLock held = FILE_LOCKS.get(key);
+            if (held != null && --held.holdCount == 0) {
+                FILE_LOCKS.remove(key);
+                held.close();
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * A held keystore lock, released on {@link #close()}.
+     */
+    public static final class Handle implements AutoCloseable {
+
+        private final String key;
+
+        private final ReentrantLock stripe;
+
+        private boolean released;
+
+        private Handle(String key, ReentrantLock stripe) {
+            this.key = key;
+            this.stripe = stripe;
+        }
+
+        /**
+         * Release the lock.
+         *
+         * @throws IOException if the file lock cannot be released
+         */
+        @Override
+        public void close() throws IOException {
+            if (!released) {
+                released = true;
+                release(key, stripe);
+            }
+        }
+    }
+
+    private static final class HeldFileLock {
+
+        private final FileChannel channel;
+
+        private final FileLock lock;
+
+        private int holdCount;
+
+        HeldFileLock(FileChannel channel, FileLock lock) {
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        void close() throws IOException {
+            try {
+                lock.release();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
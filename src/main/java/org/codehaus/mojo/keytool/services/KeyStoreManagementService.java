@@ -19,18 +19,32 @@ package org.codehaus.mojo.keytool.services;
  * under the License.
  */
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.UnrecoverableKeyException;
 import java.security.cert.Certificate;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,18 +61,83 @@ public class KeyStoreManagementService {
 
     private static final Logger log = LoggerFactory.getLogger(KeyStoreManagementService.class);
 
+    private static final ThreadFactory KEY_RECOVERY_THREADS = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "keytool-key-recovery-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private final KeyStoreCache keyStoreCache;
+
+    /**
+     * Creates a service with its own keystore cache.
+     */
+    public KeyStoreManagementService() {
+        this(new KeyStoreCache());
+    }
+
+    /**
+     * Creates a service sharing the given keystore cache.
+     *
+     * @param keyStoreCache keystore cache
+     */
+    @Inject
+    public KeyStoreManagementService(KeyStoreCache keyStoreCache) {
+        this.keyStoreCache = keyStoreCache;
+    }
+
     /**
      * List all aliases in a keystore.
+     * <p>
+     * The keystore is taken from the {@link KeyStoreCache keystore cache} when it holds it already.
      */
     public void listAliases(File keystoreFile, String keystoreType, char[] password, String specificAlias)
             throws Exception {
+        listAliases(keystoreFile, keystoreType, password, specificAlias, false);
+    }
 
-        KeyStore keystore = loadKeyStore(keystoreFile, keystoreType, password);
+    /**
+     * List all aliases in a keystore.
+     * <p>
+     * With {@code useSidecar}, aliases are read from the {@link KeyStoreSidecar metadata sidecar} of the keystore
+     * when it still describes the keystore and was written with the same password, without loading the keystore.
+     * Otherwise the
+     * keystore is taken from the {@link KeyStoreCache keystore cache} when it holds it already.
+     *
+     * @since 2.1
+     */
+    public void listAliases(
+            File keystoreFile, String keystoreType, char[] password, String specificAlias, boolean useSidecar)
+            throws Exception {
+
+        if (!keyStoreCache.exists(keystoreFile)) {
+            throw new IOException("Keystore file does not exist: " + keystoreFile);
+        }
+
+        // deferred changes are only in memory, the file and its sidecar describe the keystore before them
+        boolean deferred = keyStoreCache.isDeferred(keystoreFile);
+
+        // the sidecar hash matches the file, so its type is the detected one whatever the configured type
+        KeyStoreMetadata metadata = useSidecar && !deferred ? KeyStoreSidecar.read(keystoreFile, password) : null;
+        String providerName;
+        if (metadata != null) {
+            log.debug("Listing {} from its metadata sidecar", keystoreFile);
+            providerName = providerName(metadata.getType());
+        } else {
+            KeyStore keystore = loadKeyStore(keystoreFile, keystoreType, password);
+            metadata = KeyStoreMetadata.of(keystore);
+            providerName = keystore.getProvider().getName();
+        }
 
         if (specificAlias != null && !specificAlias.isEmpty()) {
-            listSingleAlias(keystore, specificAlias);
+            listSingleAlias(metadata, specificAlias);
         } else {
-            listAllAliases(keystore);
+            listAllAliases(metadata, providerName);
         }
     }
 
@@ -73,31 +152,36 @@ public class KeyStoreManagementService {
             String destAlias,
             char[] keyPassword)
             throws Exception {
+        changeAlias(
+                keystoreFile,
+                keystoreType,
+                storePassword,
+                alias,
+                destAlias,
+                keyPassword,
+                KeyStoreWriteOptions.defaults());
+    }
 
-        KeyStore keystore = loadKeyStore(keystoreFile, keystoreType, storePassword);
-
-        if (!keystore.containsAlias(alias)) {
-            throw new KeyStoreException("Source alias '" + alias + "' does not exist");
-        }
-
-        if (keystore.containsAlias(destAlias)) {
-            throw new KeyStoreException("Destination alias '" + destAlias + "' already exists");
-        }
-
-        Key key = keystore.getKey(alias, keyPassword);
-        Certificate[] chain = keystore.getCertificateChain(alias);
+    /**
+     * Change alias name.
+     *
+     * @param writeOptions how to write the keystore
+     */
+    public void changeAlias(
+            File keystoreFile,
+            String keystoreType,
+            char[] storePassword,
+            String alias,
+            String destAlias,
+            char[] keyPassword,
+            KeyStoreWriteOptions writeOptions)
+            throws Exception {
 
-        if (key != null) {
-            keystore.setKeyEntry(destAlias, key, keyPassword, chain);
-        } else {
-            Certificate cert = keystore.getCertificate(alias);
-            keystore.setCertificateEntry(destAlias, cert);
+        try (KeyStoreSession session =
+                keyStoreCache.openSession(keystoreFile, keystoreType, storePassword, false, writeOptions)) {
+            session.queue(changeAliasMutation(alias, destAlias, keyPassword));
+            session.commit();
         }
-
-        keystore.deleteEntry(alias);
-        saveKeyStore(keystore, keystoreFile, storePassword);
-
-        log.info("Alias changed from '{}' to '{}'", alias, destAlias);
     }
 
     /**
@@ -111,20 +195,36 @@ public class KeyStoreManagementService {
             char[] oldKeyPassword,
             char[] newKeyPassword)
             throws Exception {
+        changeKeyPassword(
+                keystoreFile,
+                keystoreType,
+                storePassword,
+                alias,
+                oldKeyPassword,
+                newKeyPassword,
+                KeyStoreWriteOptions.defaults());
+    }
 
-        KeyStore keystore = loadKeyStore(keystoreFile, keystoreType, storePassword);
+    /**
+     * Change key password.
+     *
+     * @param writeOptions how to write the keystore
+     */
+    public void changeKeyPassword(
+            File keystoreFile,
+            String keystoreType,
+            char[] storePassword,
+            String alias,
+            char[] oldKeyPassword,
+            char[] newKeyPassword,
+            KeyStoreWriteOptions writeOptions)
+            throws Exception {
 
-        if (!keystore.containsAlias(alias)) {
-            throw new KeyStoreException("Alias '" + alias + "' does not exist");
+        try (KeyStoreSession session =
+                keyStoreCache.openSession(keystoreFile, keystoreType, storePassword, false, writeOptions)) {
+            session.queue(changeKeyPasswordMutation(alias, oldKeyPassword, newKeyPassword));
+            session.commit();
         }
-
-        Key key = keystore.getKey(alias, oldKeyPassword);
-        Certificate[] chain = keystore.getCertificateChain(alias);
-
-        keystore.setKeyEntry(alias, key, newKeyPassword, chain);
-        saveKeyStore(keystore, keystoreFile, storePassword);
-
-        log.info("Key password changed for alias: {}", alias);
     }
 
     /**
@@ -132,9 +232,33 @@ public class KeyStoreManagementService {
      */
     public void changeStorePassword(File keystoreFile, String keystoreType, char[] oldPassword, char[] newPassword)
             throws Exception {
+        changeStorePassword(keystoreFile, keystoreType, oldPassword, newPassword, KeyStoreWriteOptions.defaults());
+    }
+
+    /**
+     * Change store password.
+     *
+     * @param writeOptions how to write the keystore
+     */
+    public void changeStorePassword(
+            File keystoreFile,
+            String keystoreType,
+            char[] oldPassword,
+            char[] newPassword,
+            KeyStoreWriteOptions writeOptions)
+            throws Exception {
 
-        KeyStore keystore = loadKeyStore(keystoreFile, keystoreType, oldPassword);
-        saveKeyStore(keystore, keystoreFile, newPassword);
+        try (KeyStoreSession session =
+                keyStoreCache.openSession(keystoreFile, keystoreType, oldPassword, false, writeOptions)) {
+            if (Arrays.equals(oldPassword, newPassword)) {
+                // still load the keystore, so that a wrong password is reported
+                session.commit();
+                log.info("New keystore password is the same as the old one. Keystore left unchanged.");
+                return;
+            }
+            session.changePassword(newPassword);
+            session.commit();
+        }
 
         log.info("Keystore password changed");
     }
@@ -154,62 +278,473 @@ public class KeyStoreManagementService {
             char[] sourceKeyPassword,
             char[] destKeyPassword)
             throws Exception {
+        importKeystore(
+                sourceKeystoreFile,
+                sourceType,
+                sourcePassword,
+                destKeystoreFile,
+                destType,
+                destPassword,
+                sourceAlias,
+                destAlias,
+                sourceKeyPassword,
+                destKeyPassword,
+                KeyStoreWriteOptions.defaults());
+    }
+
+    /**
+     * Import keystore.
+     *
+     * @param writeOptions how to write the keystore
+     */
+    public void importKeystore(
+            File sourceKeystoreFile,
+            String sourceType,
+            char[] sourcePassword,
+            File destKeystoreFile,
+            String destType,
+            char[] destPassword,
+            String sourceAlias,
+            String destAlias,
+            char[] sourceKeyPassword,
+            char[] destKeyPassword,
+            KeyStoreWriteOptions writeOptions)
+            throws Exception {
+        importKeystore(
+                sourceKeystoreFile,
+                sourceType,
+                sourcePassword,
+                destKeystoreFile,
+                destType,
+                destPassword,
+                sourceAlias,
+                destAlias,
+                sourceKeyPassword,
+                destKeyPassword,
+                false,
+                writeOptions);
+    }
+
+    /**
+     * Import keystore.
+     *
+     * @param dedup {@code true} not to import trusted certificates already in the destination keystore, or already
+     * imported, under another alias
+     * @param writeOptions how to write the keystore
+     */
+    public void importKeystore(
+            File sourceKeystoreFile,
+            String sourceType,
+            char[] sourcePassword,
+            File destKeystoreFile,
+            String destType,
+            char[] destPassword,
+            String sourceAlias,
+            String destAlias,
+            char[] sourceKeyPassword,
+            char[] destKeyPassword,
+            boolean dedup,
+            KeyStoreWriteOptions writeOptions)
+            throws Exception {
 
         KeyStore sourceKs = loadKeyStore(sourceKeystoreFile, sourceType, sourcePassword);
-        KeyStore destKs = loadOrCreateKeyStore(destKeystoreFile, destType, destPassword);
 
-        if (sourceAlias != null && !sourceAlias.isEmpty()) {
-            importSingleEntry(sourceKs, destKs, sourceAlias, destAlias, sourceKeyPassword, destKeyPassword);
+        try (KeyStoreSession session =
+                keyStoreCache.openSession(destKeystoreFile, destType, destPassword, true, writeOptions)) {
+            session.queue(importKeystoreMutation(
+                    sourceKs, sourceAlias, destAlias, sourceKeyPassword, destKeyPassword, dedup));
+            session.commit();
+        }
+        log.info("Keystore import completed");
+    }
+
+    /**
+     * Import all entries of a keystore into a keystore split in shards, see {@link KeyStoreShards}.
+     * <p>
+     * Each shard is a keystore of its own, only written if one of its entries was added or changed, and the
+     * manifest is only written if a shard was. An alias imported to another shard than the one holding it so far
+     * is deleted from its previous shard. Shards are not written atomically as a whole.
+     *
+     * @param destKeystoreFile keystore the shards stand for, which is itself not written
+     * @param shardCount number of shards, which cannot change once the shards exist
+     * @param dedup {@code true} not to import trusted certificates already in the shards under another alias
+     * @param writeOptions how to write the shards
+     */
+    public void importKeystoreSharded(
+            File sourceKeystoreFile,
+            String sourceType,
+            char[] sourcePassword,
+            File destKeystoreFile,
+            String destType,
+            char[] destPassword,
+            char[] sourceKeyPassword,
+            char[] destKeyPassword,
+            int shardCount,
+            boolean dedup,
+            KeyStoreWriteOptions writeOptions)
+            throws Exception {
+
+        KeyStore sourceKs = loadKeyStore(sourceKeystoreFile, sourceType, sourcePassword);
+        KeyStoreShards shards = new KeyStoreShards(destKeystoreFile, shardCount);
+
+        int existingCount = shards.readManifestCount();
+        if (existingCount >= 0 && existingCount != shardCount) {
+            throw new IOException("Keystore " + destKeystoreFile + " is split in " + existingCount + " shards, not "
+                    + shardCount + ": delete its shards to change the shard count");
+        }
+
+        // where each alias is so far, to delete the aliases moving to another shard
+        Map<String, Integer> currentShards = new HashMap<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            File shardFile = shards.getShardFile(shard);
+            try (KeyStoreLocks.Handle lock = KeyStoreLocks.lock(shardFile)) {
+                if (shardFile.exists()) {
+                    for (String alias : Collections.list(keyStoreCache
+                            .load(shardFile, destType, destPassword)
+                            .aliases())) {
+                        currentShards.put(alias, shard);
+                    }
+                }
+            }
+        }
+
+        List<List<String>> imports = new ArrayList<>();
+        List<List<String>> removals = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            imports.add(new ArrayList<>());
+            removals.add(new ArrayList<>());
+        }
+        List<String> keyAliases = new ArrayList<>();
+        for (String alias : Collections.list(sourceKs.aliases())) {
+            int shard = shards.shardOf(sourceKs, alias);
+            imports.get(shard).add(alias);
+            Integer previous = currentShards.get(alias);
+            if (previous != null && previous != shard) {
+                removals.get(previous).add(alias);
+            }
+            if (sourceKs.isKeyEntry(alias)) {
+                keyAliases.add(alias);
+            }
+        }
+        Map<String, Key> keys = recoverKeys(sourceKs, keyAliases, sourceKeyPassword);
+
+        // the manifest describes the shard files, so they are written now even with write-behind
+        int[] sizes = new int[shardCount];
+        byte[][] hashes = new byte[shardCount][];
+        String type = null;
+        for (int shard = 0; shard < shardCount; shard++) {
+            File shardFile = shards.getShardFile(shard);
+            try (KeyStoreSession session = keyStoreCache.openSession(
+                    shardFile, destType, destPassword, true, writeOptions.withWriteBehind(false))) {
+                session.queue(importShardMutation(
+                        sourceKs,
+                        imports.get(shard),
+                        removals.get(shard),
+                        keys,
+                        destKeyPassword != null ? destKeyPassword : sourceKeyPassword,
+                        dedup,
+                        !shardFile.exists()));
+                KeyStore shardKs = session.commit();
+                sizes[shard] = shardKs.size();
+                hashes[shard] = keyStoreCache.contentHash(shardFile);
+                type = shardKs.getType();
+            }
+        }
+
+        if (shards.writeManifest(type, sizes, hashes)) {
+            log.info("Keystore shards written: {}", shards.getManifestFile());
         } else {
-            importAllEntries(sourceKs, destKs, sourceKeyPassword, destKeyPassword);
+            log.info("Keystore shards unchanged: {}", shards.getManifestFile());
         }
+    }
 
-        saveKeyStore(destKs, destKeystoreFile, destPassword);
-        log.info("Keystore import completed");
+    /**
+     * Compare two keystores, without modifying any of them.
+     *
+     * @return the changes turning the destination keystore into the source keystore, see {@link KeyStoreDiff}
+     */
+    public KeyStoreDiff diffKeystores(
+            File sourceKeystoreFile,
+            String sourceType,
+            char[] sourcePassword,
+            File destKeystoreFile,
+            String destType,
+            char[] destPassword,
+            char[] sourceKeyPassword,
+            char[] destKeyPassword)
+            throws Exception {
+
+        KeyStore sourceKs = loadKeyStore(sourceKeystoreFile, sourceType, sourcePassword);
+        KeyStore destKs = keyStoreCache.loadOrCreate(destKeystoreFile, destType, destPassword);
+
+        return KeyStoreDiff.compute(
+                sourceKs, sourceKeyPassword, destKs, destKeyPassword != null ? destKeyPassword : sourceKeyPassword);
     }
 
-    private void listSingleAlias(KeyStore keystore, String alias) throws KeyStoreException {
-        if (!keystore.containsAlias(alias)) {
-            log.warn("Alias '{}' does not exist in keystore", alias);
-            return;
+    /**
+     * Synchronize a keystore with another one.
+     */
+    public KeyStoreDiff syncKeystore(
+            File sourceKeystoreFile,
+            String sourceType,
+            char[] sourcePassword,
+            File destKeystoreFile,
+            String destType,
+            char[] destPassword,
+            char[] sourceKeyPassword,
+            char[] destKeyPassword)
+            throws Exception {
+        return syncKeystore(
+                sourceKeystoreFile,
+                sourceType,
+                sourcePassword,
+                destKeystoreFile,
+                destType,
+                destPassword,
+                sourceKeyPassword,
+                destKeyPassword,
+                KeyStoreWriteOptions.defaults());
+    }
+
+    /**
+     * Synchronize a keystore with another one: the destination keystore ends up with the same entries under the
+     * same aliases as the source keystore, but only the entries that differ are written and only the keys of those
+     * entries are recovered. The destination keystore is not stored at all if both keystores are already in sync.
+     *
+     * @param writeOptions how to write the keystore
+     * @return the applied changes
+     */
+    public KeyStoreDiff syncKeystore(
+            File sourceKeystoreFile,
+            String sourceType,
+            char[] sourcePassword,
+            File destKeystoreFile,
+            String destType,
+            char[] destPassword,
+            char[] sourceKeyPassword,
+            char[] destKeyPassword,
+            KeyStoreWriteOptions writeOptions)
+            throws Exception {
+
+        KeyStore sourceKs = loadKeyStore(sourceKeystoreFile, sourceType, sourcePassword);
+
+        // the diff is computed under the lock of the destination keystore, which the session then takes again
+        KeyStoreDiff diff;
+        try (KeyStoreLocks.Handle lock = KeyStoreLocks.lock(destKeystoreFile)) {
+            diff = KeyStoreDiff.compute(
+                    sourceKs,
+                    sourceKeyPassword,
+                    keyStoreCache.loadOrCreate(destKeystoreFile, destType, destPassword),
+                    destKeyPassword != null ? destKeyPassword : sourceKeyPassword);
+
+            try (KeyStoreSession session =
+                    keyStoreCache.openSession(destKeystoreFile, destType, destPassword, true, writeOptions)) {
+                session.queue(patchKeystoreMutation(sourceKs, diff, sourceKeyPassword, destKeyPassword));
+                session.commit();
+            }
         }
 
-        log.info("Alias: {}", alias);
-        log.info("  Type: {}", keystore.getType());
+        if (diff.isEmpty()) {
+            log.info("Keystore already in sync ({} entries). Keystore left unchanged.", diff.getUnchangedCount());
+        } else {
+            log.info("Keystore synchronized: {}", diff);
+        }
+        return diff;
+    }
+
+    /**
+     * Mutation renaming an entry.
+     *
+     * @param alias current alias of the entry
+     * @param destAlias new alias of the entry
+     * @param keyPassword password of the entry, if it is a key entry
+     * @return the mutation, to be queued in a {@link KeyStoreSession}
+     */
+    public KeyStoreMutation changeAliasMutation(String alias, String destAlias, char[] keyPassword) {
+        return (keystore, protection) -> {
+            if (!keystore.containsAlias(alias)) {
+                throw new KeyStoreException("Source alias '" + alias + "' does not exist");
+            }
+
+            if (keystore.containsAlias(destAlias)) {
+                throw new KeyStoreException("Destination alias '" + destAlias + "' already exists");
+            }
 
-        if (keystore.isKeyEntry(alias)) {
-            log.info("  Entry type: PrivateKeyEntry");
+            Key key = BouncyCastle.getKey(keystore, alias, keyPassword);
             Certificate[] chain = keystore.getCertificateChain(alias);
-            if (chain != null) {
-                log.info("  Certificate chain length: {}", chain.length);
+
+            if (key != null) {
+                protection.setKeyEntry(keystore, destAlias, key, keyPassword, chain);
+            } else {
+                Certificate cert = keystore.getCertificate(alias);
+                keystore.setCertificateEntry(destAlias, cert);
             }
-        } else if (keystore.isCertificateEntry(alias)) {
-            log.info("  Entry type: TrustedCertificateEntry");
-            Certificate cert = keystore.getCertificate(alias);
-            if (cert != null) {
-                log.info("  Certificate type: {}", cert.getType());
+
+            keystore.deleteEntry(alias);
+
+            log.info("Alias changed from '{}' to '{}'", alias, destAlias);
+            return true;
+        };
+    }
+
+    /**
+     * Mutation changing the password protecting a key entry.
+     *
+     * @param alias alias of the key entry
+     * @param oldKeyPassword current key password
+     * @param newKeyPassword new key password
+     * @return the mutation, to be queued in a {@link KeyStoreSession}
+     */
+    public KeyStoreMutation changeKeyPasswordMutation(String alias, char[] oldKeyPassword, char[] newKeyPassword) {
+        return (keystore, protection) -> {
+            if (!keystore.containsAlias(alias)) {
+                throw new KeyStoreException("Alias '" + alias + "' does not exist");
             }
-        }
+
+            Key key = BouncyCastle.getKey(keystore, alias, oldKeyPassword);
+
+            if (Arrays.equals(oldKeyPassword, newKeyPassword)) {
+                log.info("New key password is the same as the old one for alias: {}. Keystore left unchanged.", alias);
+                return false;
+            }
+
+            Certificate[] chain = keystore.getCertificateChain(alias);
+
+            protection.setKeyEntry(keystore, alias, key, newKeyPassword, chain);
+
+            log.info("Key password changed for alias: {}", alias);
+            return true;
+        };
     }
 
-    private void listAllAliases(KeyStore keystore) throws KeyStoreException {
-        Enumeration<String> aliases = keystore.aliases();
-        int count = 0;
+    /**
+     * Mutation importing one or all entries of a loaded source keystore.
+     *
+     * @param sourceKs source keystore
+     * @param sourceAlias alias to import, {@code null} or empty to import all entries
+     * @param destAlias alias to import the single entry to, {@code null} to keep the source alias
+     * @param sourceKeyPassword password of the source key entries
+     * @param destKeyPassword password to protect imported key entries with, {@code null} to keep the source one
+     * @return the mutation, to be queued in a {@link KeyStoreSession}
+     */
+    public KeyStoreMutation importKeystoreMutation(
+            KeyStore sourceKs, String sourceAlias, String destAlias, char[] sourceKeyPassword, char[] destKeyPassword) {
+        return importKeystoreMutation(sourceKs, sourceAlias, destAlias, sourceKeyPassword, destKeyPassword, false);
+    }
+
+    /**
+     * Mutation importing one or all entries of a loaded source keystore.
+     *
+     * @param sourceKs source keystore
+     * @param sourceAlias alias to import, {@code null} or empty to import all entries
+     * @param destAlias alias to import the single entry to, {@code null} to keep the source alias
+     * @param sourceKeyPassword password of the source key entries
+     * @param destKeyPassword password to protect imported key entries with, {@code null} to keep the source one
+     * @param dedup when importing all entries, {@code true} to skip trusted certificates already in the destination
+     * keystore under another alias
+     * @return the mutation, to be queued in a {@link KeyStoreSession}
+     */
+    public KeyStoreMutation importKeystoreMutation(
+            KeyStore sourceKs,
+            String sourceAlias,
+            String destAlias,
+            char[] sourceKeyPassword,
+            char[] destKeyPassword,
+            boolean dedup) {
+        return (destKs, protection) -> {
+            if (sourceAlias != null && !sourceAlias.isEmpty()) {
+                importSingleEntry(
+                        sourceKs, destKs, protection, sourceAlias, destAlias, sourceKeyPassword, destKeyPassword);
+                return true;
+            }
+            return importAllEntries(sourceKs, destKs, protection, sourceKeyPassword, destKeyPassword, dedup);
+        };
+    }
 
-        log.info("Keystore type: {}", keystore.getType());
-        log.info("Keystore provider: {}", keystore.getProvider().getName());
+    /**
+     * Mutation applying the changes of a diff, taking the entries from the source keystore it was computed from.
+     *
+     * @param sourceKs source keystore of the diff
+     * @param diff changes to apply
+     * @param sourceKeyPassword password of the source key entries
+     * @param destKeyPassword password to protect written key entries with, {@code null} to keep the source one
+     * @return the mutation, to be queued in a {@link KeyStoreSession} of the destination keystore of the diff
+     */
+    public KeyStoreMutation patchKeystoreMutation(
+            KeyStore sourceKs, KeyStoreDiff diff, char[] sourceKeyPassword, char[] destKeyPassword) {
+        return (destKs, protection) -> {
+            List<String> keyAliases = new ArrayList<>();
+            for (KeyStoreDiff.Change change : diff.getChanges()) {
+                if (change.getType() != KeyStoreDiff.ChangeType.REMOVED && sourceKs.isKeyEntry(change.getAlias())) {
+                    keyAliases.add(change.getAlias());
+                }
+            }
+            Map<String, Key> keys = recoverKeys(sourceKs, keyAliases, sourceKeyPassword);
+
+            // delete first: on keystores with case-insensitive aliases, a written alias may match a deleted one
+            for (KeyStoreDiff.Change change : diff.getChanges()) {
+                if (change.getType() == KeyStoreDiff.ChangeType.REMOVED) {
+                    destKs.deleteEntry(change.getAlias());
+                } else if (change.getType() == KeyStoreDiff.ChangeType.RENAMED) {
+                    destKs.deleteEntry(change.getPreviousAlias());
+                }
+            }
+            for (KeyStoreDiff.Change change : diff.getChanges()) {
+                if (change.getType() != KeyStoreDiff.ChangeType.REMOVED) {
+                    copyEntry(
+                            sourceKs,
+                            destKs,
+                            protection,
+                            change.getAlias(),
+                            keys.get(change.getAlias()),
+                            destKeyPassword != null ? destKeyPassword : sourceKeyPassword);
+                }
+                log.info("  {}", change);
+            }
+            return !diff.isEmpty();
+        };
+    }
+
+    private static String providerName(String keystoreType) throws KeyStoreException {
+        KeyStoreFormat format = KeyStoreFormat.forType(keystoreType);
+        KeyStore keystore = format != null ? format.newKeyStore() : KeyStore.getInstance(keystoreType);
+        return keystore.getProvider().getName();
+    }
+
+    private void listSingleAlias(KeyStoreMetadata metadata, String alias) {
+        KeyStoreMetadata.Entry entry = metadata.getEntry(alias);
+        if (entry == null) {
+            log.warn("Alias '{}' does not exist in keystore", alias);
+            return;
+        }
+
+        log.info("Alias: {}", entry.getAlias());
+        log.info("  Type: {}", metadata.getType());
+        log.info("  Entry type: {}", entry.getEntryType());
+
+        if (entry.getEntryType() == KeyStoreMetadata.EntryType.PRIVATE_KEY) {
+            log.info("  Certificate chain length: {}", entry.getChainLength());
+        } else if (entry.getCertificateType() != null) {
+            log.info("  Certificate type: {}", entry.getCertificateType());
+        }
+        if (entry.getSubject() != null) {
+            log.info("  Subject: {}", entry.getSubject());
+            log.info("  Serial number: {}", entry.getSerialNumber().toString(16));
+            log.info("  Valid until: {}", entry.getNotAfter());
+        }
+    }
+
+    private void listAllAliases(KeyStoreMetadata metadata, String providerName) {
+        log.info("Keystore type: {}", metadata.getType());
+        log.info("Keystore provider: {}", providerName);
         log.info("");
 
-        while (aliases.hasMoreElements()) {
-            String alias = aliases.nextElement();
+        int count = 0;
+        for (KeyStoreMetadata.Entry entry : metadata.getEntries()) {
             count++;
 
-            log.info("Alias {}: {}", count, alias);
-            if (keystore.isKeyEntry(alias)) {
-                log.info("  Entry type: PrivateKeyEntry");
-            } else if (keystore.isCertificateEntry(alias)) {
-                log.info("  Entry type: TrustedCertificateEntry");
-            }
+            log.info("Alias {}: {}", count, entry.getAlias());
+            log.info("  Entry type: {}", entry.getEntryType());
         }
 
         log.info("");
@@ -219,18 +754,20 @@ public class KeyStoreManagementService {
     private void importSingleEntry(
             KeyStore sourceKs,
             KeyStore destKs,
+            KeyStoreProtection protection,
             String sourceAlias,
             String destAlias,
             char[] sourceKeyPassword,
             char[] destKeyPassword)
-            throws Exception {
+            throws GeneralSecurityException {
 
         String targetAlias = (destAlias != null && !destAlias.isEmpty()) ? destAlias : sourceAlias;
 
         if (sourceKs.isKeyEntry(sourceAlias)) {
-            Key key = sourceKs.getKey(sourceAlias, sourceKeyPassword);
+            Key key = BouncyCastle.getKey(sourceKs, sourceAlias, sourceKeyPassword);
             Certificate[] chain = sourceKs.getCertificateChain(sourceAlias);
-            destKs.setKeyEntry(targetAlias, key, destKeyPassword != null ? destKeyPassword : sourceKeyPassword, chain);
+            protection.setKeyEntry(
+                    destKs, targetAlias, key, destKeyPassword != null ? destKeyPassword : sourceKeyPassword, chain);
         } else {
             Certificate cert = sourceKs.getCertificate(sourceAlias);
             destKs.setCertificateEntry(targetAlias, cert);
@@ -239,69 +776,245 @@ public class KeyStoreManagementService {
         log.info("Imported entry: {} -> {}", sourceAlias, targetAlias);
     }
 
-    private void importAllEntries(KeyStore sourceKs, KeyStore destKs, char[] sourceKeyPassword, char[] destKeyPassword)
-            throws Exception {
-
-        Enumeration<String> aliases = sourceKs.aliases();
-        int count = 0;
+    /**
+     * Import all entries of a keystore. Key recovery runs a PBE decryption per entry, so the keys are recovered
+     * in parallel first, then all entries are set in the destination keystore in the source keystore order.
+     * <p>
+     * With {@code dedup}, a trusted certificate already in the destination keystore as a trusted certificate under
+     * another alias, found through the {@link KeyStoreIndex} of the destination keystore, is skipped instead of
+     * being imported.
+     *
+     * @return {@code true} if at least one entry was imported
+     */
+    private boolean importAllEntries(
+            KeyStore sourceKs,
+            KeyStore destKs,
+            KeyStoreProtection protection,
+            char[] sourceKeyPassword,
+            char[] destKeyPassword,
+            boolean dedup)
+            throws GeneralSecurityException, IOException {
 
-        while (aliases.hasMoreElements()) {
-            String alias = aliases.nextElement();
+        List<String> aliases = Collections.list(sourceKs.aliases());
 
+        List<String> keyAliases = new ArrayList<>();
+        for (String alias : aliases) {
             if (sourceKs.isKeyEntry(alias)) {
-                Key key = sourceKs.getKey(alias, sourceKeyPassword);
-                Certificate[] chain = sourceKs.getCertificateChain(alias);
-                destKs.setKeyEntry(alias, key, destKeyPassword != null ? destKeyPassword : sourceKeyPassword, chain);
-            } else {
-                Certificate cert = sourceKs.getCertificate(alias);
-                destKs.setCertificateEntry(alias, cert);
+                keyAliases.add(alias);
             }
-
-            count++;
+        }
+        Map<String, Key> keys = recoverKeys(sourceKs, keyAliases, sourceKeyPassword);
+
+        KeyStoreIndex index = dedup ? keyStoreCache.index(destKs) : null;
+        int imported = 0;
+        for (String alias : aliases) {
+            if (index != null && !keys.containsKey(alias)) {
+                String duplicate = findDuplicate(destKs, index, alias, sourceKs.getCertificate(alias));
+                if (duplicate != null) {
+                    log.info("Skipped entry: {} (same certificate as {})", alias, duplicate);
+                    continue;
+                }
+            }
+            copyEntry(
+                    sourceKs,
+                    destKs,
+                    protection,
+                    alias,
+                    keys.get(alias),
+                    destKeyPassword != null ? destKeyPassword : sourceKeyPassword);
+            if (index != null) {
+                index.update(destKs, alias);
+            }
+            imported++;
         }
 
-        log.info("Imported {} entries", count);
+        log.info("Imported {} entries", imported);
+        if (imported < aliases.size()) {
+            log.info("Collapsed {} duplicate certificates", aliases.size() - imported);
+        }
+        return imported > 0;
     }
 
-    private KeyStore loadKeyStore(File keystoreFile, String keystoreType, char[] password) throws Exception {
+    /**
+     * Mutation importing entries into one shard, skipping the entries the shard already has.
+     *
+     * @param create {@code true} if the shard does not exist yet, and must be stored even if empty
+     */
+    private KeyStoreMutation importShardMutation(
+            KeyStore sourceKs,
+            List<String> aliases,
+            List<String> removals,
+            Map<String, Key> keys,
+            char[] destKeyPassword,
+            boolean dedup,
+            boolean create) {
+        return (destKs, protection) -> {
+            boolean modified = create;
+            for (String alias : removals) {
+                if (destKs.containsAlias(alias)) {
+                    destKs.deleteEntry(alias);
+                    modified = true;
+                }
+            }
 
-        if (!keystoreFile.exists()) {
-            throw new IOException("Keystore file does not exist: " + keystoreFile);
-        }
+            KeyStoreIndex index = dedup ? keyStoreCache.index(destKs) : null;
+            for (String alias : aliases) {
+                Key key = keys.get(alias);
+                if (isAlreadyImported(sourceKs, destKs, alias, key, destKeyPassword)) {
+                    continue;
+                }
+                if (index != null && key == null) {
+                    String duplicate = findDuplicate(destKs, index, alias, sourceKs.getCertificate(alias));
+                    if (duplicate != null) {
+                        log.info("Skipped entry: {} (same certificate as {})", alias, duplicate);
+                        continue;
+                    }
+                }
+                copyEntry(sourceKs, destKs, protection, alias, key, destKeyPassword);
+                if (index != null) {
+                    index.update(destKs, alias);
+                }
+                modified = true;
+            }
+            return modified;
+        };
+    }
 
-        KeyStore keystore = KeyStore.getInstance(keystoreType != null ? keystoreType : KeyStore.getDefaultType());
+    /**
+     * Tell whether the destination keystore already has an entry as it would be imported: the same certificate,
+     * the same certificate chain, or the same secret key.
+     */
+    private static boolean isAlreadyImported(
+            KeyStore sourceKs, KeyStore destKs, String alias, Key key, char[] destKeyPassword)
+            throws GeneralSecurityException {
+        if (!destKs.containsAlias(alias)) {
+            return false;
+        }
+        if (key == null) {
+            return destKs.isCertificateEntry(alias)
+                    && sourceKs.getCertificate(alias).equals(destKs.getCertificate(alias));
+        }
+        if (!destKs.isKeyEntry(alias)) {
+            return false;
+        }
+        Certificate[] chain = sourceKs.getCertificateChain(alias);
+        if (chain != null) {
+            return Arrays.equals(chain, destKs.getCertificateChain(alias));
+        }
+        try {
+            Key existing = BouncyCastle.getKey(destKs, alias, destKeyPassword);
+            return existing != null && Arrays.equals(key.getEncoded(), existing.getEncoded());
+        } catch (UnrecoverableKeyException e) {
+            return false;
+        }
+    }
 
-        try (FileInputStream fis = new FileInputStream(keystoreFile)) {
-            keystore.load(fis, password);
+    /**
+     * @return another alias of a trusted certificate entry holding the certificate, {@code null} if there is none
+     */
+    private static String findDuplicate(KeyStore keystore, KeyStoreIndex index, String alias, Certificate certificate)
+            throws GeneralSecurityException {
+        for (String other : index.findByFingerprint(KeyStoreIndex.fingerprint(certificate))) {
+            if (!other.equals(alias) && keystore.isCertificateEntry(other)) {
+                return other;
+            }
         }
+        return null;
+    }
 
-        return keystore;
+    /**
+     * Set an entry of the source keystore under the same alias in the destination keystore.
+     *
+     * @param key recovered key of the entry, {@code null} for a trusted certificate entry
+     */
+    private static void copyEntry(
+            KeyStore sourceKs,
+            KeyStore destKs,
+            KeyStoreProtection protection,
+            String alias,
+            Key key,
+            char[] destKeyPassword)
+            throws GeneralSecurityException {
+        if (key != null) {
+            Certificate[] chain = sourceKs.getCertificateChain(alias);
+            protection.setKeyEntry(destKs, alias, key, destKeyPassword, chain);
+        } else {
+            Certificate cert = sourceKs.getCertificate(alias);
+            destKs.setCertificateEntry(alias, cert);
+        }
     }
 
-    private KeyStore loadOrCreateKeyStore(File keystoreFile, String keystoreType, char[] password) throws Exception {
+    /**
+     * Recover keys of a keystore on a worker pool bounded by the number of processors.
+     * <p>
+     * A {@link KeyStore} is not safe for concurrent use: each worker recovers its share of the keys from its own
+     * instance, {@link KeyStoreCache#replicator(KeyStore) loaded} from the same content. Keystores the cache
+     * cannot replicate are recovered on the calling thread.
+     */
+    private Map<String, Key> recoverKeys(KeyStore keystore, List<String> aliases, char[] password)
+            throws GeneralSecurityException, IOException {
 
-        KeyStore keystore = KeyStore.getInstance(keystoreType != null ? keystoreType : KeyStore.getDefaultType());
+        int threads = Math.min(aliases.size(), Runtime.getRuntime().availableProcessors());
+        Callable<KeyStore> replicator = threads > 1 ? keyStoreCache.replicator(keystore) : null;
+        if (replicator == null) {
+            return recoverKeys(keystore, aliases, password, new HashMap<>());
+        }
 
-        if (keystoreFile.exists()) {
-            try (FileInputStream fis = new FileInputStream(keystoreFile)) {
-                keystore.load(fis, password);
+        log.debug("Recovering {} keys on {} threads", aliases.size(), threads);
+        Map<String, Key> keys = new HashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, KEY_RECOVERY_THREADS);
+        try {
+            List<Future<Map<String, Key>>> futures = new ArrayList<>();
+            for (int worker = 0; worker < threads; worker++) {
+                List<String> share = new ArrayList<>();
+                for (int i = worker; i < aliases.size(); i += threads) {
+                    share.add(aliases.get(i));
+                }
+                futures.add(executor.submit(() -> recoverKeys(replicator.call(), share, password, new HashMap<>())));
             }
-        } else {
-            keystore.load(null, password);
+            for (Future<Map<String, Key>> future : futures) {
+                keys.putAll(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new KeyStoreException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while recovering keys");
+        } finally {
+            executor.shutdownNow();
         }
 
-        return keystore;
+        return keys;
     }
 
-    private void saveKeyStore(KeyStore keystore, File keystoreFile, char[] password) throws Exception {
-
-        File parentDir = keystoreFile.getParentFile();
-        if (parentDir != null && !parentDir.exists()) {
-            parentDir.mkdirs();
+    private static Map<String, Key> recoverKeys(
+            KeyStore keystore, List<String> aliases, char[] password, Map<String, Key> keys)
+            throws GeneralSecurityException {
+        for (String alias : aliases) {
+            keys.put(alias, BouncyCastle.getKey(keystore, alias, password));
         }
+        return keys;
+    }
 
-        try (FileOutputStream fos = new FileOutputStream(keystoreFile)) {
-            keystore.store(fos, password);
+    private KeyStore loadKeyStore(File keystoreFile, String keystoreType, char[] password) throws Exception {
+
+        if (!keyStoreCache.exists(keystoreFile)) {
+            throw new IOException("Keystore file does not exist: " + keystoreFile);
         }
+
+        return keyStoreCache.load(keystoreFile, keystoreType, password);
     }
 }
@@ -0,0 +1,267 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Aliases and entry metadata of a keystore: what can be listed without recovering any key.
+ *
+ * @since 2.1
+ */
+public final class KeyStoreMetadata {
+
+    /**
+     * Type of a keystore entry, named as in {@link KeyStore}.
+     */
+    public enum EntryType {
+        /**
+         * {@link KeyStore.PrivateKeyEntry}.
+         */
+        PRIVATE_KEY("PrivateKeyEntry"),
+
+        /**
+         * {@link KeyStore.SecretKeyEntry}.
+         */
+        SECRET_KEY("SecretKeyEntry"),
+
+        /**
+         * {@link KeyStore.TrustedCertificateEntry}.
+         */
+        TRUSTED_CERTIFICATE("TrustedCertificateEntry");
+
+        private final String displayName;
+
+        EntryType(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    private final String type;
+
+    private final List<Entry> entries;
+
+    KeyStoreMetadata(String type, List<Entry> entries) {
+        this.type = type;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Describe a loaded keystore.
+     *
+     * @param keystore loaded keystore
+     * @return metadata of the keystore
+     * @throws KeyStoreException if the keystore is not loaded
+     */
+    public static KeyStoreMetadata of(KeyStore keystore) throws KeyStoreException {
+        List<Entry> entries = new ArrayList<>();
+
+        Enumeration<String> aliases = keystore.aliases();
+        while (aliases.hasMoreElements()) {
+            String alias = aliases.nextElement();
+
+            EntryType entryType;
+            Certificate certificate;
+            int chainLength = 0;
+            if (keystore.isCertificateEntry(alias)) {
+                entryType = EntryType.TRUSTED_CERTIFICATE;
+                certificate = keystore.getCertificate(alias);
+            } else {
+                Certificate[] chain = keystore.getCertificateChain(alias);
+                entryType = chain != null ? EntryType.PRIVATE_KEY : EntryType.SECRET_KEY;
+                certificate = chain != null && chain.length > 0 ? chain[0] : null;
+                chainLength = chain != null ? chain.length : 0;
+            }
+
+            if (certificate instanceof X509Certificate) {
+                X509Certificate x509 = (X509Certificate) certificate;
+                entries.add(new Entry(
+                        alias,
+                        entryType,
+                        certificate.getType(),
+                        fingerprint(certificate),
+                        x509.getSubjectX500Principal().getName(),
+                        x509.getSerialNumber(),
+                        x509.getNotAfter(),
+                        chainLength));
+            } else {
+                entries.add(new Entry(
+                        alias,
+                        entryType,
+                        certificate != null ? certificate.getType() : null,
+                        certificate != null ? fingerprint(certificate) : null,
+                        null,
+                        null,
+                        null,
+                        chainLength));
+            }
+        }
+
+        return new KeyStoreMetadata(keystore.getType(), entries);
+    }
+
+    private static String fingerprint(Certificate certificate) throws KeyStoreException {
+        try {
+            return KeyStoreIndex.fingerprint(certificate);
+        } catch (GeneralSecurityException e) {
+            throw new KeyStoreException("Cannot encode certificate: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return keystore type
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return entries, in keystore order
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @param alias entry alias, matched ignoring case as keystores do
+     * @return the entry, {@code null} if there is no entry with that alias
+     */
+    public Entry getEntry(String alias) {
+        for (Entry entry : entries) {
+            if (entry.getAlias().equalsIgnoreCase(alias)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Metadata of one keystore entry.
+     */
+    public static final class Entry {
+
+        private final String alias;
+
+        private final EntryType entryType;
+
+        private final String certificateType;
+
+        private final String fingerprint;
+
+        private final String subject;
+
+        private final BigInteger serialNumber;
+
+        private final Date notAfter;
+
+        private final int chainLength;
+
+        Entry(
+                String alias,
+                EntryType entryType,
+                String certificateType,
+                String fingerprint,
+                String subject,
+                BigInteger serialNumber,
+                Date notAfter,
+                int chainLength) {
+            this.alias = alias;
+            this.entryType = entryType;
+            this.certificateType = certificateType;
+            this.fingerprint = fingerprint;
+            this.subject = subject;
+            this.serialNumber = serialNumber;
+            this.notAfter = notAfter != null ? new Date(notAfter.getTime()) : null;
+            this.chainLength = chainLength;
+        }
+
+        /**
+         * @return entry alias
+         */
+        public String getAlias() {
+            return alias;
+        }
+
+        /**
+         * @return entry type
+         */
+        public EntryType getEntryType() {
+            return entryType;
+        }
+
+        /**
+         * @return type of the entry certificate (or of the first certificate of its chain), {@code null} if none
+         */
+        public String getCertificateType() {
+            return certificateType;
+        }
+
+        /**
+         * @return SHA-256 fingerprint of the entry certificate as lower case hex, {@code null} if none
+         * @see KeyStoreIndex#fingerprint(Certificate)
+         */
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * @return subject of the entry certificate in RFC 2253 format, {@code null} if none
+         */
+        public String getSubject() {
+            return subject;
+        }
+
+        /**
+         * @return serial number of the entry certificate, {@code null} if none
+         */
+        public BigInteger getSerialNumber() {
+            return serialNumber;
+        }
+
+        /**
+         * @return end of validity of the entry certificate, {@code null} if none
+         */
+        public Date getNotAfter() {
+            return notAfter != null ? new Date(notAfter.getTime()) : null;
+        }
+
+        /**
+         * @return length of the certificate chain of a private key entry, 0 for other entries
+         */
+        public int getChainLength() {
+            return chainLength;
+        }
+    }
+}
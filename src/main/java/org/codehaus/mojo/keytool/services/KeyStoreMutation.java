@@ -0,0 +1,44 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * A change to apply to an in-memory keystore, queued in a {@link KeyStoreSession}.
+ *
+ * @since 2.1
+ */
+@FunctionalInterface
+public interface KeyStoreMutation {
+
+    /**
+     * Apply the change to the given keystore.
+     *
+     * @param keystore loaded keystore to modify
+     * @param protection protection profile to set key entries with
+     * @return {@code true} if the keystore was modified, {@code false} if there was nothing to do
+     * @throws GeneralSecurityException if the keystore refuses the change
+     * @throws IOException if a file needed by the change cannot be read
+     */
+    boolean apply(KeyStore keystore, KeyStoreProtection protection) throws GeneralSecurityException, IOException;
+}
@@ -0,0 +1,291 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.PBEParameterSpec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.util.Locale;
+
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.AuthenticatedSafe;
+import org.bouncycastle.asn1.pkcs.ContentInfo;
+import org.bouncycastle.asn1.pkcs.EncryptedData;
+import org.bouncycastle.asn1.pkcs.MacData;
+import org.bouncycastle.asn1.pkcs.PKCS12PBEParams;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.Pfx;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.DigestInfo;
+import org.bouncycastle.crypto.digests.SHA1Digest;
+import org.bouncycastle.operator.MacCalculator;
+import org.bouncycastle.pkcs.bc.BcPKCS12MacCalculatorBuilder;
+
+/**
+ * Protection profile of the keys and integrity of PKCS12 keystores.
+ * <p>
+ * Two profiles are available:
+ * <ul>
+ *   <li>{@value #PRODUCTION}, the default: the JDK default algorithms and iteration counts are used;</li>
+ *   <li>{@value #FAST_TEST}: key entries are encrypted with {@value #FAST_TEST_PBE_ALGORITHM}, certificates are
+ *   encrypted again with the algorithm chosen by the JDK and the keystore MAC is computed with HmacPBESHA1, all
+ *   with a single PBE iteration. This makes keystores much cheaper to write and read, and offers no protection
+ *   against password guessing: it is meant for throwaway keystores generated by tests, never for real keys.
+ *   The SHA-1 MAC keeps them readable by every Java 8 update, which only verify HmacPBESHA256 MACs since
+ *   8u301.</li>
+ * </ul>
+ * Other keystore types are always written with their own (single) protection scheme.
+ *
+ * @since 2.1
+ */
+public final class KeyStoreProtection {
+
+    /**
+     * Name of the default profile.
+     */
+    public static final String PRODUCTION = "production";
+
+    /**
+     * Name of the profile for throwaway test keystores.
+     */
+    public static final String FAST_TEST = "fast-test";
+
+    static final String FAST_TEST_PBE_ALGORITHM = "PBEWithHmacSHA256AndAES_128";
+
+    private static final int FAST_TEST_ITERATIONS = 1;
+
+    /**
+     * JDK default iteration count of PKCS12 key encryption and MAC.
+     */
+    private static final int PRODUCTION_ITERATIONS = 10000;
+
+    private static final int SALT_LENGTH = 16;
+
+    private static final KeyStoreProtection PRODUCTION_PROFILE = new KeyStoreProtection(PRODUCTION, null, 0);
+
+    private static final KeyStoreProtection FAST_TEST_PROFILE =
+            new KeyStoreProtection(FAST_TEST, FAST_TEST_PBE_ALGORITHM, FAST_TEST_ITERATIONS);
+
+    private static final SecureRandom SALT_RANDOM = new SecureRandom();
+
+    private final String name;
+
+    private final String pbeAlgorithm;
+
+    private final int iterations;
+
+    private KeyStoreProtection(String name, String pbeAlgorithm, int iterations) {
+        this.name = name;
+        this.pbeAlgorithm = pbeAlgorithm;
+        this.iterations = iterations;
+    }
+
+    /**
+     * @return the default profile, using the JDK defaults
+     */
+    public static KeyStoreProtection production() {
+        return PRODUCTION_PROFILE;
+    }
+
+    /**
+     * @return the profile for throwaway test keystores
+     */
+    public static KeyStoreProtection fastTest() {
+        return FAST_TEST_PROFILE;
+    }
+
+    /**
+     * Get a profile by name.
+     * <p>
+     * No name gives the {@link #production()} profile; an unknown name is refused rather than mapped to any
+     * profile, so that a typo can never weaken the protection of a keystore.
+     *
+     * @param name profile name, {@code null} or empty for the default profile
+     * @return the profile
+     * @throws IllegalArgumentException if the name is not a known profile
+     */
+    public static KeyStoreProtection forName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return PRODUCTION_PROFILE;
+        }
+
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case PRODUCTION:
+                return PRODUCTION_PROFILE;
+            case FAST_TEST:
+                return FAST_TEST_PROFILE;
+            default:
+                throw new IllegalArgumentException("Unknown protection profile '" + name + "', expected '" + PRODUCTION
+                        + "' or '" + FAST_TEST + "'");
+        }
+    }
+
+    /**
+     * @return name of this profile
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return {@code true} for the default profile
+     */
+    public boolean isProduction() {
+        return pbeAlgorithm == null;
+    }
+
+    /**
+     * Protection parameter for an entry of the given keystore.
+     *
+     * @param keystore keystore the entry is set in
+     * @param password entry password
+     * @return protection parameter to pass to {@link KeyStore#setEntry(String, KeyStore.Entry,
+     *         KeyStore.ProtectionParameter)}
+     */
+    public KeyStore.ProtectionParameter protect(KeyStore keystore, char[] password) {
+        if (!appliesTo(keystore)) {
+            return new KeyStore.PasswordProtection(password);
+        }
+
+        byte[] salt = new byte[SALT_LENGTH];
+        SALT_RANDOM.nextBytes(salt);
+        return new KeyStore.PasswordProtection(password, pbeAlgorithm, new PBEParameterSpec(salt, iterations));
+    }
+
+    /**
+     * Same as {@link KeyStore#setKeyEntry(String, Key, char[], Certificate[])}, protecting the key with this
+     * profile.
+     *
+     * @param keystore keystore to set the entry in
+     * @param alias entry alias
+     * @param key private or secret key
+     * @param password key password
+     * @param chain certificate chain of a private key, {@code null} for a secret key
+     * @throws KeyStoreException if the keystore refuses the entry
+     */
+    public void setKeyEntry(KeyStore keystore, String alias, Key key, char[] password, Certificate[] chain)
+            throws KeyStoreException {
+        if (!appliesTo(keystore)) {
+            keystore.setKeyEntry(alias, key, password, chain);
+        } else if (key instanceof PrivateKey) {
+            keystore.setEntry(
+                    alias, new KeyStore.PrivateKeyEntry((PrivateKey) key, chain), protect(keystore, password));
+        } else if (key instanceof SecretKey) {
+            keystore.setEntry(alias, new KeyStore.SecretKeyEntry((SecretKey) key), protect(keystore, password));
+        } else {
+            keystore.setKeyEntry(alias, key, password, chain);
+        }
+    }
+
+    /**
+     * Apply the certificate encryption and MAC settings of this profile to an encoded keystore.
+     * <p>
+     * The JDK only lets the iteration counts of certificates and MAC be configured through global properties, so
+     * the certificates of a PKCS12 keystore written with a non default profile are encrypted again and its MAC is
+     * recomputed here.
+     *
+     * @param keystore keystore that was encoded
+     * @param encoded encoded keystore
+     * @param password keystore password
+     * @return the encoded keystore to write
+     * @throws IOException if the encoded keystore cannot be parsed
+     */
+    byte[] finish(KeyStore keystore, byte[] encoded, char[] password) throws IOException {
+        if (!appliesTo(keystore) || password == null) {
+            return encoded;
+        }
+
+        Pfx pfx = Pfx.getInstance(encoded);
+        byte[] content =
+                ASN1OctetString.getInstance(pfx.getAuthSafe().getContent()).getOctets();
+
+        ContentInfo[] infos = AuthenticatedSafe.getInstance(content).getContentInfo();
+        for (int i = 0; i < infos.length; i++) {
+            if (PKCSObjectIdentifiers.encryptedData.equals(infos[i].getContentType())) {
+                infos[i] = new ContentInfo(
+                        PKCSObjectIdentifiers.encryptedData,
+                        encryptAgain(EncryptedData.getInstance(infos[i].getContent()), password));
+            }
+        }
+        content = new AuthenticatedSafe(infos).getEncoded(ASN1Encoding.DER);
+        ContentInfo authSafe = new ContentInfo(PKCSObjectIdentifiers.data, new DEROctetString(content));
+
+        AlgorithmIdentifier sha1 = new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1, DERNull.INSTANCE);
+        MacCalculator calculator = new BcPKCS12MacCalculatorBuilder(new SHA1Digest(), sha1)
+                .setIterationCount(iterations)
+                .build(password);
+        try (OutputStream out = calculator.getOutputStream()) {
+            out.write(content);
+        }
+
+        PKCS12PBEParams params =
+                PKCS12PBEParams.getInstance(calculator.getAlgorithmIdentifier().getParameters());
+        MacData macData = new MacData(
+                new DigestInfo(sha1, calculator.getMac()),
+                params.getIV(),
+                params.getIterations().intValue());
+
+        return new Pfx(authSafe, macData).getEncoded(ASN1Encoding.DER);
+    }
+
+    /**
+     * Encrypt content, the certificates of a JDK keystore, with the iterations of this profile.
+     */
+    private EncryptedData encryptAgain(EncryptedData data, char[] password) throws IOException {
+        AlgorithmIdentifier algorithm = data.getEncryptionAlgorithm();
+        byte[] plain = Pkcs12Pbe.apply(
+                Cipher.DECRYPT_MODE, algorithm, password, data.getContent().getOctets());
+
+        AlgorithmIdentifier fastAlgorithm = Pkcs12Pbe.withIterations(algorithm, iterations, SALT_RANDOM);
+        return new EncryptedData(
+                data.getContentType(),
+                fastAlgorithm,
+                new DEROctetString(Pkcs12Pbe.apply(Cipher.ENCRYPT_MODE, fastAlgorithm, password, plain)));
+    }
+
+    /**
+     * @return PBE iteration count of keys, certificates and MAC when a keystore of this profile is encoded by this plugin
+     */
+    int getIterations() {
+        return isProduction() ? PRODUCTION_ITERATIONS : iterations;
+    }
+
+    private boolean appliesTo(KeyStore keystore) {
+        return pbeAlgorithm != null && "PKCS12".equalsIgnoreCase(keystore.getType());
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,226 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A batch of mutations applied to one keystore file with a single load and a single store.
+ * <p>
+ * Mutations are queued with {@link #queue(KeyStoreMutation)} and only applied on {@link #commit()}: the keystore
+ * is loaded once, every mutation is applied in order, then the keystore is stored once (and not at all if no
+ * mutation changed anything). If any mutation fails, nothing is written and the in-memory state is rolled back,
+ * so the file is left untouched.
+ * <p>
+ * A session is opened with {@link KeyStoreCache#openSession(File, String, char[], boolean)} and is meant to be
+ * used in a try-with-resources block; closing a session that was not committed discards its pending mutations.
+ * <p>
+ * With {@link KeyStoreWriteOptions#withWriteBehind(boolean) write-behind}, a commit keeps the modified keystore in
+ * the {@link KeyStoreCache} instead of writing it, until the cache is {@link KeyStoreCache#flush() flushed}. A
+ * session modifies a copy of a keystore with deferred changes, so a failed commit only discards its own mutations:
+ * the changes deferred by earlier sessions on the same file are kept.
+ *
+ * @since 2.1
+ */
+public class KeyStoreSession implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyStoreSession.class);
+
+    private final KeyStoreCache keyStoreCache;
+
+    private final File keystoreFile;
+
+    private final String keystoreType;
+
+    private final char[] password;
+
+    private final boolean createIfMissing;
+
+    private final List<KeyStoreMutation> mutations = new ArrayList<>();
+
+    private final KeyStoreWriteOptions writeOptions;
+
+    private char[] newPassword;
+
+    KeyStoreSession(
+            KeyStoreCache keyStoreCache,
+            File keystoreFile,
+            String keystoreType,
+            char[] password,
+            boolean createIfMissing,
+            KeyStoreWriteOptions writeOptions) {
+        this.keyStoreCache = keyStoreCache;
+        this.keystoreFile = keystoreFile;
+        this.keystoreType = keystoreType;
+        this.password = password;
+        this.createIfMissing = createIfMissing;
+        this.writeOptions = writeOptions;
+    }
+
+    /**
+     * Queue a mutation, to be applied on commit.
+     *
+     * @param mutation mutation to queue
+     * @return this session
+     */
+    public KeyStoreSession queue(KeyStoreMutation mutation) {
+        mutations.add(mutation);
+        return this;
+    }
+
+    /**
+     * Store the keystore with another password on commit.
+     *
+     * @param newPassword new keystore password
+     */
+    public void changePassword(char[] newPassword) {
+        this.newPassword = newPassword;
+    }
+
+    /**
+     * @return number of mutations waiting for commit
+     */
+    public int getPendingCount() {
+        return mutations.size();
+    }
+
+    /**
+     * @return keystore file of this session
+     */
+    public File getKeystoreFile() {
+        return keystoreFile;
+    }
+
+    /**
+     * Load the keystore, apply all queued mutations in order and store it once if any of them changed it.
+     * <p>
+     * On failure nothing is written, and the keystore instance the mutations were applied to is dropped.
+     * <p>
+     * The whole load-modify-store cycle runs under the {@link KeyStoreLocks lock} of the keystore file, so
+     * concurrent sessions on the same file, from other threads or other processes, are applied one after the
+     * other and none of their changes is lost.
+     *
+     * @return the committed keystore
+     * @throws KeyStoreException if a mutation was refused by the keystore
+     * @throws IOException if the keystore cannot be read or written
+     * @throws NoSuchAlgorithmException if an algorithm is not available
+     * @throws CertificateException if a certificate cannot be loaded or stored
+     */
+    public KeyStore commit() throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+        try (KeyStoreLocks.Handle lock = KeyStoreLocks.lock(keystoreFile)) {
+            return commitLocked();
+        }
+    }
+
+    private KeyStore commitLocked()
+            throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+
+        KeyStore keystore = load();
+
+        boolean modified = newPassword != null;
+        try {
+            for (KeyStoreMutation mutation : mutations) {
+                if (mutation.apply(keystore, writeOptions.getProtection())) {
+                    keyStoreCache.dropIndex(keystore);
+                    modified = true;
+                }
+            }
+
+            if (modified) {
+                char[] storePassword = newPassword != null ? newPassword : password;
+                if (writeOptions.isWriteBehind()) {
+                    keyStoreCache.defer(keystore, keystoreFile, storePassword, writeOptions);
+                } else {
+                    keyStoreCache.store(keystore, keystoreFile, storePassword, writeOptions);
+                }
+            }
+        } catch (KeyStoreException | IOException | NoSuchAlgorithmException | CertificateException e) {
+            rollback();
+            throw e;
+        } catch (GeneralSecurityException e) {
+            rollback();
+            throw new KeyStoreException(e.getMessage(), e);
+        } catch (RuntimeException e) {
+            rollback();
+            throw e;
+        }
+
+        if (modified && writeOptions.isWriteBehind()) {
+            log.debug("Committed {} mutation(s) to {}, write deferred", mutations.size(), keystoreFile);
+        } else if (modified) {
+            log.debug("Committed {} mutation(s) to {}", mutations.size(), keystoreFile);
+        } else {
+            keyStoreCache.checkin(keystore, keystoreFile);
+            log.debug("Keystore {} unchanged, not stored", keystoreFile);
+        }
+        mutations.clear();
+        newPassword = null;
+
+        return keystore;
+    }
+
+    /**
+     * Discard the pending mutations and any change already applied to the in-memory keystore.
+     */
+    public void rollback() {
+        mutations.clear();
+        newPassword = null;
+        try {
+            keyStoreCache.abandon(keystoreFile);
+        } catch (IOException e) {
+            // canonical path could not be resolved, nothing can have been checked out under it
+            log.debug("Could not resolve keystore path {}", keystoreFile, e);
+        }
+    }
+
+    /**
+     * Discard mutations that were not committed.
+     */
+    @Override
+    public void close() {
+        if (!mutations.isEmpty()) {
+            log.debug("Discarding {} uncommitted mutation(s) on {}", mutations.size(), keystoreFile);
+            rollback();
+        }
+    }
+
+    private KeyStore load() throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+        if (keyStoreCache.exists(keystoreFile)) {
+            return keyStoreCache.checkout(keystoreFile, keystoreType, password);
+        }
+
+        if (!createIfMissing) {
+            throw new IOException("Keystore file does not exist: " + keystoreFile);
+        }
+
+        return keyStoreCache.loadOrCreate(keystoreFile, keystoreType, password);
+    }
+}
@@ -0,0 +1,167 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.Certificate;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Layout of a keystore split into several shard keystores, so that a large truststore can be loaded in parallel.
+ * <p>
+ * The shards of {@code truststore.p12} split in {@code n} are {@code truststore-0.p12} to
+ * {@code truststore-<n-1>.p12}, next to the {@code truststore.shards} manifest. An entry goes to shard
+ * {@code h mod n}, where {@code h} is the first four bytes, as an unsigned big-endian integer, of the SHA-256
+ * fingerprint of its certificate (of the first certificate of the chain for a private key entry, of the UTF-8
+ * alias for a secret key entry). A given certificate thus always lands in the same shard.
+ * <p>
+ * The manifest is a properties file giving the store type, the shard count and, for each shard, its file name,
+ * number of entries and SHA-256 hash.
+ *
+ * @since 2.1
+ */
+public final class KeyStoreShards {
+
+    private static final String MANIFEST_EXTENSION = ".shards";
+
+    private final File keystoreFile;
+
+    private final int count;
+
+    /**
+     * @param keystoreFile keystore file the shards stand for, which is itself never written
+     * @param count number of shards
+     */
+    public KeyStoreShards(File keystoreFile, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Shard count must be positive: " + count);
+        }
+        this.keystoreFile = keystoreFile;
+        this.count = count;
+    }
+
+    /**
+     * @return number of shards
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @param shard shard number
+     * @return file of the shard
+     */
+    public File getShardFile(int shard) {
+        String name = keystoreFile.getName();
+        int dot = name.lastIndexOf('.');
+        String shardName = dot > 0 ? name.substring(0, dot) + '-' + shard + name.substring(dot) : name + '-' + shard;
+        return new File(keystoreFile.getAbsoluteFile().getParentFile(), shardName);
+    }
+
+    /**
+     * @return manifest file of the shards
+     */
+    public File getManifestFile() {
+        String name = keystoreFile.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(
+                keystoreFile.getAbsoluteFile().getParentFile(),
+                (dot > 0 ? name.substring(0, dot) : name) + MANIFEST_EXTENSION);
+    }
+
+    /**
+     * @param keystore keystore holding the entry
+     * @param alias alias of the entry
+     * @return shard of the entry
+     * @throws GeneralSecurityException if the entry cannot be read
+     */
+    public int shardOf(KeyStore keystore, String alias) throws GeneralSecurityException {
+        Certificate certificate = keystore.isCertificateEntry(alias) ? keystore.getCertificate(alias) : null;
+        if (certificate == null) {
+            Certificate[] chain = keystore.getCertificateChain(alias);
+            certificate = chain != null && chain.length > 0 ? chain[0] : null;
+        }
+        byte[] content = certificate != null ? certificate.getEncoded() : alias.getBytes(StandardCharsets.UTF_8);
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+        return (int) ((ByteBuffer.wrap(hash).getInt() & 0xFFFFFFFFL) % count);
+    }
+
+    /**
+     * @return shard count of the existing manifest, {@code -1} if there is none
+     * @throws IOException if the manifest cannot be read
+     */
+    public int readManifestCount() throws IOException {
+        File manifest = getManifestFile();
+        if (!manifest.exists()) {
+            return -1;
+        }
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(Files.readAllBytes(manifest.toPath())));
+        try {
+            return Integer.parseInt(properties.getProperty("count"));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid shard manifest " + manifest + ": no shard count");
+        }
+    }
+
+    /**
+     * Write the manifest, unless it already has the same content.
+     *
+     * @param type store type of the shards
+     * @param sizes number of entries of each shard
+     * @param hashes SHA-256 of each shard file, as {@link KeyStoreCache#contentHash(File) hashed} when written
+     * @return {@code true} if the manifest was written
+     * @throws IOException if the manifest cannot be written
+     */
+    public boolean writeManifest(String type, int[] sizes, byte[][] hashes) throws IOException {
+        StringBuilder manifest = new StringBuilder();
+        manifest.append("# Shards of ").append(keystoreFile.getName()).append('\n');
+        manifest.append("type=").append(type).append('\n');
+        manifest.append("count=").append(count).append('\n');
+        manifest.append("partition=sha256-mod\n");
+        for (int shard = 0; shard < count; shard++) {
+            File shardFile = getShardFile(shard);
+            String prefix = "shard." + shard + '.';
+            manifest.append(prefix).append("file=").append(shardFile.getName()).append('\n');
+            manifest.append(prefix).append("entries=").append(sizes[shard]).append('\n');
+            manifest.append(prefix)
+                    .append("sha256=")
+                    .append(KeyStoreIndex.toHex(hashes[shard]))
+                    .append('\n');
+        }
+
+        byte[] content = manifest.toString().getBytes(StandardCharsets.ISO_8859_1);
+        File manifestFile = getManifestFile();
+        if (manifestFile.exists() && Arrays.equals(content, Files.readAllBytes(manifestFile.toPath()))) {
+            return false;
+        }
+        KeyStoreCache.writeAtomically(manifestFile, content, false);
+        return true;
+    }
+}
@@ -0,0 +1,271 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metadata sidecar of a keystore: a small properties file next to the keystore, written each time the keystore is
+ * stored, from which the entries can be listed without parsing the keystore.
+ * <p>
+ * The sidecar of {@code keystore.p12} is {@code keystore.p12.meta}. It gives the store type, the SHA-256 hash of
+ * the keystore file it describes and, for each entry, its alias, entry type, certificate type, certificate
+ * fingerprint, subject, serial number, end of validity and chain length. It is only used while the hash matches
+ * the keystore file, so a keystore replaced by any other means is read again.
+ * <p>
+ * It also holds a PBKDF2 hash of the keystore password, salted with the keystore hash, so that it only answers to
+ * the keystore password: reading it with another password, or without one, gives nothing and the keystore is
+ * loaded instead, failing as it would without sidecar. The sidecar holds no key, but anyone able to read the file
+ * itself can see the entries of the keystore, as with a JKS keystore.
+ *
+ * @since 2.1
+ */
+public final class KeyStoreSidecar {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyStoreSidecar.class);
+
+    private static final String EXTENSION = ".meta";
+
+    private static final String PASSWORD_ALGORITHM = "PBKDF2WithHmacSHA256";
+
+    private static final int PASSWORD_ITERATIONS = 10000;
+
+    private static final int PASSWORD_HASH_BITS = 256;
+
+    private KeyStoreSidecar() {}
+
+    /**
+     * @param keystoreFile keystore file
+     * @return sidecar file of the keystore
+     */
+    public static File getFile(File keystoreFile) {
+        return new File(keystoreFile.getAbsoluteFile().getParentFile(), keystoreFile.getName() + EXTENSION);
+    }
+
+    /**
+     * Write the sidecar of a keystore, unless it already has the same content.
+     *
+     * @param keystoreFile keystore file
+     * @param metadata metadata of the stored keystore
+     * @param content content of the keystore file
+     * @param password keystore password, {@code null} for none, in which case the sidecar is never used
+     * @param fsync {@code true} to force the sidecar to the storage device
+     * @return {@code true} if the sidecar was written
+     * @throws IOException if the sidecar cannot be written
+     */
+    public static boolean write(
+            File keystoreFile, KeyStoreMetadata metadata, byte[] content, char[] password, boolean fsync)
+            throws IOException {
+        byte[] hash = sha256(ByteBuffer.wrap(content));
+        StringBuilder sidecar = new StringBuilder();
+        sidecar.append("# Metadata of ").append(escape(keystoreFile.getName())).append('\n');
+        sidecar.append("type=").append(metadata.getType()).append('\n');
+        sidecar.append("sha256=").append(KeyStoreIndex.toHex(hash)).append('\n');
+        if (password != null) {
+            sidecar.append("password=")
+                    .append(KeyStoreIndex.toHex(passwordHash(password, hash)))
+                    .append('\n');
+        }
+        sidecar.append("entries=").append(metadata.getEntries().size()).append('\n');
+        int index = 0;
+        for (KeyStoreMetadata.Entry entry : metadata.getEntries()) {
+            String prefix = "entry." + index++ + '.';
+            append(sidecar, prefix + "alias", entry.getAlias());
+            append(sidecar, prefix + "type", entry.getEntryType().name());
+            append(sidecar, prefix + "certificateType", entry.getCertificateType());
+            append(sidecar, prefix + "fingerprint", entry.getFingerprint());
+            append(sidecar, prefix + "subject", entry.getSubject());
+            append(
+                    sidecar,
+                    prefix + "serialNumber",
+                    entry.getSerialNumber() != null ? entry.getSerialNumber().toString(16) : null);
+            append(
+                    sidecar,
+                    prefix + "notAfter",
+                    entry.getNotAfter() != null
+                            ? Long.toString(entry.getNotAfter().getTime())
+                            : null);
+            append(sidecar, prefix + "chainLength", Integer.toString(entry.getChainLength()));
+        }
+
+        byte[] bytes = sidecar.toString().getBytes(StandardCharsets.ISO_8859_1);
+        File file = getFile(keystoreFile);
+        if (file.exists() && Arrays.equals(bytes, Files.readAllBytes(file.toPath()))) {
+            return false;
+        }
+        KeyStoreCache.writeAtomically(file, bytes, fsync);
+        return true;
+    }
+
+    /**
+     * Read the sidecar of a keystore.
+     *
+     * @param keystoreFile keystore file
+     * @param password keystore password
+     * @return the metadata of the keystore, {@code null} if it has no sidecar, its sidecar does not describe its
+     *         current content or the password is not the keystore password
+     * @throws IOException if the keystore or its sidecar cannot be read
+     */
+    public static KeyStoreMetadata read(File keystoreFile, char[] password) throws IOException {
+        File file = getFile(keystoreFile);
+        if (!file.exists() || !keystoreFile.exists()) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(Files.readAllBytes(file.toPath())));
+
+        byte[] hash = sha256(KeyStoreCache.read(keystoreFile));
+        if (!KeyStoreIndex.toHex(hash).equals(properties.getProperty("sha256"))) {
+            log.debug("Sidecar {} does not match its keystore, ignored", file);
+            return null;
+        }
+        String passwordHash = properties.getProperty("password");
+        if (password == null
+                || passwordHash == null
+                || !MessageDigest.isEqual(
+                        KeyStoreIndex.toHex(passwordHash(password, hash)).getBytes(StandardCharsets.US_ASCII),
+                        passwordHash.getBytes(StandardCharsets.US_ASCII))) {
+            log.debug("Sidecar {} was not written with this password, ignored", file);
+            return null;
+        }
+
+        try {
+            int count = Integer.parseInt(properties.getProperty("entries"));
+            List<KeyStoreMetadata.Entry> entries = new ArrayList<>(Math.min(count, 1024));
+            for (int index = 0; index < count; index++) {
+                String prefix = "entry." + index + '.';
+                String serialNumber = properties.getProperty(prefix + "serialNumber");
+                String notAfter = properties.getProperty(prefix + "notAfter");
+                entries.add(new KeyStoreMetadata.Entry(
+                        required(properties, prefix + "alias"),
+                        KeyStoreMetadata.EntryType.valueOf(required(properties, prefix + "type")),
+                        properties.getProperty(prefix + "certificateType"),
+                        properties.getProperty(prefix + "fingerprint"),
+                        properties.getProperty(prefix + "subject"),
+                        serialNumber != null ? new BigInteger(serialNumber, 16) : null,
+                        notAfter != null ? new Date(Long.parseLong(notAfter)) : null,
+                        Integer.parseInt(required(properties, prefix + "chainLength"))));
+            }
+            return new KeyStoreMetadata(required(properties, "type"), entries);
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid sidecar {}, ignored", file, e);
+            return null;
+        }
+    }
+
+    private static String required(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + key);
+        }
+        return value;
+    }
+
+    private static void append(StringBuilder sidecar, String key, String value) {
+        if (value != null) {
+            sidecar.append(key).append('=').append(escape(value)).append('\n');
+        }
+    }
+
+    /**
+     * Escape a value as {@link Properties#store(java.io.Writer, String)} does, non ASCII characters included.
+     */
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                case '\f':
+                    escaped.append("\\f");
+                    break;
+                case ' ':
+                    escaped.append(i == 0 ? "\\ " : " ");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Hash of the keystore password, salted with the keystore hash and slowed down as the PKCS12 MAC key is, so that
+     * the sidecar does not make guessing the password cheaper than the keystore does.
+     */
+    private static byte[] passwordHash(char[] password, byte[] salt) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, PASSWORD_ITERATIONS, PASSWORD_HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(PASSWORD_ALGORITHM)
+                    .generateSecret(spec)
+                    .getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static byte[] sha256(ByteBuffer content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content.duplicate());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
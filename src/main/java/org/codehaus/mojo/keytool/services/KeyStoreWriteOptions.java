@@ -0,0 +1,186 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * How a keystore is written to disk.
+ * <p>
+ * Instances are immutable, variants are derived from {@link #defaults()} with the {@code with*} methods.
+ *
+ * @since 2.1
+ */
+public final class KeyStoreWriteOptions {
+
+    private static final KeyStoreWriteOptions DEFAULTS =
+            new KeyStoreWriteOptions(false, KeyStoreProtection.production(), null, 0L, false, false);
+
+    private final boolean fsync;
+
+    private final KeyStoreProtection protection;
+
+    private final byte[] reproducibleSeed;
+
+    private final long outputTimestamp;
+
+    private final boolean metadataSidecar;
+
+    private final boolean writeBehind;
+
+    private KeyStoreWriteOptions(
+            boolean fsync,
+            KeyStoreProtection protection,
+            byte[] reproducibleSeed,
+            long outputTimestamp,
+            boolean metadataSidecar,
+            boolean writeBehind) {
+        this.fsync = fsync;
+        this.protection = protection;
+        this.reproducibleSeed = reproducibleSeed;
+        this.outputTimestamp = outputTimestamp;
+        this.metadataSidecar = metadataSidecar;
+        this.writeBehind = writeBehind;
+    }
+
+    /**
+     * @return the default options: keystores are replaced atomically but not forced to the storage device, and
+     *         protected with the {@link KeyStoreProtection#production() production} profile
+     */
+    public static KeyStoreWriteOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * @param fsync {@code true} to force the keystore content to the storage device before it replaces the target
+     * @return options with the given fsync flag
+     */
+    public KeyStoreWriteOptions withFsync(boolean fsync) {
+        return new KeyStoreWriteOptions(
+                fsync, protection, reproducibleSeed, outputTimestamp, metadataSidecar, writeBehind);
+    }
+
+    /**
+     * @param protection protection profile of the written keystore, {@code null} for the default profile
+     * @return options with the given protection profile
+     */
+    public KeyStoreWriteOptions withProtection(KeyStoreProtection protection) {
+        return new KeyStoreWriteOptions(
+                fsync,
+                protection != null ? protection : KeyStoreProtection.production(),
+                reproducibleSeed,
+                outputTimestamp,
+                metadataSidecar,
+                writeBehind);
+    }
+
+    /**
+     * Write keystores byte for byte reproducibly: entries are sorted by alias, entry dates are set to the output
+     * timestamp, and salts and IVs are derived from the seed instead of being random. Only JKS and PKCS12 keystores
+     * can be written this way, and only if their key entries are protected with the keystore password.
+     * <p>
+     * Anyone knowing the seed can predict the salts and IVs of the written keystores: this is meant for test
+     * keystores only.
+     *
+     * @param seed seed of the salts and IVs, {@code null} to write keystores as usual
+     * @param outputTimestamp date of the entries, in milliseconds since the epoch
+     * @return options with the given reproducible output settings
+     */
+    public KeyStoreWriteOptions withReproducibleOutput(byte[] seed, long outputTimestamp) {
+        return new KeyStoreWriteOptions(
+                fsync, protection, seed != null ? seed.clone() : null, outputTimestamp, metadataSidecar, writeBehind);
+    }
+
+    /**
+     * @param metadataSidecar {@code true} to also write the {@link KeyStoreSidecar metadata sidecar} of stored
+     *                        keystores
+     * @return options with the given metadata sidecar flag
+     */
+    public KeyStoreWriteOptions withMetadataSidecar(boolean metadataSidecar) {
+        return new KeyStoreWriteOptions(
+                fsync, protection, reproducibleSeed, outputTimestamp, metadataSidecar, writeBehind);
+    }
+
+    /**
+     * Keep keystores modified by a {@link KeyStoreSession} in memory, to write each of them once on
+     * {@link KeyStoreCache#flush()} instead of on every commit.
+     *
+     * @param writeBehind {@code true} to defer writes until the cache is flushed
+     * @return options with the given write-behind flag
+     */
+    public KeyStoreWriteOptions withWriteBehind(boolean writeBehind) {
+        return new KeyStoreWriteOptions(
+                fsync, protection, reproducibleSeed, outputTimestamp, metadataSidecar, writeBehind);
+    }
+
+    /**
+     * @return {@code true} if the keystore content is forced to the storage device before it replaces the target
+     */
+    public boolean isFsync() {
+        return fsync;
+    }
+
+    /**
+     * @return protection profile of the written keystore
+     */
+    public KeyStoreProtection getProtection() {
+        return protection;
+    }
+
+    /**
+     * @return {@code true} if keystores are written reproducibly
+     */
+    public boolean isReproducible() {
+        return reproducibleSeed != null;
+    }
+
+    /**
+     * @return seed of the salts and IVs of reproducible keystores, {@code null} if keystores are not written
+     *         reproducibly
+     */
+    byte[] getReproducibleSeed() {
+        return reproducibleSeed;
+    }
+
+    /**
+     * @return date of the entries of reproducible keystores, in milliseconds since the epoch
+     */
+    public long getOutputTimestamp() {
+        return outputTimestamp;
+    }
+
+    /**
+     * @return {@code true} if the metadata sidecar of stored keystores is written
+     */
+    public boolean isMetadataSidecar() {
+        return metadataSidecar;
+    }
+
+    /**
+     * @return {@code true} if writes are deferred until the cache is flushed
+     */
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyStoreWriteOptions{fsync=" + fsync + ", protection=" + protection + ", reproducible="
+                + isReproducible() + ", metadataSidecar=" + metadataSidecar + ", writeBehind=" + writeBehind + '}';
+    }
+}
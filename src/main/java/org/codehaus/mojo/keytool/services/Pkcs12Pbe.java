@@ -0,0 +1,196 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.PBEParameterSpec;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.EncryptionScheme;
+import org.bouncycastle.asn1.pkcs.KeyDerivationFunc;
+import org.bouncycastle.asn1.pkcs.PBES2Parameters;
+import org.bouncycastle.asn1.pkcs.PBKDF2Params;
+import org.bouncycastle.asn1.pkcs.PKCS12PBEParams;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+
+/**
+ * Password based encryption of PKCS12 content with the ciphers of the JDK, named as its own PKCS12 keystore names
+ * them.
+ * <p>
+ * Bouncy Castle's JCE builders cannot be used with the JDK providers for this: they derive PBES2 keys that the
+ * JDK ciphers refuse.
+ *
+ * @since 2.1
+ */
+final class Pkcs12Pbe {
+
+    private static final int SALT_LENGTH = 20;
+
+    private static final int IV_LENGTH = 16;
+
+    /**
+     * JDK cipher names of the PKCS12 PBE schemes.
+     */
+    private static final Map<ASN1ObjectIdentifier, String> PKCS12_CIPHERS = new HashMap<>();
+
+    /**
+     * JDK names of the PBES2 pseudo random functions.
+     */
+    private static final Map<ASN1ObjectIdentifier, String> PBES2_PRFS = new HashMap<>();
+
+    /**
+     * JDK names of the PBES2 encryption schemes.
+     */
+    private static final Map<ASN1ObjectIdentifier, String> PBES2_CIPHERS = new HashMap<>();
+
+    static {
+        PKCS12_CIPHERS.put(PKCSObjectIdentifiers.pbeWithSHAAnd3_KeyTripleDES_CBC, "PBEWithSHA1AndDESede");
+        PKCS12_CIPHERS.put(PKCSObjectIdentifiers.pbeWithSHAAnd128BitRC2_CBC, "PBEWithSHA1AndRC2_128");
+        PKCS12_CIPHERS.put(PKCSObjectIdentifiers.pbeWithSHAAnd40BitRC2_CBC, "PBEWithSHA1AndRC2_40");
+        PKCS12_CIPHERS.put(PKCSObjectIdentifiers.pbeWithSHAAnd128BitRC4, "PBEWithSHA1AndRC4_128");
+        PKCS12_CIPHERS.put(PKCSObjectIdentifiers.pbeWithSHAAnd40BitRC4, "PBEWithSHA1AndRC4_40");
+
+        PBES2_PRFS.put(PKCSObjectIdentifiers.id_hmacWithSHA1, "HmacSHA1");
+        PBES2_PRFS.put(PKCSObjectIdentifiers.id_hmacWithSHA224, "HmacSHA224");
+        PBES2_PRFS.put(PKCSObjectIdentifiers.id_hmacWithSHA256, "HmacSHA256");
+        PBES2_PRFS.put(PKCSObjectIdentifiers.id_hmacWithSHA384, "HmacSHA384");
+        PBES2_PRFS.put(PKCSObjectIdentifiers.id_hmacWithSHA512, "HmacSHA512");
+
+        PBES2_CIPHERS.put(NISTObjectIdentifiers.id_aes128_CBC, "AES_128");
+        PBES2_CIPHERS.put(NISTObjectIdentifiers.id_aes256_CBC, "AES_256");
+    }
+
+    private Pkcs12Pbe() {
+        // static only
+    }
+
+    /**
+     * Cipher of a PKCS12 or PBES2 encryption algorithm.
+     *
+     * @param mode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param algorithm encryption algorithm and its parameters
+     * @param password password
+     * @return the initialized cipher
+     * @throws NoSuchAlgorithmException if the algorithm is not one the JDK provides for PKCS12
+     * @throws GeneralSecurityException if the cipher cannot be initialized
+     */
+    static Cipher cipher(int mode, AlgorithmIdentifier algorithm, char[] password) throws GeneralSecurityException {
+        ASN1ObjectIdentifier oid = algorithm.getAlgorithm();
+        String name;
+        PBEParameterSpec spec;
+        if (PKCSObjectIdentifiers.id_PBES2.equals(oid)) {
+            PBES2Parameters pbes2 = PBES2Parameters.getInstance(algorithm.getParameters());
+            if (!PKCSObjectIdentifiers.id_PBKDF2.equals(
+                    pbes2.getKeyDerivationFunc().getAlgorithm())) {
+                throw new NoSuchAlgorithmException("Unsupported PBES2 key derivation "
+                        + pbes2.getKeyDerivationFunc().getAlgorithm());
+            }
+            PBKDF2Params kdf =
+                    PBKDF2Params.getInstance(pbes2.getKeyDerivationFunc().getParameters());
+            EncryptionScheme scheme = pbes2.getEncryptionScheme();
+            name = "PBEWith" + name(PBES2_PRFS, kdf.getPrf().getAlgorithm()) + "And"
+                    + name(PBES2_CIPHERS, scheme.getAlgorithm());
+            byte[] iv = ASN1OctetString.getInstance(scheme.getParameters()).getOctets();
+            spec = new PBEParameterSpec(kdf.getSalt(), kdf.getIterationCount().intValue(), new IvParameterSpec(iv));
+        } else {
+            name = name(PKCS12_CIPHERS, oid);
+            PKCS12PBEParams params = PKCS12PBEParams.getInstance(algorithm.getParameters());
+            spec = new PBEParameterSpec(params.getIV(), params.getIterations().intValue());
+        }
+
+        SecretKey key = SecretKeyFactory.getInstance("PBE").generateSecret(new PBEKeySpec(password));
+        Cipher cipher = Cipher.getInstance(name);
+        cipher.init(mode, key, spec);
+        return cipher;
+    }
+
+    /**
+     * Same encryption algorithm with another iteration count and a new salt, and IV for PBES2.
+     *
+     * @param algorithm encryption algorithm and its parameters
+     * @param iterations iteration count
+     * @param random source of the salt and IV
+     * @return the new algorithm parameters
+     */
+    static AlgorithmIdentifier withIterations(AlgorithmIdentifier algorithm, int iterations, SecureRandom random) {
+        byte[] salt = new byte[SALT_LENGTH];
+        random.nextBytes(salt);
+
+        if (!PKCSObjectIdentifiers.id_PBES2.equals(algorithm.getAlgorithm())) {
+            return new AlgorithmIdentifier(algorithm.getAlgorithm(), new PKCS12PBEParams(salt, iterations));
+        }
+
+        PBES2Parameters pbes2 = PBES2Parameters.getInstance(algorithm.getParameters());
+        PBKDF2Params kdf = PBKDF2Params.getInstance(pbes2.getKeyDerivationFunc().getParameters());
+        PBKDF2Params newKdf = kdf.getKeyLength() != null
+                ? new PBKDF2Params(salt, iterations, kdf.getKeyLength().intValue(), kdf.getPrf())
+                : new PBKDF2Params(salt, iterations, kdf.getPrf());
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        return new AlgorithmIdentifier(
+                PKCSObjectIdentifiers.id_PBES2,
+                new PBES2Parameters(
+                        new KeyDerivationFunc(PKCSObjectIdentifiers.id_PBKDF2, newKdf),
+                        new EncryptionScheme(pbes2.getEncryptionScheme().getAlgorithm(), new DEROctetString(iv))));
+    }
+
+    /**
+     * @param mode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param algorithm encryption algorithm and its parameters
+     * @param password password
+     * @param content content to encrypt or decrypt
+     * @return the encrypted or decrypted content
+     * @throws IOException if the content cannot be encrypted or decrypted, usually because of a wrong password
+     */
+    static byte[] apply(int mode, AlgorithmIdentifier algorithm, char[] password, byte[] content) throws IOException {
+        try {
+            return cipher(mode, algorithm, password).doFinal(content);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(
+                    "Cannot " + (mode == Cipher.ENCRYPT_MODE ? "encrypt" : "decrypt") + " PKCS12 content: "
+                            + e.getMessage(),
+                    e);
+        }
+    }
+
+    private static String name(Map<ASN1ObjectIdentifier, String> names, ASN1ObjectIdentifier oid)
+            throws NoSuchAlgorithmException {
+        String name = names.get(oid);
+        if (name == null) {
+            throw new NoSuchAlgorithmException("Unsupported PKCS12 encryption algorithm " + oid);
+        }
+        return name;
+    }
+}
@@ -0,0 +1,577 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ASN1Set;
+import org.bouncycastle.asn1.ASN1String;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.Attribute;
+import org.bouncycastle.asn1.pkcs.AuthenticatedSafe;
+import org.bouncycastle.asn1.pkcs.ContentInfo;
+import org.bouncycastle.asn1.pkcs.EncryptedData;
+import org.bouncycastle.asn1.pkcs.EncryptedPrivateKeyInfo;
+import org.bouncycastle.asn1.pkcs.MacData;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.Pfx;
+import org.bouncycastle.asn1.pkcs.SafeBag;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.DigestInfo;
+import org.bouncycastle.crypto.PBEParametersGenerator;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.PKCS12ParametersGenerator;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.prng.DigestRandomGenerator;
+import org.bouncycastle.crypto.prng.RandomGenerator;
+import org.bouncycastle.operator.InputDecryptorProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.OutputEncryptor;
+import org.bouncycastle.pkcs.PKCS12PfxPdu;
+import org.bouncycastle.pkcs.PKCSException;
+import org.bouncycastle.pkcs.jcajce.JcePKCSPBEInputDecryptorProviderBuilder;
+import org.bouncycastle.pkcs.jcajce.JcePKCSPBEOutputEncryptorBuilder;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.io.Streams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rewrites an encoded keystore so that the same entries and options always give the same bytes.
+ * <p>
+ * The JDK encodes keystores with random salts and IVs, entry creation dates and, for PKCS12, local key ids derived
+ * from the current time. This rewrites them:
+ * <ul>
+ *     <li>entries are written in alias order,</li>
+ *     <li>JKS entry dates are set to the output timestamp,</li>
+ *     <li>PKCS12 local key ids are derived from the alias of their key entry,</li>
+ *     <li>keys, the PKCS12 certificate safe and the PKCS12 MAC are protected again with salts and IVs drawn from
+ *     a generator seeded with the configured seed, the purpose and the alias, so that changing an entry does not
+ *     change the encoding of the other ones.</li>
+ * </ul>
+ * Keys are protected again with the keystore password: key entries protected with another password are refused.
+ * Only JKS and PKCS12 keystores are supported, others are written as encoded by their provider.
+ *
+ * @see KeyStoreWriteOptions#withReproducibleOutput(byte[], long)
+ */
+final class ReproducibleKeyStoreWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(ReproducibleKeyStoreWriter.class);
+
+    private static final int JKS_MAGIC = 0xFEEDFEED;
+
+    private static final int JKS_VERSION = 2;
+
+    private static final int JKS_PRIVATE_KEY_TAG = 1;
+
+    private static final int JKS_TRUSTED_CERTIFICATE_TAG = 2;
+
+    private static final int SHA1_LENGTH = 20;
+
+    private static final int MAC_SALT_LENGTH = 20;
+
+    static final String PASSWORD_MISMATCH =
+            "Reproducible keystores need key entries protected with the keystore password";
+
+    private ReproducibleKeyStoreWriter() {}
+
+    /**
+     * @param keystore keystore that was encoded
+     * @param encoded encoded keystore
+     * @param password keystore password
+     * @param writeOptions reproducible write options
+     * @return the reproducible encoding of the keystore
+     * @throws IOException if the keystore cannot be rewritten
+     */
+    static byte[] rewrite(KeyStore keystore, byte[] encoded, char[] password, KeyStoreWriteOptions writeOptions)
+            throws IOException {
+        if (password == null) {
+            throw new IOException("Reproducible keystores need a keystore password");
+        }
+
+        KeyStoreFormat format = KeyStoreFormat.forType(keystore.getType());
+        try {
+            if (format == KeyStoreFormat.PKCS12) {
+                return rewritePkcs12(
+                        encoded, password, writeOptions.getReproducibleSeed(), writeOptions.getProtection());
+            }
+            if (format == KeyStoreFormat.JKS) {
+                return rewriteJks(
+                        encoded, password, writeOptions.getReproducibleSeed(), writeOptions.getOutputTimestamp());
+            }
+        } catch (GeneralSecurityException | OperatorCreationException | PKCSException e) {
+            throw new IOException("Cannot write keystore reproducibly: " + e.getMessage(), e);
+        }
+
+        log.warn("{} keystores cannot be written reproducibly, written as is", keystore.getType());
+        return encoded;
+    }
+
+    private static byte[] rewritePkcs12(byte[] encoded, char[] password, byte[] seed, KeyStoreProtection protection)
+            throws IOException, GeneralSecurityException, OperatorCreationException, PKCSException {
+
+        PKCS12PfxPdu pfx = new PKCS12PfxPdu(encoded);
+        InputDecryptorProvider decryptor = new JcePKCSPBEInputDecryptorProviderBuilder()
+                .setProvider(BouncyCastle.provider())
+                .build(password);
+
+        List<SafeBag> keyBags = new ArrayList<>();
+        List<SafeBag> certificateBags = new ArrayList<>();
+        for (ContentInfo info : pfx.getContentInfos()) {
+            byte[] content;
+            if (PKCSObjectIdentifiers.encryptedData.equals(info.getContentType())) {
+                EncryptedData data = EncryptedData.getInstance(info.getContent());
+                content = decrypt(
+                        decryptor,
+                        data.getEncryptionAlgorithm(),
+                        data.getContent().getOctets());
+            } else {
+                content = ASN1OctetString.getInstance(info.getContent()).getOctets();
+            }
+            for (ASN1Encodable bag : ASN1Sequence.getInstance(content)) {
+                SafeBag safeBag = SafeBag.getInstance(bag);
+                if (PKCSObjectIdentifiers.certBag.equals(safeBag.getBagId())) {
+                    certificateBags.add(safeBag);
+                } else {
+                    keyBags.add(safeBag);
+                }
+            }
+        }
+
+        // local key ids link a key to its certificate: derive them from the alias of the key
+        Map<ASN1OctetString, ASN1OctetString> localKeyIds = new HashMap<>();
+        for (SafeBag bag : keyBags) {
+            ASN1OctetString localKeyId = attribute(bag, PKCSObjectIdentifiers.pkcs_9_at_localKeyId);
+            if (localKeyId != null) {
+                byte[] alias = friendlyName(bag).getBytes(StandardCharsets.UTF_8);
+                localKeyIds.put(
+                        localKeyId,
+                        new DEROctetString(MessageDigest.getInstance("SHA-1").digest(alias)));
+            }
+        }
+
+        List<SafeBag> keys = new ArrayList<>();
+        for (SafeBag bag : keyBags) {
+            String alias = friendlyName(bag);
+            ASN1Encodable value = bag.getBagValue();
+            if (PKCSObjectIdentifiers.pkcs8ShroudedKeyBag.equals(bag.getBagId())) {
+                value = protectKey(
+                        decryptor, EncryptedPrivateKeyInfo.getInstance(value), password, seed, alias, protection);
+            } else if (PKCSObjectIdentifiers.secretBag.equals(bag.getBagId())) {
+                value = protectSecretKey(decryptor, ASN1Sequence.getInstance(value), password, seed, alias, protection);
+            }
+            keys.add(new SafeBag(bag.getBagId(), value, attributes(bag, localKeyIds)));
+        }
+        List<SafeBag> certificates = new ArrayList<>();
+        for (SafeBag bag : certificateBags) {
+            certificates.add(new SafeBag(bag.getBagId(), bag.getBagValue(), attributes(bag, localKeyIds)));
+        }
+        keys.sort(BAG_ORDER);
+        certificates.sort(BAG_ORDER);
+
+        List<ContentInfo> contents = new ArrayList<>();
+        if (!keys.isEmpty()) {
+            byte[] content = new DERSequence(keys.toArray(new SafeBag[0])).getEncoded(ASN1Encoding.DER);
+            contents.add(new ContentInfo(PKCSObjectIdentifiers.data, new DEROctetString(content)));
+        }
+        if (!certificates.isEmpty()) {
+            byte[] content = new DERSequence(certificates.toArray(new SafeBag[0])).getEncoded(ASN1Encoding.DER);
+            OutputEncryptor encryptor = encryptor(password, seed, "certificates", "", protection);
+            EncryptedData data = new EncryptedData(
+                    PKCSObjectIdentifiers.data,
+                    encryptor.getAlgorithmIdentifier(),
+                    new DEROctetString(encrypt(encryptor, content)));
+            contents.add(new ContentInfo(PKCSObjectIdentifiers.encryptedData, data));
+        }
+
+        byte[] authSafe = new AuthenticatedSafe(contents.toArray(new ContentInfo[0])).getEncoded(ASN1Encoding.DER);
+        return new Pfx(
+                        new ContentInfo(PKCSObjectIdentifiers.data, new DEROctetString(authSafe)),
+                        mac(authSafe, password, seed, protection.getIterations()))
+                .getEncoded(ASN1Encoding.DER);
+    }
+
+    /**
+     * Entries in alias order; certificates of key entry chains have no alias and come first, in encoding order.
+     */
+    private static final Comparator<SafeBag> BAG_ORDER = Comparator.comparing(ReproducibleKeyStoreWriter::friendlyName)
+            .thenComparing(bag -> encoding(bag.getBagValue()), Arrays::compareUnsigned);
+
+    private static EncryptedPrivateKeyInfo protectKey(
+            InputDecryptorProvider decryptor,
+            EncryptedPrivateKeyInfo key,
+            char[] password,
+            byte[] seed,
+            String alias,
+            KeyStoreProtection protection)
+            throws IOException, OperatorCreationException {
+        byte[] plain;
+        try {
+            plain = decrypt(decryptor, key.getEncryptionAlgorithm(), key.getEncryptedData());
+        } catch (IOException | OperatorCreationException e) {
+            throw new IOException(PASSWORD_MISMATCH + ": " + alias, e);
+        }
+        OutputEncryptor encryptor = encryptor(password, seed, "key", alias, protection);
+        return new EncryptedPrivateKeyInfo(encryptor.getAlgorithmIdentifier(), encrypt(encryptor, plain));
+    }
+
+    /**
+     * The JDK stores a secret key as a secret bag holding an octet string with the encrypted key info.
+     */
+    private static ASN1Sequence protectSecretKey(
+            InputDecryptorProvider decryptor,
+            ASN1Sequence secretBag,
+            char[] password,
+            byte[] seed,
+            String alias,
+            KeyStoreProtection protection)
+            throws IOException, OperatorCreationException {
+        ASN1Encodable value =
+                ASN1TaggedObject.getInstance(secretBag.getObjectAt(1)).getExplicitBaseObject();
+        if (!(value instanceof ASN1OctetString)) {
+            return secretBag;
+        }
+
+        EncryptedPrivateKeyInfo key = protectKey(
+                decryptor,
+                EncryptedPrivateKeyInfo.getInstance(((ASN1OctetString) value).getOctets()),
+                password,
+                seed,
+                alias,
+                protection);
+        return new DERSequence(new ASN1Encodable[] {
+            secretBag.getObjectAt(0), new DERTaggedObject(true, 0, new DEROctetString(key.getEncoded(ASN1Encoding.DER)))
+        });
+    }
+
+    private static OutputEncryptor encryptor(
+            char[] password, byte[] seed, String purpose, String alias, KeyStoreProtection protection)
+            throws OperatorCreationException {
+        return new JcePKCSPBEOutputEncryptorBuilder(
+                        protection.isProduction()
+                                ? NISTObjectIdentifiers.id_aes256_CBC
+                                : NISTObjectIdentifiers.id_aes128_CBC)
+                .setProvider(BouncyCastle.provider())
+                .setPRF(new AlgorithmIdentifier(PKCSObjectIdentifiers.id_hmacWithSHA256, DERNull.INSTANCE))
+                .setIterationCount(protection.getIterations())
+                .setRandom(seededRandom(seed, purpose, alias))
+                .build(password);
+    }
+
+    private static byte[] encrypt(OutputEncryptor encryptor, byte[] plain) throws IOException {
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream out = encryptor.getOutputStream(encrypted)) {
+            out.write(plain);
+        }
+        return encrypted.toByteArray();
+    }
+
+    private static byte[] decrypt(InputDecryptorProvider decryptor, AlgorithmIdentifier algorithm, byte[] encrypted)
+            throws IOException, OperatorCreationException {
+        try (InputStream in = decryptor.get(algorithm).getInputStream(new ByteArrayInputStream(encrypted))) {
+            return Streams.readAll(in);
+        }
+    }
+
+    /**
+     * HMAC-SHA256 of the content with a key derived with the PKCS12 key derivation, as the JDK computes it.
+     */
+    private static MacData mac(byte[] content, char[] password, byte[] seed, int iterations) {
+        byte[] salt = new byte[MAC_SALT_LENGTH];
+        seededRandom(seed, "mac", "").nextBytes(salt);
+
+        PKCS12ParametersGenerator generator = new PKCS12ParametersGenerator(new SHA256Digest());
+        generator.init(PBEParametersGenerator.PKCS12PasswordToBytes(password), salt, iterations);
+        HMac hmac = new HMac(new SHA256Digest());
+        hmac.init((KeyParameter) generator.generateDerivedMacParameters(256));
+        hmac.update(content, 0, content.length);
+        byte[] mac = new byte[hmac.getMacSize()];
+        hmac.doFinal(mac, 0);
+
+        AlgorithmIdentifier sha256 = new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256, DERNull.INSTANCE);
+        return new MacData(new DigestInfo(sha256, mac), salt, iterations);
+    }
+
+    private static ASN1Set attributes(SafeBag bag, Map<ASN1OctetString, ASN1OctetString> localKeyIds) {
+        ASN1Set attributes = bag.getBagAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        ASN1EncodableVector rewritten = new ASN1EncodableVector();
+        for (ASN1Encodable encodable : attributes) {
+            Attribute attribute = Attribute.getInstance(encodable);
+            if (PKCSObjectIdentifiers.pkcs_9_at_localKeyId.equals(attribute.getAttrType())) {
+                ASN1OctetString localKeyId = localKeyIds.get(
+                        ASN1OctetString.getInstance(attribute.getAttrValues().getObjectAt(0)));
+                if (localKeyId != null) {
+                    attribute = new Attribute(attribute.getAttrType(), new DERSet(localKeyId));
+                }
+            }
+            rewritten.add(attribute);
+        }
+        return new DERSet(rewritten);
+    }
+
+    private static ASN1OctetString attribute(SafeBag bag, ASN1ObjectIdentifier type) {
+        ASN1Encodable value = attributeValue(bag, type);
+        return value != null ? ASN1OctetString.getInstance(value) : null;
+    }
+
+    private static String friendlyName(SafeBag bag) {
+        ASN1Encodable value = attributeValue(bag, PKCSObjectIdentifiers.pkcs_9_at_friendlyName);
+        return value instanceof ASN1String ? ((ASN1String) value).getString() : "";
+    }
+
+    private static ASN1Encodable attributeValue(SafeBag bag, ASN1ObjectIdentifier type) {
+        if (bag.getBagAttributes() == null) {
+            return null;
+        }
+        for (ASN1Encodable encodable : bag.getBagAttributes()) {
+            Attribute attribute = Attribute.getInstance(encodable);
+            if (type.equals(attribute.getAttrType())
+                    && attribute.getAttrValues().size() > 0) {
+                return attribute.getAttrValues().getObjectAt(0);
+            }
+        }
+        return null;
+    }
+
+    private static byte[] encoding(ASN1Encodable value) {
+        try {
+            return value.toASN1Primitive().getEncoded(ASN1Encoding.DER);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Rewrite a JKS keystore: the format is a header, the entries and a SHA-1 digest of the password, a fixed string and
+     * the content.
+     */
+    private static byte[] rewriteJks(byte[] encoded, char[] password, byte[] seed, long timestamp)
+            throws IOException, GeneralSecurityException {
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        if (in.readInt() != JKS_MAGIC || in.readInt() != JKS_VERSION) {
+            throw new IOException("Unsupported JKS keystore version");
+        }
+        byte[] passwordBytes = jksPasswordBytes(password);
+
+        Map<String, byte[]> entries = new TreeMap<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            ByteArrayOutputStream entry = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(entry);
+
+            int tag = in.readInt();
+            String alias = in.readUTF();
+            in.readLong();
+            out.writeInt(tag);
+            out.writeUTF(alias);
+            out.writeLong(timestamp);
+
+            if (tag == JKS_PRIVATE_KEY_TAG) {
+                EncryptedPrivateKeyInfo key = EncryptedPrivateKeyInfo.getInstance(readBytes(in));
+                byte[] plain = jksRecover(key.getEncryptedData(), passwordBytes, alias);
+                byte[] salt = new byte[SHA1_LENGTH];
+                seededRandom(seed, "key", alias).nextBytes(salt);
+                writeBytes(
+                        out,
+                        new EncryptedPrivateKeyInfo(
+                                        key.getEncryptionAlgorithm(), jksProtect(plain, salt, passwordBytes))
+                                .getEncoded(ASN1Encoding.DER));
+
+                int chainLength = in.readInt();
+                out.writeInt(chainLength);
+                for (int j = 0; j < chainLength; j++) {
+                    copyCertificate(in, out);
+                }
+            } else if (tag == JKS_TRUSTED_CERTIFICATE_TAG) {
+                copyCertificate(in, out);
+            } else {
+                throw new IOException("Unsupported JKS entry: " + alias);
+            }
+
+            out.flush();
+            entries.put(alias, entry.toByteArray());
+        }
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(encoded.length);
+        DataOutputStream out = new DataOutputStream(result);
+        out.writeInt(JKS_MAGIC);
+        out.writeInt(JKS_VERSION);
+        out.writeInt(entries.size());
+        for (byte[] entry : entries.values()) {
+            out.write(entry);
+        }
+        out.flush();
+
+        MessageDigest digest = MessageDigest.getInstance("SHA");
+        digest.update(passwordBytes);
+        digest.update("Mighty Aphrodite".getBytes(StandardCharsets.UTF_8));
+        digest.update(result.toByteArray());
+        out.write(digest.digest());
+        out.flush();
+
+        return result.toByteArray();
+    }
+
+    /**
+     * Recover a key protected by the JDK key protector: salt, key XOR a SHA-1 stream, SHA-1 check.
+     */
+    private static byte[] jksRecover(byte[] protectedKey, byte[] passwordBytes, String alias)
+            throws IOException, GeneralSecurityException {
+        int length = protectedKey.length - 2 * SHA1_LENGTH;
+        if (length <= 0) {
+            throw new IOException("Invalid protected key: " + alias);
+        }
+        byte[] salt = Arrays.copyOfRange(protectedKey, 0, SHA1_LENGTH);
+        byte[] plain = xor(
+                Arrays.copyOfRange(protectedKey, SHA1_LENGTH, SHA1_LENGTH + length),
+                keyStream(passwordBytes, salt, length));
+        byte[] check = Arrays.copyOfRange(protectedKey, SHA1_LENGTH + length, protectedKey.length);
+        if (!MessageDigest.isEqual(check, checksum(passwordBytes, plain))) {
+            throw new IOException(PASSWORD_MISMATCH + ": " + alias);
+        }
+        return plain;
+    }
+
+    private static byte[] jksProtect(byte[] plain, byte[] salt, byte[] passwordBytes) throws GeneralSecurityException {
+        return Arrays.concatenate(
+                salt, xor(plain, keyStream(passwordBytes, salt, plain.length)), checksum(passwordBytes, plain));
+    }
+
+    private static byte[] keyStream(byte[] passwordBytes, byte[] salt, int length) throws GeneralSecurityException {
+        MessageDigest sha1 = MessageDigest.getInstance("SHA");
+        byte[] stream = new byte[length];
+        byte[] digest = salt;
+        for (int offset = 0; offset < length; offset += SHA1_LENGTH) {
+            sha1.update(passwordBytes);
+            sha1.update(digest);
+            digest = sha1.digest();
+            System.arraycopy(digest, 0, stream, offset, Math.min(SHA1_LENGTH, length - offset));
+        }
+        return stream;
+    }
+
+    private static byte[] checksum(byte[] passwordBytes, byte[] plain) throws GeneralSecurityException {
+        MessageDigest sha1 = MessageDigest.getInstance("SHA");
+        sha1.update(passwordBytes);
+        sha1.update(plain);
+        return sha1.digest();
+    }
+
+    private static byte[] xor(byte[] data, byte[] stream) {
+        byte[] result = new byte[data.length];
+        for (int i = 0; i < data.length; i++) {
+            result[i] = (byte) (data[i] ^ stream[i]);
+        }
+        return result;
+    }
+
+    private static byte[] jksPasswordBytes(char[] password) {
+        byte[] bytes = new byte[password.length * 2];
+        for (int i = 0; i < password.length; i++) {
+            bytes[2 * i] = (byte) (password[i] >> 8);
+            bytes[2 * i + 1] = (byte) password[i];
+        }
+        return bytes;
+    }
+
+    private static void copyCertificate(DataInputStream in, DataOutputStream out) throws IOException {
+        out.writeUTF(in.readUTF());
+        writeBytes(out, readBytes(in));
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid JKS keystore");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Random generator for salts and IVs, seeded with the seed, what the bytes are for and the alias they are for.
+     */
+    private static SecureRandom seededRandom(byte[] seed, String purpose, String alias) {
+        DigestRandomGenerator generator = new DigestRandomGenerator(new SHA256Digest());
+        generator.addSeedMaterial(seed);
+        generator.addSeedMaterial(purpose.getBytes(StandardCharsets.UTF_8));
+        generator.addSeedMaterial(alias.getBytes(StandardCharsets.UTF_8));
+        return new SeededRandom(generator);
+    }
+
+    /**
+     * Secure random returning the bytes of a deterministic generator.
+     */
+    private static final class SeededRandom extends SecureRandom {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient RandomGenerator generator;
+
+        SeededRandom(RandomGenerator generator) {
+            this.generator = generator;
+        }
+
+        @Override
+        public synchronized void nextBytes(byte[] bytes) {
+            generator.nextBytes(bytes);
+        }
+    }
+}
@@ -21,13 +21,13 @@ package org.codehaus.mojo.keytool.services;
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.security.KeyStore;
+import java.security.NoSuchAlgorithmException;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.slf4j.Logger;
@@ -42,6 +42,39 @@ public class SecretKeyService {
 
     private static final Logger log = LoggerFactory.getLogger(SecretKeyService.class);
 
+    private final KeyStoreCache keyStoreCache;
+
+    private final SecureRandomSource secureRandomSource;
+
+    /**
+     * Creates a service with its own keystore cache.
+     */
+    public SecretKeyService() {
+        this(new KeyStoreCache());
+    }
+
+    /**
+     * Creates a service sharing the given keystore cache.
+     *
+     * @param keyStoreCache keystore cache
+     */
+    public SecretKeyService(KeyStoreCache keyStoreCache) {
+        this(keyStoreCache, new SecureRandomSource());
+    }
+
+    /**
+     * Creates a service sharing the given keystore cache and secure random source.
+     *
+     * @param keyStoreCache keystore cache
+     * @param secureRandomSource secure random source
+     * @since 2.1
+     */
+    @Inject
+    public SecretKeyService(KeyStoreCache keyStoreCache, SecureRandomSource secureRandomSource) {
+        this.keyStoreCache = keyStoreCache;
+        this.secureRandomSource = secureRandomSource;
+    }
+
     /**
      * Generates a secret key and stores it in the keystore.
      *
@@ -63,53 +96,62 @@ public class SecretKeyService {
             String keysize,
             String keypass)
             throws MojoExecutionException {
+        generateSecretKey(
+                keystore,
+                storetype,
+                storepass,
+                alias,
+                keyalg,
+                keysize,
+                keypass,
+                KeyStoreWriteOptions.defaults(),
+                SecureRandomStrategy.DEFAULT);
+    }
+
+    /**
+     * Generates a secret key and stores it in the keystore.
+     *
+     * @param keystore keystore location
+     * @param storetype keystore type (defaults to KeyStore.getDefaultType() if null)
+     * @param storepass keystore password
+     * @param alias key alias
+     * @param keyalg key algorithm (e.g., "AES", "DES", "DESede")
+     * @param keysize key size in bits (e.g., "128", "256")
+     * @param keypass key password (defaults to storepass if null)
+     * @param writeOptions how to write the keystore
+     * @param secureRandom secure random strategy generating the key, {@code null} for the default one
+     * @throws MojoExecutionException if operation fails
+     * @since 2.1
+     */
+    public void generateSecretKey(
+            File keystore,
+            String storetype,
+            String storepass,
+            String alias,
+            String keyalg,
+            String keysize,
+            String keypass,
+            KeyStoreWriteOptions writeOptions,
+            SecureRandomStrategy secureRandom)
+            throws MojoExecutionException {
 
         try {
             // Default values
-            String effectiveStoreType = storetype != null ? storetype : KeyStore.getDefaultType();
             char[] storePassword = storepass != null ? storepass.toCharArray() : new char[0];
             char[] keyPassword = keypass != null ? keypass.toCharArray() : storePassword;
 
-            // Load or create keystore
-            KeyStore ks = loadOrCreateKeyStore(keystore, effectiveStoreType, storePassword);
-
-            // Validate algorithm
-            if (keyalg == null || keyalg.trim().isEmpty()) {
-                throw new MojoExecutionException("Key algorithm (keyalg) is required");
-            }
+            KeyStoreMutation mutation = generateSecretKeyMutation(alias, keyalg, keysize, keyPassword, secureRandom);
 
-            // Validate alias
-            if (alias == null || alias.trim().isEmpty()) {
-                throw new MojoExecutionException("Alias is required");
+            if (keystore == null) {
+                throw new IllegalArgumentException("Keystore file cannot be null");
             }
 
-            // Generate secret key
-            log.info("Generating secret key with algorithm: {}", keyalg);
-            KeyGenerator keyGen = KeyGenerator.getInstance(keyalg);
-
-            if (keysize != null && !keysize.trim().isEmpty()) {
-                try {
-                    int size = Integer.parseInt(keysize);
-                    log.info("Initializing key generator with key size: {}", size);
-                    keyGen.init(size);
-                } catch (NumberFormatException e) {
-                    throw new MojoExecutionException("Invalid key size: " + keysize, e);
-                }
+            try (KeyStoreSession session =
+                    keyStoreCache.openSession(keystore, storetype, storePassword, true, writeOptions)) {
+                session.queue(mutation);
+                session.commit();
             }
 
-            SecretKey secretKey = keyGen.generateKey();
-
-            // Store secret key in keystore
-            KeyStore.SecretKeyEntry secretKeyEntry = new KeyStore.SecretKeyEntry(secretKey);
-            KeyStore.ProtectionParameter protectionParam = new KeyStore.PasswordProtection(keyPassword);
-
-            ks.setEntry(alias, secretKeyEntry, protectionParam);
-
-            log.info("Secret key stored with alias: {}", alias);
-
-            // Save keystore
-            saveKeyStore(ks, keystore, storePassword);
-
             log.info("Secret key generation completed successfully");
 
         } catch (Exception e) {
@@ -118,40 +160,59 @@ public class SecretKeyService {
     }
 
     /**
-     * Loads an existing keystore or creates a new one.
+     * Generates a secret key and returns the mutation storing it.
+     * <p>
+     * Key generation happens right away, only storing the entry is deferred to the commit of the session.
+     *
+     * @param alias key alias
+     * @param keyalg key algorithm (e.g., "AES", "DES", "DESede")
+     * @param keysize key size in bits (e.g., "128", "256"), may be {@code null}
+     * @param keyPassword key password
+     * @param secureRandom secure random strategy generating the key, {@code null} for the default one
+     * @return the mutation, to be queued in a {@link KeyStoreSession}
+     * @throws MojoExecutionException if the parameters are invalid
+     * @throws NoSuchAlgorithmException if the key algorithm is not available
      */
-    private KeyStore loadOrCreateKeyStore(File keystoreFile, String storeType, char[] storePassword) throws Exception {
-        KeyStore ks = KeyStore.getInstance(storeType);
+    public KeyStoreMutation generateSecretKeyMutation(
+            String alias, String keyalg, String keysize, char[] keyPassword, SecureRandomStrategy secureRandom)
+            throws MojoExecutionException, NoSuchAlgorithmException {
 
-        if (keystoreFile != null && keystoreFile.exists()) {
-            log.info("Loading existing keystore: {}", keystoreFile.getAbsolutePath());
-            try (FileInputStream fis = new FileInputStream(keystoreFile)) {
-                ks.load(fis, storePassword);
-            }
-        } else {
-            log.info("Creating new keystore");
-            ks.load(null, storePassword);
+        // Validate algorithm
+        if (keyalg == null || keyalg.trim().isEmpty()) {
+            throw new MojoExecutionException("Key algorithm (keyalg) is required");
+        }
+
+        // Validate alias
+        if (alias == null || alias.trim().isEmpty()) {
+            throw new MojoExecutionException("Alias is required");
+        }
 
-            // Create parent directories if necessary
-            if (keystoreFile != null && keystoreFile.getParentFile() != null) {
-                keystoreFile.getParentFile().mkdirs();
+        // Generate secret key
+        log.info("Generating secret key with algorithm: {}", keyalg);
+        KeyGenerator keyGen = KeyGenerator.getInstance(keyalg);
+
+        if (keysize != null && !keysize.trim().isEmpty()) {
+            try {
+                int size = Integer.parseInt(keysize);
+                log.info("Initializing key generator with key size: {}", size);
+                keyGen.init(size, secureRandomSource.get(secureRandom));
+            } catch (NumberFormatException e) {
+                throw new MojoExecutionException("Invalid key size: " + keysize, e);
             }
+        } else {
+            keyGen.init(secureRandomSource.get(secureRandom));
         }
 
-        return ks;
-    }
+        SecretKey secretKey = keyGen.generateKey();
 
-    /**
-     * Saves the keystore to file.
-     */
-    private void saveKeyStore(KeyStore ks, File keystoreFile, char[] storePassword) throws Exception {
-        if (keystoreFile == null) {
-            throw new IllegalArgumentException("Keystore file cannot be null");
-        }
+        // Store secret key in keystore
+        KeyStore.SecretKeyEntry secretKeyEntry = new KeyStore.SecretKeyEntry(secretKey);
 
-        log.info("Saving keystore to: {}", keystoreFile.getAbsolutePath());
-        try (FileOutputStream fos = new FileOutputStream(keystoreFile)) {
-            ks.store(fos, storePassword);
-        }
+        return (ks, protection) -> {
+            ks.setEntry(alias, secretKeyEntry, protection.protect(ks, keyPassword));
+
+            log.info("Secret key stored with alias: {}", alias);
+            return true;
+        };
     }
 }
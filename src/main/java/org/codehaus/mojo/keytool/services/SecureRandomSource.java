@@ -0,0 +1,58 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import java.security.SecureRandom;
+
+/**
+ * The {@link SecureRandom} instances used to generate keys and certificate serial numbers.
+ * <p>
+ * Each thread reuses one instance per {@link SecureRandomStrategy strategy}, so that instances are neither shared
+ * between threads nor seeded again for each key. The strategy is given with each call, so goals running in parallel
+ * with different strategies do not affect each other.
+ *
+ * @since 2.1
+ */
+@Named
+@Singleton
+public class SecureRandomSource {
+
+    // only JDK types in the thread local, so that it does not keep the plugin class loader alive
+    private final ThreadLocal<SecureRandom[]> instances =
+            ThreadLocal.withInitial(() -> new SecureRandom[SecureRandomStrategy.values().length]);
+
+    /**
+     * @param strategy strategy, {@code null} for the {@link SecureRandomStrategy#DEFAULT default} one
+     * @return the secure random of the current thread for the strategy
+     */
+    public SecureRandom get(SecureRandomStrategy strategy) {
+        SecureRandomStrategy current = strategy != null ? strategy : SecureRandomStrategy.DEFAULT;
+        SecureRandom[] threadInstances = instances.get();
+        SecureRandom random = threadInstances[current.ordinal()];
+        if (random == null) {
+            random = current.newInstance();
+            threadInstances[current.ordinal()] = random;
+        }
+        return random;
+    }
+}
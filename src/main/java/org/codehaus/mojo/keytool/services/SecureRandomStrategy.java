@@ -0,0 +1,108 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Kinds of {@link SecureRandom} used to generate keys and certificate serial numbers.
+ *
+ * @since 2.1
+ */
+public enum SecureRandomStrategy {
+
+    /**
+     * The default {@link SecureRandom} of the JVM, as configured by the {@code securerandom.source} security
+     * property. It may block while the operating system gathers entropy.
+     */
+    DEFAULT("default", null),
+
+    /**
+     * The NIST SP 800-90A DRBG of Java 9 and later, which only reads the operating system entropy to seed itself.
+     */
+    DRBG("drbg", "DRBG"),
+
+    /**
+     * {@code NativePRNGNonBlocking}, reading {@code /dev/urandom} on Unix-like systems, which never blocks.
+     */
+    NON_BLOCKING("non-blocking", "NativePRNGNonBlocking");
+
+    private static final Logger log = LoggerFactory.getLogger(SecureRandomStrategy.class);
+
+    private final String strategyName;
+
+    private final String algorithm;
+
+    SecureRandomStrategy(String strategyName, String algorithm) {
+        this.strategyName = strategyName;
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Get a strategy by name.
+     *
+     * @param name strategy name, {@code null} or empty for the {@link #DEFAULT} strategy
+     * @return the strategy
+     * @throws IllegalArgumentException if the name is not a known strategy
+     */
+    public static SecureRandomStrategy forName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return DEFAULT;
+        }
+
+        String trimmed = name.trim().toLowerCase(Locale.ROOT);
+        for (SecureRandomStrategy strategy : values()) {
+            if (strategy.strategyName.equals(trimmed)) {
+                return strategy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown secure random strategy '" + name + "', expected '"
+                + DEFAULT.strategyName + "', '" + DRBG.strategyName + "' or '" + NON_BLOCKING.strategyName + "'");
+    }
+
+    /**
+     * @return name of this strategy
+     */
+    public String getStrategyName() {
+        return strategyName;
+    }
+
+    /**
+     * Create a {@link SecureRandom} of this kind, or the default one if this JVM does not provide it.
+     *
+     * @return a new secure random
+     */
+    public SecureRandom newInstance() {
+        if (algorithm == null) {
+            return new SecureRandom();
+        }
+        try {
+            return SecureRandom.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            log.warn("{} secure random is not available on this JVM, using the default one", algorithm);
+            return new SecureRandom();
+        }
+    }
+}
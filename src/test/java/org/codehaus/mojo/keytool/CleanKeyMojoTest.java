@@ -18,10 +18,13 @@ package org.codehaus.mojo.keytool;
 
 import java.io.File;
 
+import org.codehaus.mojo.keytool.services.KeyStoreSidecar;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
 /**
  * Unit Test class that test the removal of an existing and non existing
  * keystore file.
@@ -57,8 +60,12 @@ class CleanKeyMojoTest {
                 System.getProperty("java.io.tmpdir") + File.separator + CleanKeyMojoTest.EXISTING_TEST_KEYSTORE;
         File tempKeystoreFile = new File(tempKeystore);
         tempKeystoreFile.createNewFile();
+        File sidecarFile = KeyStoreSidecar.getFile(tempKeystoreFile);
+        sidecarFile.createNewFile();
         mojo.setKeystore(tempKeystore);
         mojo.execute();
+        assertFalse(tempKeystoreFile.exists(), "Keystore should be deleted");
+        assertFalse(sidecarFile.exists(), "Sidecar should be deleted with the keystore");
     }
 
     /**
@@ -66,7 +73,7 @@ class CleanKeyMojoTest {
      *
      */
     @Test
-    void removeNonExistentKeystore() {
+    void removeNonExistentKeystore() throws Exception {
         mojo.setKeystore(CleanKeyMojoTest.NON_EXISTING_TEST_KEYSTORE);
         mojo.execute();
     }
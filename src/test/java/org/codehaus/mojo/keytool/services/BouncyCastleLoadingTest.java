@@ -0,0 +1,205 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.UnrecoverableKeyException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that keystore operations not needing Bouncy Castle never load its provider, and measures what it saves.
+ * <p>
+ * Each measure runs in a new class loader isolated from the one of the tests, so that neither the classes already
+ * loaded by other tests nor a provider they registered are seen.
+ */
+public class BouncyCastleLoadingTest {
+
+    private static final String PROVIDER_CLASS = "org.bouncycastle.jce.provider.BouncyCastleProvider";
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    @TempDir
+    public File tempFolder;
+
+    @Test
+    void operationsWithoutBouncyCastleAlgorithmsDoNotLoadTheProvider(TestReporter reporter) throws Exception {
+        File keystoreFile = new File(tempFolder, "test.p12");
+        new CertificateGenerationService()
+                .generateKeyPair(
+                        keystoreFile, "PKCS12", PASSWORD, "key", "RSA", 2048, null, "CN=Test", 30, PASSWORD, null);
+
+        RecordingClassLoader operationsLoader = new RecordingClassLoader();
+        long start = System.nanoTime();
+        operationsLoader
+                .loadClass(Operations.class.getName())
+                .getMethod("run", File.class)
+                .invoke(null, keystoreFile);
+        long operationsNanos = System.nanoTime() - start;
+
+        assertFalse(
+                operationsLoader.getLoaded().contains(PROVIDER_CLASS),
+                "List, export, secret key, alias and delete operations should not load the Bouncy Castle provider");
+
+        RecordingClassLoader providerLoader = new RecordingClassLoader();
+        start = System.nanoTime();
+        Class.forName(PROVIDER_CLASS, true, providerLoader).getConstructor().newInstance();
+        long providerNanos = System.nanoTime() - start;
+
+        reporter.publishEntry(
+                "operations without the provider",
+                (operationsNanos / 1_000_000L) + " ms, "
+                        + operationsLoader.getLoaded().size() + " classes");
+        reporter.publishEntry(
+                "saved by not loading the provider",
+                (providerNanos / 1_000_000L) + " ms, "
+                        + providerLoader.getLoaded().size() + " classes");
+
+        assertTrue(
+                providerLoader.getLoaded().size() > operationsLoader.getLoaded().size(),
+                "Loading the provider alone should cost more classes than all the operations together");
+    }
+
+    @Test
+    void getKeyReadsEdDsaKeys() throws Exception {
+        File keystoreFile = new File(tempFolder, "eddsa.p12");
+        new CertificateGenerationService()
+                .generateKeyPair(
+                        keystoreFile, "PKCS12", PASSWORD, "key", "EdDSA", 0, null, "CN=Test", 30, PASSWORD, null);
+        KeyStore keystore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(keystoreFile)) {
+            keystore.load(in, PASSWORD);
+        }
+
+        assertTrue(BouncyCastle.getKey(keystore, "key", PASSWORD) instanceof PrivateKey);
+        assertThrows(
+                UnrecoverableKeyException.class,
+                () -> BouncyCastle.getKey(keystore, "key", "wrong".toCharArray()),
+                "A wrong password should not be taken for a missing algorithm");
+    }
+
+    @Test
+    void providerIsCreatedOnce() throws Exception {
+        RecordingClassLoader loader = new RecordingClassLoader();
+        Class<?> type = loader.loadClass(Operations.class.getName());
+
+        List<Object> providers = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    providers.add(type.getMethod("provider").invoke(null));
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(threads.size(), providers.size(), "Every thread should get the provider");
+        for (Object provider : providers) {
+            assertSame(providers.get(0), provider, "The provider should be created only once");
+        }
+    }
+
+    /**
+     * Operations run in the isolated class loader.
+     */
+    public static final class Operations {
+
+        private Operations() {}
+
+        public static void run(File keystoreFile) throws Exception {
+            new KeyStoreManagementService().listAliases(keystoreFile, "PKCS12", PASSWORD, null);
+
+            CertificateManagementService certificates = new CertificateManagementService();
+            certificates.exportCertificate(
+                    keystoreFile, "PKCS12", PASSWORD, "key", new File(keystoreFile.getParentFile(), "key.cer"));
+
+            new SecretKeyService()
+                    .generateSecretKey(keystoreFile, "PKCS12", new String(PASSWORD), "secret", "AES", "128", null);
+
+            new KeyStoreManagementService()
+                    .changeAlias(keystoreFile, "PKCS12", PASSWORD, "secret", "renamed", PASSWORD);
+
+            certificates.deleteAlias(keystoreFile, "PKCS12", PASSWORD, "renamed");
+        }
+
+        public static Object provider() {
+            return BouncyCastle.provider();
+        }
+    }
+
+    /**
+     * Loads the test class path again, without a parent, recording the classes it defines.
+     */
+    private static final class RecordingClassLoader extends URLClassLoader {
+
+        private final Set<String> loaded = ConcurrentHashMap.newKeySet();
+
+        RecordingClassLoader() throws MalformedURLException {
+            super(classPath(), null);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            Class<?> type = super.findClass(name);
+            loaded.add(name);
+            return type;
+        }
+
+        Set<String> getLoaded() {
+            return loaded;
+        }
+
+        private static URL[] classPath() throws MalformedURLException {
+            String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+            URL[] urls = new URL[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                urls[i] = new File(entries[i]).toURI().toURL();
+            }
+            return urls;
+        }
+    }
+}
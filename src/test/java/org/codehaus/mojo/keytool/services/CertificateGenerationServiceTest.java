@@ -24,12 +24,18 @@ import java.io.FileOutputStream;
 import java.nio.file.Files;
 import java.security.KeyStore;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -252,6 +258,164 @@ public class CertificateGenerationServiceTest {
         assertTrue(certFile.length() > 0, "Certificate file should not be empty");
     }
 
+    @Test
+    void generateKeyPairEd25519SignsCertificateRequestsAndCertificates() throws Exception {
+        File keystoreFile = new File(tempFolder, "ed25519.p12");
+        File csrFile = new File(tempFolder, "ed25519.csr");
+        File certFile = new File(tempFolder, "ed25519.cer");
+        char[] password = "changeit".toCharArray();
+
+        service.generateKeyPair(
+                keystoreFile, "PKCS12", password, "edkey", "Ed25519", 0, null, "CN=Ed25519 Test", 30, password, null);
+        service.generateCertificateRequest(
+                keystoreFile, "PKCS12", password, "edkey", password, null, null, csrFile, null);
+        service.generateCertificate(
+                keystoreFile, "PKCS12", password, "edkey", password, csrFile, certFile, null, 30, null, false, null);
+
+        KeyStore ks = KeyStore.getInstance("PKCS12");
+        try (java.io.FileInputStream fis = new java.io.FileInputStream(keystoreFile)) {
+            ks.load(fis, password);
+        }
+        X509Certificate cert = (X509Certificate) ks.getCertificate("edkey");
+        assertEquals("Ed25519", cert.getSigAlgName(), "Self-signed certificate should be signed with Ed25519");
+        assertTrue(certFile.length() > 0, "Certificate should be signed from the request");
+    }
+
+    @Test
+    void generateKeyPairOnNamedCurve() throws Exception {
+        File keystoreFile = new File(tempFolder, "p384.p12");
+        char[] password = "changeit".toCharArray();
+
+        service.generateKeyPair(
+                keystoreFile,
+                "PKCS12",
+                password,
+                "eckey",
+                KeyPairSpec.of("EC", 0, "P-384"),
+                null,
+                "CN=P-384 Test",
+                30,
+                password,
+                null,
+                KeyStoreWriteOptions.defaults(),
+                null,
+                null);
+
+        KeyStore ks = KeyStore.getInstance("PKCS12");
+        try (java.io.FileInputStream fis = new java.io.FileInputStream(keystoreFile)) {
+            ks.load(fis, password);
+        }
+        X509Certificate cert = (X509Certificate) ks.getCertificate("eckey");
+        assertEquals(
+                384,
+                ((java.security.interfaces.ECPublicKey) cert.getPublicKey())
+                        .getParams()
+                        .getCurve()
+                        .getField()
+                        .getFieldSize());
+        assertEquals("SHA384withECDSA", cert.getSigAlgName(), "Hash should match the curve");
+    }
+
+    @Test
+    void generateKeyPairsStoresAllKeyPairsAtOnce() throws Exception {
+        File keystoreFile = new File(tempFolder, "bulk.p12");
+        char[] password = "changeit".toCharArray();
+
+        List<String> aliases = new ArrayList<>();
+        List<String> dnames = new ArrayList<>();
+        for (int i = 1; i <= 12; i++) {
+            aliases.add("service-" + i);
+            dnames.add("CN=service-" + i + ".example.com,O=Test");
+        }
+
+        service.generateKeyPairs(
+                keystoreFile,
+                "PKCS12",
+                password,
+                aliases,
+                dnames,
+                KeyPairSpec.of("EC", 256, null),
+                null,
+                30,
+                password,
+                null,
+                4,
+                KeyStoreWriteOptions.defaults());
+
+        KeyStore ks = KeyStore.getInstance("PKCS12");
+        try (java.io.FileInputStream fis = new java.io.FileInputStream(keystoreFile)) {
+            ks.load(fis, password);
+        }
+        assertEquals(12, ks.size(), "Every key pair should be stored");
+
+        Set<Object> serials = new HashSet<>();
+        for (int i = 0; i < aliases.size(); i++) {
+            X509Certificate cert = (X509Certificate) ks.getCertificate(aliases.get(i));
+            assertEquals(new javax.security.auth.x500.X500Principal(dnames.get(i)), cert.getSubjectX500Principal());
+            assertNotNull(ks.getKey(aliases.get(i), password), "Should have private key");
+            serials.add(cert.getSerialNumber());
+        }
+        assertEquals(12, serials.size(), "Certificates should have distinct serial numbers");
+    }
+
+    @Test
+    void generateKeyPairsWithDuplicateAliasWritesNothing() {
+        File keystoreFile = new File(tempFolder, "duplicate.p12");
+        char[] password = "changeit".toCharArray();
+
+        assertThrows(
+                Exception.class,
+                () -> service.generateKeyPairs(
+                        keystoreFile,
+                        "PKCS12",
+                        password,
+                        Arrays.asList("a", "b", "a"),
+                        Arrays.asList("CN=a", "CN=b", "CN=c"),
+                        KeyPairSpec.of("EC", 256, null),
+                        null,
+                        30,
+                        password,
+                        null,
+                        0,
+                        KeyStoreWriteOptions.defaults()));
+        assertFalse(keystoreFile.exists(), "Keystore should not be written");
+    }
+
+    @Test
+    void generateKeyPairReusesCachedKeyPair() throws Exception {
+        char[] password = "changeit".toCharArray();
+        KeyPairCache cache = new KeyPairCache(new File(tempFolder, "key-pairs"), 10, password);
+
+        KeyStore[] keystores = new KeyStore[2];
+        for (int i = 0; i < keystores.length; i++) {
+            File keystoreFile = new File(tempFolder, "cached-" + i + ".p12");
+            service.generateKeyPair(
+                    keystoreFile,
+                    "PKCS12",
+                    password,
+                    "server",
+                    KeyPairSpec.of("EC", 256, null),
+                    null,
+                    "CN=Server " + i,
+                    30,
+                    password,
+                    null,
+                    KeyStoreWriteOptions.defaults(),
+                    cache,
+                    "server");
+
+            keystores[i] = KeyStore.getInstance("PKCS12");
+            try (java.io.FileInputStream fis = new java.io.FileInputStream(keystoreFile)) {
+                keystores[i].load(fis, password);
+            }
+        }
+
+        assertEquals(
+                keystores[0].getCertificate("server").getPublicKey(),
+                keystores[1].getCertificate("server").getPublicKey(),
+                "Second keystore should reuse the cached key pair");
+    }
+
     @Test
     void generateKeyPairInvalidKeySize() {
         File keystoreFile = new File(tempFolder, "invalid.jks");
@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.math.BigInteger;
+import java.nio.file.Files;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.KeyStore;
@@ -42,6 +43,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -103,6 +106,24 @@ public class CertificateManagementServiceTest {
         service.importCertificate(keystoreFile, "JKS", password, alias, certFile, true, null);
     }
 
+    @Test
+    void importSameCertificateAgainLeavesFileUntouched() throws Exception {
+        File keystoreFile = new File(tempFolder, "test-same.jks");
+        File certFile = createTestCertificateFile();
+
+        char[] password = "changeit".toCharArray();
+        String alias = "testcert";
+
+        service.importCertificate(keystoreFile, "JKS", password, alias, certFile, false, null);
+        byte[] before = Files.readAllBytes(keystoreFile.toPath());
+        keystoreFile.setLastModified(0);
+
+        service.importCertificate(keystoreFile, "JKS", password, alias, certFile, false, null);
+
+        assertEquals(0, keystoreFile.lastModified(), "Keystore should not have been rewritten");
+        assertArrayEquals(before, Files.readAllBytes(keystoreFile.toPath()));
+    }
+
     @Test
     void exportCertificate() throws Exception {
         File keystoreFile = new File(tempFolder, "export-test.jks");
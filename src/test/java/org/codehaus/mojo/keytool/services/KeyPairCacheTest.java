@@ -0,0 +1,126 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for KeyPairCache.
+ */
+public class KeyPairCacheTest {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    private static final KeyPairSpec RSA_1024 = KeyPairSpec.of("RSA", 1024, null);
+
+    private static final KeyPairSpec RSA_2048 = KeyPairSpec.of("RSA", 2048, null);
+
+    private static final KeyPairSpec EC_256 = KeyPairSpec.of("EC", 256, null);
+
+    @TempDir
+    public File tempFolder;
+
+    @Test
+    void getReturnsCachedKeyPair() throws Exception {
+        KeyPairCache cache = new KeyPairCache(tempFolder, 10, PASSWORD);
+        KeyPair keyPair = generate("RSA", 1024);
+
+        assertNull(cache.get(RSA_1024, "server"), "Nothing should be cached yet");
+        cache.put(RSA_1024, "server", keyPair);
+
+        KeyPair cached = new KeyPairCache(tempFolder, 10, PASSWORD).get(RSA_1024, "server");
+        assertNotNull(cached, "Key pair should be cached across instances");
+        assertArrayEquals(keyPair.getPublic().getEncoded(), cached.getPublic().getEncoded());
+        assertArrayEquals(keyPair.getPrivate().getEncoded(), cached.getPrivate().getEncoded());
+
+        assertNull(cache.get(RSA_2048, "server"), "Another key size is another entry");
+        assertNull(cache.get(RSA_1024, "client"), "Another slot is another entry");
+    }
+
+    @Test
+    void slotsDifferingOnlyInSpecialCharactersHaveTheirOwnFile() throws Exception {
+        KeyPairCache cache = new KeyPairCache(tempFolder, 10, PASSWORD);
+        KeyPair first = generate("EC", 256);
+        KeyPair second = generate("EC", 256);
+
+        cache.put(EC_256, "a/b", first);
+        cache.put(EC_256, "a:b", second);
+        cache.put(EC_256, "A_B", second);
+
+        assertNotEquals(cache.getFile(EC_256, "a/b"), cache.getFile(EC_256, "a:b"));
+        assertNotEquals(cache.getFile(EC_256, "a_b"), cache.getFile(EC_256, "A_B"));
+        assertArrayEquals(
+                first.getPublic().getEncoded(),
+                cache.get(EC_256, "a/b").getPublic().getEncoded());
+        assertArrayEquals(
+                second.getPublic().getEncoded(),
+                cache.get(EC_256, "a:b").getPublic().getEncoded());
+        assertTrue(cache.getFile(EC_256, "a/b").getName().startsWith("ec-256-"), "Name should stay readable");
+    }
+
+    @Test
+    void privateKeyIsEncrypted() throws Exception {
+        KeyPairCache cache = new KeyPairCache(tempFolder, 10, PASSWORD);
+        cache.put(EC_256, "server", generate("EC", 256));
+
+        String content =
+                new String(Files.readAllBytes(cache.getFile(EC_256, "server").toPath()), "US-ASCII");
+        assertTrue(content.contains("ENCRYPTED PRIVATE KEY"), "Private key should be encrypted");
+        assertNull(
+                new KeyPairCache(tempFolder, 10, "other".toCharArray()).get(EC_256, "server"),
+                "Another password should not read the key pair");
+    }
+
+    @Test
+    void putEvictsLeastRecentlyUsed() throws Exception {
+        KeyPairCache cache = new KeyPairCache(tempFolder, 2, PASSWORD);
+        cache.put(EC_256, "a", generate("EC", 256));
+        cache.put(EC_256, "b", generate("EC", 256));
+        long now = System.currentTimeMillis();
+        assertTrue(cache.getFile(EC_256, "a").setLastModified(now - 20000L));
+        assertTrue(cache.getFile(EC_256, "b").setLastModified(now - 10000L));
+
+        assertNotNull(cache.get(EC_256, "a"), "Using a should make it the most recent");
+        cache.put(EC_256, "c", generate("EC", 256));
+
+        assertTrue(cache.getFile(EC_256, "a").exists(), "Recently used key pair should be kept");
+        assertFalse(cache.getFile(EC_256, "b").exists(), "Least recently used key pair should be evicted");
+        assertTrue(cache.getFile(EC_256, "c").exists(), "New key pair should be kept");
+    }
+
+    private static KeyPair generate(String algorithm, int keySize) throws Exception {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance(algorithm);
+        keyGen.initialize(keySize);
+        return keyGen.generateKeyPair();
+    }
+}
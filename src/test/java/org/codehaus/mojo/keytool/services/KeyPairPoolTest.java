@@ -0,0 +1,98 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for KeyPairPool.
+ */
+public class KeyPairPoolTest {
+
+    private static final KeyPairSpec RSA_1024 = KeyPairSpec.of("RSA", 1024, null);
+
+    @Test
+    void takeWithoutReservationGeneratesKeyPair() throws Exception {
+        KeyPairPool pool = new KeyPairPool();
+
+        KeyPair keyPair = pool.take(RSA_1024);
+
+        assertEquals(1024, ((RSAPublicKey) keyPair.getPublic()).getModulus().bitLength());
+        assertEquals(0, pool.getReadyCount(RSA_1024), "Nothing should be generated ahead of time");
+    }
+
+    @Test
+    void reserveGeneratesKeyPairsAheadOfTime() throws Exception {
+        KeyPairPool pool = new KeyPairPool();
+
+        pool.reserve(RSA_1024, 2);
+        awaitReady(pool, RSA_1024, 2);
+
+        Set<Object> publicKeys = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            KeyPair keyPair = pool.take(KeyPairSpec.of("rsa", 1024, null));
+            assertEquals(1024, ((RSAPublicKey) keyPair.getPublic()).getModulus().bitLength());
+            publicKeys.add(keyPair.getPublic());
+        }
+        assertEquals(4, publicKeys.size(), "A key pair should never be handed out twice");
+
+        awaitReady(pool, RSA_1024, 2);
+        assertEquals(2, pool.getReadyCount(RSA_1024), "Pool should not grow past its reservation");
+    }
+
+    @Test
+    void reservationsAreKeptPerSecureRandomStrategy() throws Exception {
+        KeyPairPool pool = new KeyPairPool();
+        KeyPairSpec nonBlocking = RSA_1024.withSecureRandom(SecureRandomStrategy.NON_BLOCKING);
+
+        pool.reserve(nonBlocking, 1);
+        awaitReady(pool, nonBlocking, 1);
+
+        assertEquals(0, pool.getReadyCount(RSA_1024), "Key pairs of another strategy should not be handed out");
+        assertEquals(1, pool.getReadyCount(nonBlocking));
+    }
+
+    @Test
+    void unknownAlgorithmFailsOnTake() {
+        KeyPairPool pool = new KeyPairPool();
+        KeyPairSpec unknown = KeyPairSpec.of("NoSuchAlgorithm", 1024, null);
+
+        pool.reserve(unknown, 1);
+
+        assertThrows(Exception.class, () -> pool.take(unknown));
+    }
+
+    private static void awaitReady(KeyPairPool pool, KeyPairSpec spec, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60000L;
+        while (pool.getReadyCount(spec) < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "Key pairs should be generated in the background");
+            Thread.sleep(10L);
+        }
+    }
+}
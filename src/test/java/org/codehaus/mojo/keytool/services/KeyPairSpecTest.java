@@ -0,0 +1,84 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPublicKey;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for KeyPairSpec.
+ */
+public class KeyPairSpecTest {
+
+    @Test
+    void ofNormalizesAlgorithmsAndCurves() {
+        assertEquals(KeyPairSpec.of("RSA", 2048, null), KeyPairSpec.of("rsa", 2048, " "));
+        assertEquals(KeyPairSpec.of("Ed25519", 0, null), KeyPairSpec.of("EdDSA", 2048, null));
+        assertEquals(KeyPairSpec.of("Ed448", 0, null), KeyPairSpec.of("EdDSA", 0, "ed448"));
+        assertEquals("secp256r1", KeyPairSpec.of("EC", 2048, "P-256").getGroupName());
+        assertEquals("secp384r1", KeyPairSpec.of("EC", 0, "NIST P-384").getGroupName());
+        assertEquals(256, KeyPairSpec.of("EC", 256, null).getKeySize());
+        assertNull(KeyPairSpec.of("EC", 256, null).getGroupName());
+    }
+
+    @Test
+    void withSecureRandomKeepsKeyParameters() {
+        KeyPairSpec spec = KeyPairSpec.of("EC", 0, "P-256").withSecureRandom(SecureRandomStrategy.DRBG);
+
+        assertEquals(SecureRandomStrategy.DRBG, spec.getSecureRandom());
+        assertEquals("secp256r1", spec.getGroupName());
+        assertNotEquals(KeyPairSpec.of("EC", 0, "P-256"), spec);
+        assertEquals(KeyPairSpec.of("EC", 0, "P-256"), spec.withSecureRandom(null));
+    }
+
+    @Test
+    void ofRefusesGroupNameOfOtherAlgorithms() {
+        assertThrows(IllegalArgumentException.class, () -> KeyPairSpec.of("RSA", 2048, "secp256r1"));
+        assertThrows(IllegalArgumentException.class, () -> KeyPairSpec.of("EdDSA", 0, "secp256r1"));
+    }
+
+    @Test
+    void generateUsesNamedCurve() throws Exception {
+        KeyPair keyPair = KeyPairSpec.of("EC", 0, "secp521r1").generate(new SecureRandom());
+
+        assertEquals(
+                521,
+                ((ECPublicKey) keyPair.getPublic())
+                        .getParams()
+                        .getCurve()
+                        .getField()
+                        .getFieldSize());
+    }
+
+    @Test
+    void generateEd448IgnoresKeySize() throws Exception {
+        KeyPair keyPair = KeyPairSpec.of("Ed448", 4096, null).generate(new SecureRandom());
+
+        assertEquals("EdDSA", keyPair.getPublic().getAlgorithm());
+    }
+}
@@ -0,0 +1,286 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.crypto.KeyGenerator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.util.concurrent.Callable;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Unit tests for KeyStoreCache.
+ */
+public class KeyStoreCacheTest {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    @TempDir
+    public File tempFolder;
+
+    private KeyStoreCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new KeyStoreCache();
+    }
+
+    @Test
+    void loadReusesUnchangedKeyStore() throws Exception {
+        File keystoreFile = createTestKeyStore("test.p12");
+
+        KeyStore first = cache.load(keystoreFile, "PKCS12", PASSWORD);
+        KeyStore second = cache.load(keystoreFile, "PKCS12", PASSWORD);
+
+        assertSame(first, second, "Unchanged keystore should be served from cache");
+    }
+
+    @Test
+    void loadDetectsChangedFile() throws Exception {
+        File keystoreFile = createTestKeyStore("test.p12");
+
+        KeyStore first = cache.load(keystoreFile, "PKCS12", PASSWORD);
+
+        KeyStore other = KeyStore.getInstance("PKCS12");
+        other.load(null, PASSWORD);
+        try (FileOutputStream fos = new FileOutputStream(keystoreFile)) {
+            other.store(fos, PASSWORD);
+        }
+
+        KeyStore second = cache.load(keystoreFile, "PKCS12", PASSWORD);
+
+        assertNotSame(first, second, "Changed keystore should be reloaded");
+        assertEquals(0, second.size(), "Reloaded keystore should reflect the file content");
+    }
+
+    @Test
+    void loadWithWrongPasswordFailsEvenWhenCached() throws Exception {
+        File keystoreFile = createTestKeyStore("test.p12");
+
+        cache.load(keystoreFile, "PKCS12", PASSWORD);
+
+        assertThrows(Exception.class, () -> cache.load(keystoreFile, "PKCS12", "wrongpass".toCharArray()));
+    }
+
+    @Test
+    void storeRefreshesCache() throws Exception {
+        File keystoreFile = new File(tempFolder, "new.p12");
+
+        KeyStore created = cache.loadOrCreate(keystoreFile, "PKCS12", PASSWORD);
+        created.setEntry(
+                "secret",
+                new KeyStore.SecretKeyEntry(KeyGenerator.getInstance("AES").generateKey()),
+                new KeyStore.PasswordProtection(PASSWORD));
+        cache.store(created, keystoreFile, PASSWORD);
+
+        assertTrue(keystoreFile.exists(), "Keystore should have been written");
+        assertSame(created, cache.load(keystoreFile, "PKCS12", PASSWORD), "Stored keystore should be cached");
+    }
+
+    @Test
+    void storeReplacesFileAtomically() throws Exception {
+        File keystoreFile = createTestKeyStore("test.p12");
+
+        KeyStore keystore = cache.load(keystoreFile, "PKCS12", PASSWORD);
+        keystore.deleteEntry("secret");
+        cache.store(
+                keystore,
+                keystoreFile,
+                PASSWORD,
+                KeyStoreWriteOptions.defaults().withFsync(true));
+
+        cache.clear();
+        assertEquals(0, cache.load(keystoreFile, "PKCS12", PASSWORD).size(), "Stored content should be on disk");
+        assertArrayEquals(
+                new String[] {"test.p12"}, tempFolder.list(), "No temporary file should be left next to the keystore");
+    }
+
+    @Test
+    void loadDetectsStoreTypeFromContent() throws Exception {
+        for (String type : new String[] {"JKS", "JCEKS", "PKCS12"}) {
+            File keystoreFile = new File(tempFolder, "detect." + type);
+            KeyStore ks = KeyStore.getInstance(type);
+            ks.load(null, PASSWORD);
+            ks.setCertificateEntry("cert", TestCertificates.selfSigned("CN=Test"));
+            try (FileOutputStream fos = new FileOutputStream(keystoreFile)) {
+                ks.store(fos, PASSWORD);
+            }
+
+            assertEquals(
+                    KeyStoreFormat.forType(type),
+                    KeyStoreFormat.detect(ByteBuffer.wrap(Files.readAllBytes(keystoreFile.toPath()))));
+            assertEquals(type, cache.load(keystoreFile, null, PASSWORD).getType(), "Type should be detected");
+
+            String wrongType = "JKS".equals(type) ? "PKCS12" : "JKS";
+            cache.clear();
+            assertEquals(type, cache.load(keystoreFile, wrongType, PASSWORD).getType(), "Detected type should win");
+        }
+    }
+
+    @Test
+    void loadDetectsBcfks() throws Exception {
+        File keystoreFile = new File(tempFolder, "detect.bcfks");
+        KeyStore ks = KeyStore.getInstance("BCFKS", new BouncyCastleProvider());
+        ks.load(null, PASSWORD);
+        ks.setEntry(
+                "secret",
+                new KeyStore.SecretKeyEntry(KeyGenerator.getInstance("AES").generateKey()),
+                new KeyStore.PasswordProtection(PASSWORD));
+        try (FileOutputStream fos = new FileOutputStream(keystoreFile)) {
+            ks.store(fos, PASSWORD);
+        }
+
+        KeyStore loaded = cache.load(keystoreFile, null, PASSWORD);
+        assertEquals("BCFKS", loaded.getType());
+        assertTrue(loaded.containsAlias("secret"), "BCFKS content should be loaded");
+    }
+
+    @Test
+    void invalidateForcesReload() throws Exception {
+        File keystoreFile = createTestKeyStore("test.p12");
+
+        KeyStore first = cache.load(keystoreFile, "PKCS12", PASSWORD);
+        cache.invalidate(keystoreFile);
+
+        assertNotSame(first, cache.load(keystoreFile, "PKCS12", PASSWORD), "Invalidated keystore should be reloaded");
+    }
+
+    @Test
+    void replicatorLoadsIndependentInstances() throws Exception {
+        File keystoreFile = createTestKeyStore("test.p12");
+
+        KeyStore loaded = cache.load(keystoreFile, "PKCS12", PASSWORD);
+        Callable<KeyStore> replicator = cache.replicator(loaded);
+        KeyStore replica = replicator.call();
+
+        assertNotSame(loaded, replica, "Replica should be another instance");
+        assertNotSame(replica, replicator.call(), "Each call should load another instance");
+        assertEquals(loaded.getKey("secret", PASSWORD), replica.getKey("secret", PASSWORD));
+
+        cache.dropIndex(loaded);
+        assertNull(cache.replicator(loaded), "Modified keystore should not be replicated");
+        assertNull(cache.replicator(replica), "Keystore not loaded by the cache should not be replicated");
+    }
+
+    @Test
+    void unmodifiedSessionKeepsKeyStoreCached() throws Exception {
+        File keystoreFile = createTestKeyStore("test.p12");
+
+        KeyStore first = cache.load(keystoreFile, "PKCS12", PASSWORD);
+        try (KeyStoreSession session = cache.openSession(keystoreFile, "PKCS12", PASSWORD, false)) {
+            session.queue((ks, protection) -> false);
+            session.commit();
+        }
+
+        assertSame(first, cache.load(keystoreFile, "PKCS12", PASSWORD), "Unmodified keystore should stay cached");
+    }
+
+    @Test
+    void contentHashIsTheOneOfTheStoredContent() throws Exception {
+        File keystoreFile = createTestKeyStore("test.p12");
+        KeyStore keystore = cache.load(keystoreFile, "PKCS12", PASSWORD);
+        keystore.deleteEntry("secret");
+        cache.store(keystore, keystoreFile, PASSWORD);
+
+        assertArrayEquals(
+                MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(keystoreFile.toPath())),
+                cache.contentHash(keystoreFile));
+    }
+
+    @Test
+    void joinSessionKeepsKeyStoresOfTheSameBuild() throws Exception {
+        File keystoreFile = createTestKeyStore("test.p12");
+
+        cache.joinSession("build-1");
+        KeyStore first = cache.load(keystoreFile, "PKCS12", PASSWORD);
+        cache.joinSession("build-1");
+        assertSame(first, cache.load(keystoreFile, "PKCS12", PASSWORD), "Same build should reuse the keystore");
+
+        try (KeyStoreSession session = cache.openSession(
+                keystoreFile,
+                "PKCS12",
+                PASSWORD,
+                false,
+                KeyStoreWriteOptions.defaults().withWriteBehind(true))) {
+            session.queue((ks, protection) -> {
+                ks.deleteEntry("secret");
+                return true;
+            });
+            session.commit();
+        }
+
+        cache.joinSession("build-2");
+        assertEquals(0, cache.getDeferredCount(), "Deferred changes of another build should be dropped");
+        KeyStore second = cache.load(keystoreFile, "PKCS12", PASSWORD);
+        assertNotSame(first, second, "Another build should load the keystore again");
+        assertTrue(second.containsAlias("secret"), "Changes never flushed should not be visible");
+    }
+
+    @Test
+    void newKeyStoreGetsDefaultPermissions() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        File keystoreFile = new File(tempFolder, "new.p12");
+        Path reference = Files.createFile(new File(tempFolder, "reference").toPath());
+
+        KeyStoreCache.writeAtomically(keystoreFile, new byte[] {1, 2, 3}, false);
+
+        assertEquals(
+                Files.getPosixFilePermissions(reference),
+                Files.getPosixFilePermissions(keystoreFile.toPath()),
+                "A new keystore should be created as any new file, not readable by its owner only");
+    }
+
+    private File createTestKeyStore(String name) throws Exception {
+        File keystoreFile = new File(tempFolder, name);
+
+        KeyStore ks = KeyStore.getInstance("PKCS12");
+        ks.load(null, PASSWORD);
+        ks.setEntry(
+                "secret",
+                new KeyStore.SecretKeyEntry(KeyGenerator.getInstance("AES").generateKey()),
+                new KeyStore.PasswordProtection(PASSWORD));
+
+        try (FileOutputStream fos = new FileOutputStream(keystoreFile)) {
+            ks.store(fos, PASSWORD);
+        }
+
+        return keystoreFile;
+    }
+}
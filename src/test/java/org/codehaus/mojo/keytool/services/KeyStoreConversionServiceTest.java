@@ -0,0 +1,166 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.crypto.KeyGenerator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for KeyStoreConversionService.
+ */
+public class KeyStoreConversionServiceTest {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    private static final char[] DEST_PASSWORD = "newpass".toCharArray();
+
+    @TempDir
+    public File tempFolder;
+
+    @Test
+    void convertsKeystoresInParallel() throws Exception {
+        KeyPair keyPair = TestCertificates.newKeyPair();
+        Certificate certificate = TestCertificates.selfSigned("CN=Test", keyPair);
+
+        KeyStore withKey = KeyStore.getInstance("JKS");
+        withKey.load(null, PASSWORD);
+        withKey.setKeyEntry("server", keyPair.getPrivate(), PASSWORD, new Certificate[] {certificate});
+        withKey.setCertificateEntry("ca", certificate);
+        File first = save(withKey, "first.jks", PASSWORD);
+
+        KeyStore withSecret = KeyStore.getInstance("JCEKS");
+        withSecret.load(null, PASSWORD);
+        withSecret.setKeyEntry("aes", KeyGenerator.getInstance("AES").generateKey(), PASSWORD, null);
+        File second = save(withSecret, "second.jceks", PASSWORD);
+
+        File wrongPassword = save(withKey, "third.jks", "other".toCharArray());
+
+        List<File> sources = Arrays.asList(first, second, wrongPassword);
+        List<File> destinations = Arrays.asList(
+                new File(tempFolder, "out/first.p12"),
+                new File(tempFolder, "out/second.p12"),
+                new File(tempFolder, "out/third.p12"));
+
+        KeyStoreConversionService service = new KeyStoreConversionService();
+        List<KeyStoreConversion> results = convert(service, sources, destinations);
+
+        assertEquals(KeyStoreConversion.Status.CONVERTED, results.get(0).getStatus());
+        assertEquals(2, results.get(0).getEntryCount());
+        assertEquals(KeyStoreConversion.Status.CONVERTED, results.get(1).getStatus());
+        assertEquals(KeyStoreConversion.Status.FAILED, results.get(2).getStatus());
+        assertNotNull(results.get(2).getError());
+
+        KeyStore converted = load(destinations.get(0));
+        assertArrayEquals(
+                keyPair.getPrivate().getEncoded(),
+                converted.getKey("server", DEST_PASSWORD).getEncoded(),
+                "Key should be protected with the destination password");
+        assertTrue(converted.isCertificateEntry("ca"), "Trusted certificate should be converted");
+        assertNotNull(load(destinations.get(1)).getKey("aes", DEST_PASSWORD), "Secret key should be converted");
+
+        results = convert(service, sources, destinations);
+        assertEquals(KeyStoreConversion.Status.SKIPPED, results.get(0).getStatus(), "Existing output is kept");
+    }
+
+    @Test
+    void convertingKeepsDeferredChangesOfTheSource() throws Exception {
+        KeyStore keystore = KeyStore.getInstance("JKS");
+        keystore.load(null, PASSWORD);
+        keystore.setCertificateEntry("ca", TestCertificates.selfSigned("CN=CA"));
+        File source = save(keystore, "source.jks", PASSWORD);
+        File destination = new File(tempFolder, "out/source.p12");
+
+        KeyStoreCache cache = new KeyStoreCache();
+        Certificate deferredCertificate = TestCertificates.selfSigned("CN=Deferred");
+        try (KeyStoreSession session = cache.openSession(
+                source, "JKS", PASSWORD, false, KeyStoreWriteOptions.defaults().withWriteBehind(true))) {
+            session.queue((ks, protection) -> {
+                ks.setCertificateEntry("deferred", deferredCertificate);
+                return true;
+            });
+            session.commit();
+        }
+
+        List<KeyStoreConversion> results = convert(
+                new KeyStoreConversionService(cache),
+                Collections.singletonList(source),
+                Collections.singletonList(destination));
+
+        assertEquals(KeyStoreConversion.Status.CONVERTED, results.get(0).getStatus());
+        assertTrue(load(destination).isCertificateEntry("deferred"), "Deferred changes should be converted");
+        assertTrue(cache.isDeferred(source), "Deferred changes should still wait for the flush");
+
+        assertEquals(1, cache.flush());
+        KeyStore flushed = KeyStore.getInstance("JKS");
+        try (FileInputStream in = new FileInputStream(source)) {
+            flushed.load(in, PASSWORD);
+        }
+        assertTrue(flushed.isCertificateEntry("deferred"), "Deferred changes should be flushed after the conversion");
+    }
+
+    private static List<KeyStoreConversion> convert(
+            KeyStoreConversionService service, List<File> sources, List<File> destinations) throws Exception {
+        return service.convert(
+                sources,
+                destinations,
+                null,
+                PASSWORD,
+                null,
+                "PKCS12",
+                DEST_PASSWORD,
+                null,
+                false,
+                2,
+                KeyStoreWriteOptions.defaults().withProtection(KeyStoreProtection.fastTest()));
+    }
+
+    private File save(KeyStore keystore, String name, char[] password) throws Exception {
+        File file = new File(tempFolder, name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            keystore.store(out, password);
+        }
+        return file;
+    }
+
+    private static KeyStore load(File file) throws Exception {
+        KeyStore keystore = KeyStore.getInstance("PKCS12");
+        try (FileInputStream in = new FileInputStream(file)) {
+            keystore.load(in, DEST_PASSWORD);
+        }
+        return keystore;
+    }
+}
@@ -0,0 +1,120 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.crypto.spec.SecretKeySpec;
+
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for KeyStoreDiff.
+ */
+public class KeyStoreDiffTest {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    @Test
+    void sameKeyStoresHaveNoChanges() throws Exception {
+        Certificate cert = TestCertificates.selfSigned("CN=A");
+        KeyStore source = newKeyStore();
+        source.setCertificateEntry("a", cert);
+        KeyStore dest = newKeyStore();
+        dest.setCertificateEntry("a", cert);
+
+        KeyStoreDiff diff = KeyStoreDiff.compute(source, PASSWORD, dest, PASSWORD);
+
+        assertTrue(diff.isEmpty(), "Same keystores should not differ");
+        assertEquals(1, diff.getUnchangedCount());
+    }
+
+    @Test
+    void reportsAddedRemovedRenamedAndChangedEntries() throws Exception {
+        Certificate kept = TestCertificates.selfSigned("CN=Kept");
+        Certificate moved = TestCertificates.selfSigned("CN=Moved");
+        Certificate oldCert = TestCertificates.selfSigned("CN=Old");
+        Certificate newCert = TestCertificates.selfSigned("CN=New");
+        Certificate added = TestCertificates.selfSigned("CN=Added");
+        Certificate removed = TestCertificates.selfSigned("CN=Removed");
+
+        KeyStore source = newKeyStore();
+        source.setCertificateEntry("kept", kept);
+        source.setCertificateEntry("moved-new", moved);
+        source.setCertificateEntry("rotated", newCert);
+        source.setCertificateEntry("added", added);
+        source.setKeyEntry("secret", new SecretKeySpec(new byte[16], "AES"), PASSWORD, null);
+
+        KeyStore dest = newKeyStore();
+        dest.setCertificateEntry("kept", kept);
+        dest.setCertificateEntry("moved-old", moved);
+        dest.setCertificateEntry("rotated", oldCert);
+        dest.setCertificateEntry("removed", removed);
+        dest.setKeyEntry("secret", new SecretKeySpec(new byte[16], "AES"), PASSWORD, null);
+
+        KeyStoreDiff diff = KeyStoreDiff.compute(source, PASSWORD, dest, PASSWORD);
+
+        assertEquals(2, diff.getUnchangedCount(), diff.toString());
+        assertEquals(1, diff.getChanges(KeyStoreDiff.ChangeType.ADDED).size());
+        assertEquals(
+                "added", diff.getChanges(KeyStoreDiff.ChangeType.ADDED).get(0).getAlias());
+        assertEquals(1, diff.getChanges(KeyStoreDiff.ChangeType.REMOVED).size());
+        assertEquals(
+                "removed",
+                diff.getChanges(KeyStoreDiff.ChangeType.REMOVED).get(0).getAlias());
+        assertEquals(1, diff.getChanges(KeyStoreDiff.ChangeType.CHANGED).size());
+        assertEquals(
+                "rotated",
+                diff.getChanges(KeyStoreDiff.ChangeType.CHANGED).get(0).getAlias());
+
+        KeyStoreDiff.Change renamed =
+                diff.getChanges(KeyStoreDiff.ChangeType.RENAMED).get(0);
+        assertEquals("moved-new", renamed.getAlias());
+        assertEquals("moved-old", renamed.getPreviousAlias());
+    }
+
+    @Test
+    void keyEntryDoesNotMatchTrustedCertificate() throws Exception {
+        KeyPair keyPair = TestCertificates.newKeyPair();
+        Certificate cert = TestCertificates.selfSigned("CN=Key", keyPair);
+
+        KeyStore source = newKeyStore();
+        source.setKeyEntry("entry", keyPair.getPrivate(), PASSWORD, new Certificate[] {cert});
+        KeyStore dest = newKeyStore();
+        dest.setCertificateEntry("other", cert);
+
+        KeyStoreDiff diff = KeyStoreDiff.compute(source, PASSWORD, dest, PASSWORD);
+
+        assertEquals(1, diff.getChanges(KeyStoreDiff.ChangeType.ADDED).size());
+        assertEquals(1, diff.getChanges(KeyStoreDiff.ChangeType.REMOVED).size());
+        assertTrue(diff.getChanges(KeyStoreDiff.ChangeType.RENAMED).isEmpty(), "Entry kinds should not match");
+    }
+
+    private static KeyStore newKeyStore() throws Exception {
+        KeyStore keystore = KeyStore.getInstance("PKCS12");
+        keystore.load(null, PASSWORD);
+        return keystore;
+    }
+}
@@ -0,0 +1,128 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.security.auth.x500.X500Principal;
+
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for KeyStoreIndex.
+ */
+public class KeyStoreIndexTest {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    @Test
+    void findsEntriesByCertificateAttributes() throws Exception {
+        KeyPair caKeyPair = TestCertificates.newKeyPair();
+        X509Certificate ca = createCertificate("CN=CA", caKeyPair, "CN=CA", caKeyPair);
+        KeyPair keyPair = TestCertificates.newKeyPair();
+        X509Certificate leaf = createCertificate("CN=Leaf", keyPair, "CN=CA", caKeyPair);
+
+        KeyStore keystore = KeyStore.getInstance("PKCS12");
+        keystore.load(null, PASSWORD);
+        keystore.setCertificateEntry("ca", ca);
+        keystore.setKeyEntry("leaf", keyPair.getPrivate(), PASSWORD, new Certificate[] {leaf, ca});
+
+        KeyStoreIndex index = KeyStoreIndex.build(keystore);
+
+        assertEquals(Collections.singleton("ca"), index.findByFingerprint(KeyStoreIndex.fingerprint(ca)));
+        assertEquals(Collections.singleton("leaf"), index.findBySubject(new X500Principal("CN=Leaf")));
+        assertEquals(2, index.findByIssuer(new X500Principal("CN=CA")).size());
+        assertEquals(Collections.singleton("leaf"), index.findByPublicKey(keyPair.getPublic()));
+        assertEquals(Collections.singleton("ca"), index.findIssuers(leaf));
+        assertEquals(
+                Collections.singleton("ca"),
+                index.findBySubjectKeyIdentifier(new JcaX509ExtensionUtils()
+                        .createSubjectKeyIdentifier(caKeyPair.getPublic())
+                        .getKeyIdentifier()));
+        assertEquals(
+                2,
+                index.findByAuthorityKeyIdentifier(new JcaX509ExtensionUtils()
+                                .createSubjectKeyIdentifier(caKeyPair.getPublic())
+                                .getKeyIdentifier())
+                        .size());
+    }
+
+    @Test
+    void updateFollowsChangedEntries() throws Exception {
+        KeyPair keyPair = TestCertificates.newKeyPair();
+        X509Certificate first = createCertificate("CN=First", keyPair, "CN=First", keyPair);
+        X509Certificate second = createCertificate("CN=Second", keyPair, "CN=Second", keyPair);
+
+        KeyStore keystore = KeyStore.getInstance("PKCS12");
+        keystore.load(null, PASSWORD);
+        keystore.setCertificateEntry("cert", first);
+        KeyStoreIndex index = KeyStoreIndex.build(keystore);
+
+        keystore.setCertificateEntry("cert", second);
+        index.update(keystore, "cert");
+        assertTrue(index.findBySubject(new X500Principal("CN=First")).isEmpty(), "Replaced entry should be unindexed");
+        assertEquals(Collections.singleton("cert"), index.findBySubject(new X500Principal("CN=Second")));
+
+        keystore.deleteEntry("cert");
+        index.update(keystore, "cert");
+        assertTrue(index.findByPublicKey(keyPair.getPublic()).isEmpty(), "Deleted entry should be unindexed");
+    }
+
+    @Test
+    void cacheBuildsIndexOncePerKeyStore() throws Exception {
+        KeyStoreCache cache = new KeyStoreCache();
+        KeyStore keystore = KeyStore.getInstance("PKCS12");
+        keystore.load(null, PASSWORD);
+
+        assertSame(cache.index(keystore), cache.index(keystore), "Index should be reused");
+    }
+
+    private static X509Certificate createCertificate(
+            String subject, KeyPair subjectKeyPair, String issuer, KeyPair issuerKeyPair) throws Exception {
+        JcaX509ExtensionUtils extensions = new JcaX509ExtensionUtils();
+        return TestCertificates.issued(
+                subject,
+                subjectKeyPair.getPublic(),
+                issuer,
+                issuerKeyPair.getPrivate(),
+                new Extension(
+                        Extension.subjectKeyIdentifier,
+                        false,
+                        extensions
+                                .createSubjectKeyIdentifier(subjectKeyPair.getPublic())
+                                .getEncoded()),
+                new Extension(
+                        Extension.authorityKeyIdentifier,
+                        false,
+                        extensions
+                                .createAuthorityKeyIdentifier(issuerKeyPair.getPublic())
+                                .getEncoded()));
+    }
+}
@@ -0,0 +1,122 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.crypto.KeyGenerator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for KeyStoreLocks.
+ */
+public class KeyStoreLocksTest {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    @TempDir
+    public File tempFolder;
+
+    @Test
+    void concurrentSessionsDoNotLoseUpdates() throws Exception {
+        File keystoreFile = new File(tempFolder, "shared.p12");
+        KeyStoreCache cache = new KeyStoreCache();
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+
+        int writers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                String alias = "key" + i;
+                futures.add(executor.submit(() -> {
+                    try (KeyStoreSession session = cache.openSession(keystoreFile, "PKCS12", PASSWORD, true)) {
+                        session.queue((keystore, protection) -> {
+                            keystore.setEntry(
+                                    alias,
+                                    new KeyStore.SecretKeyEntry(keyGenerator.generateKey()),
+                                    new KeyStore.PasswordProtection(PASSWORD));
+                            return true;
+                        });
+                        session.commit();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        KeyStore keystore = KeyStore.getInstance("PKCS12");
+        try (FileInputStream in = new FileInputStream(keystoreFile)) {
+            keystore.load(in, PASSWORD);
+        }
+        assertEquals(writers, keystore.size(), "Every session should have been applied");
+        assertTrue(KeyStoreLocks.getLockFile(keystoreFile).exists(), "Lock file should have been created");
+        assertFalse(new File(tempFolder, "shared.p12.lock").exists(), "Lock file should not sit next to the keystore");
+    }
+
+    @Test
+    void lockIsReentrantAndExclusive() throws Exception {
+        File keystoreFile = new File(tempFolder, "reentrant.p12");
+        AtomicBoolean acquiredByOther = new AtomicBoolean();
+
+        try (KeyStoreLocks.Handle outer = KeyStoreLocks.lock(keystoreFile)) {
+            try (KeyStoreLocks.Handle inner = KeyStoreLocks.lock(keystoreFile)) {
+                Thread other = new Thread(() -> {
+                    try (KeyStoreLocks.Handle handle = KeyStoreLocks.lock(keystoreFile)) {
+                        acquiredByOther.set(true);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                other.start();
+                other.join(200);
+                assertFalse(acquiredByOther.get(), "Lock should not be granted to another thread");
+
+                inner.close();
+                other.join(200);
+                assertFalse(acquiredByOther.get(), "Lock should be held until the outermost handle is closed");
+
+                outer.close();
+                other.join(10000);
+                assertTrue(acquiredByOther.get(), "Lock should be granted once released");
+            }
+        }
+    }
+}
@@ -20,22 +20,17 @@ package org.codehaus.mojo.keytool.services;
  */
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.math.BigInteger;
+import java.nio.file.Files;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.KeyStore;
-import java.security.Security;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
-import java.util.Date;
-
-import org.bouncycastle.cert.X509CertificateHolder;
-import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
-import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.operator.ContentSigner;
-import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import java.util.Arrays;
+import java.util.Collections;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -82,7 +77,7 @@ public class KeyStoreManagementServiceTest {
 
         // Verify alias was changed
         KeyStore ks = KeyStore.getInstance("JKS");
-        try (java.io.FileInputStream fis = new java.io.FileInputStream(keystoreFile)) {
+        try (FileInputStream fis = new FileInputStream(keystoreFile)) {
             ks.load(fis, password);
         }
 
@@ -103,13 +98,27 @@ public class KeyStoreManagementServiceTest {
 
         // Verify we can access the key with new password
         KeyStore ks = KeyStore.getInstance("JKS");
-        try (java.io.FileInputStream fis = new java.io.FileInputStream(keystoreFile)) {
+        try (FileInputStream fis = new FileInputStream(keystoreFile)) {
             ks.load(fis, storePassword);
         }
 
         assertNotNull(ks.getKey(alias, newKeyPassword), "Should be able to get key with new password");
     }
 
+    @Test
+    void changeKeyPasswordToSamePasswordLeavesFileUntouched() throws Exception {
+        File keystoreFile = createTestKeyStore();
+        char[] storePassword = "changeit".toCharArray();
+        byte[] before = java.nio.file.Files.readAllBytes(keystoreFile.toPath());
+        keystoreFile.setLastModified(0);
+
+        service.changeKeyPassword(
+                keystoreFile, "JKS", storePassword, "testkey", "changeit".toCharArray(), "changeit".toCharArray());
+
+        assertEquals(0, keystoreFile.lastModified(), "Keystore should not have been rewritten");
+        assertArrayEquals(before, java.nio.file.Files.readAllBytes(keystoreFile.toPath()));
+    }
+
     @Test
     void changeStorePassword() throws Exception {
         File keystoreFile = createTestKeyStore();
@@ -120,7 +129,7 @@ public class KeyStoreManagementServiceTest {
 
         // Verify we can load keystore with new password
         KeyStore ks = KeyStore.getInstance("JKS");
-        try (java.io.FileInputStream fis = new java.io.FileInputStream(keystoreFile)) {
+        try (FileInputStream fis = new FileInputStream(keystoreFile)) {
             ks.load(fis, newPassword);
         }
 
@@ -141,13 +150,209 @@ public class KeyStoreManagementServiceTest {
         assertTrue(destKeystoreFile.exists(), "Destination keystore should exist");
 
         KeyStore ks = KeyStore.getInstance("JKS");
-        try (java.io.FileInputStream fis = new java.io.FileInputStream(destKeystoreFile)) {
+        try (FileInputStream fis = new FileInputStream(destKeystoreFile)) {
             ks.load(fis, password);
         }
 
         assertTrue(ks.containsAlias("testkey"), "Should contain imported alias");
     }
 
+    @Test
+    void importKeystoreWithManyKeysKeepsSourceOrder() throws Exception {
+        File sourceKeystoreFile = new File(tempFolder, "source.p12");
+        File destKeystoreFile = new File(tempFolder, "dest.p12");
+        char[] password = "changeit".toCharArray();
+
+        KeyStore source = KeyStore.getInstance("PKCS12");
+        source.load(null, password);
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(2048);
+        KeyPair keyPair = keyGen.generateKeyPair();
+        Certificate[] chain = new Certificate[] {TestCertificates.selfSigned("CN=Test,O=Test,C=US", keyPair)};
+        for (int i = 0; i < 6; i++) {
+            source.setKeyEntry("key" + i, keyPair.getPrivate(), password, chain);
+        }
+        source.setCertificateEntry("trusted", chain[0]);
+        try (FileOutputStream fos = new FileOutputStream(sourceKeystoreFile)) {
+            source.store(fos, password);
+        }
+
+        service.importKeystore(
+                sourceKeystoreFile,
+                "PKCS12",
+                password,
+                destKeystoreFile,
+                "PKCS12",
+                password,
+                null,
+                null,
+                password,
+                null);
+
+        KeyStore sourceKs = KeyStore.getInstance("PKCS12");
+        try (FileInputStream fis = new FileInputStream(sourceKeystoreFile)) {
+            sourceKs.load(fis, password);
+        }
+        KeyStore destKs = KeyStore.getInstance("PKCS12");
+        try (FileInputStream fis = new FileInputStream(destKeystoreFile)) {
+            destKs.load(fis, password);
+        }
+
+        assertEquals(
+                Collections.list(sourceKs.aliases()),
+                Collections.list(destKs.aliases()),
+                "Entries should be imported in source order");
+        for (int i = 0; i < 6; i++) {
+            assertEquals(keyPair.getPrivate(), destKs.getKey("key" + i, password), "Key should be imported");
+        }
+    }
+
+    @Test
+    void importKeystoreWithDedupSkipsDuplicateCertificates() throws Exception {
+        File sourceKeystoreFile = new File(tempFolder, "vendor.p12");
+        File destKeystoreFile = new File(tempFolder, "truststore.p12");
+        char[] password = "changeit".toCharArray();
+
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(2048);
+        X509Certificate ca = TestCertificates.selfSigned("CN=Test,O=Test,C=US", keyGen.generateKeyPair());
+        X509Certificate other = TestCertificates.selfSigned("CN=Test,O=Test,C=US", keyGen.generateKeyPair());
+
+        KeyStore dest = KeyStore.getInstance("PKCS12");
+        dest.load(null, password);
+        dest.setCertificateEntry("ca", ca);
+        try (FileOutputStream fos = new FileOutputStream(destKeystoreFile)) {
+            dest.store(fos, password);
+        }
+        KeyStore source = KeyStore.getInstance("PKCS12");
+        source.load(null, password);
+        source.setCertificateEntry("vendor-ca", ca);
+        source.setCertificateEntry("vendor-other", other);
+        source.setCertificateEntry("vendor-other-copy", other);
+        try (FileOutputStream fos = new FileOutputStream(sourceKeystoreFile)) {
+            source.store(fos, password);
+        }
+
+        service.importKeystore(
+                sourceKeystoreFile,
+                "PKCS12",
+                password,
+                destKeystoreFile,
+                "PKCS12",
+                password,
+                null,
+                null,
+                password,
+                null,
+                true,
+                KeyStoreWriteOptions.defaults());
+
+        KeyStore destKs = KeyStore.getInstance("PKCS12");
+        try (FileInputStream fis = new FileInputStream(destKeystoreFile)) {
+            destKs.load(fis, password);
+        }
+        assertEquals(
+                Arrays.asList("ca", "vendor-other"),
+                Collections.list(destKs.aliases()),
+                "Duplicate certificates should be collapsed");
+    }
+
+    @Test
+    void importKeystoreOfDuplicatesOnlyLeavesKeystoreUnchanged() throws Exception {
+        File sourceKeystoreFile = new File(tempFolder, "vendor.p12");
+        File destKeystoreFile = new File(tempFolder, "truststore.p12");
+        char[] password = "changeit".toCharArray();
+
+        X509Certificate ca = TestCertificates.selfSigned("CN=Test,O=Test,C=US");
+
+        KeyStore dest = KeyStore.getInstance("PKCS12");
+        dest.load(null, password);
+        dest.setCertificateEntry("ca", ca);
+        try (FileOutputStream fos = new FileOutputStream(destKeystoreFile)) {
+            dest.store(fos, password);
+        }
+        KeyStore source = KeyStore.getInstance("PKCS12");
+        source.load(null, password);
+        source.setCertificateEntry("vendor-ca", ca);
+        try (FileOutputStream fos = new FileOutputStream(sourceKeystoreFile)) {
+            source.store(fos, password);
+        }
+        byte[] before = Files.readAllBytes(destKeystoreFile.toPath());
+
+        service.importKeystore(
+                sourceKeystoreFile,
+                "PKCS12",
+                password,
+                destKeystoreFile,
+                "PKCS12",
+                password,
+                null,
+                null,
+                password,
+                null,
+                true,
+                KeyStoreWriteOptions.defaults());
+
+        assertArrayEquals(
+                before, Files.readAllBytes(destKeystoreFile.toPath()), "Keystore should not have been stored");
+    }
+
+    @Test
+    void syncKeystoreAppliesOnlyDifferences() throws Exception {
+        File sourceKeystoreFile = new File(tempFolder, "source.p12");
+        File destKeystoreFile = new File(tempFolder, "dest.p12");
+        char[] password = "changeit".toCharArray();
+
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(2048);
+        X509Certificate kept = TestCertificates.selfSigned("CN=Test,O=Test,C=US", keyGen.generateKeyPair());
+        X509Certificate added = TestCertificates.selfSigned("CN=Test,O=Test,C=US", keyGen.generateKeyPair());
+        X509Certificate removed = TestCertificates.selfSigned("CN=Test,O=Test,C=US", keyGen.generateKeyPair());
+
+        KeyStore source = KeyStore.getInstance("PKCS12");
+        source.load(null, password);
+        source.setCertificateEntry("kept", kept);
+        source.setCertificateEntry("added", added);
+        try (FileOutputStream fos = new FileOutputStream(sourceKeystoreFile)) {
+            source.store(fos, password);
+        }
+        KeyStore dest = KeyStore.getInstance("PKCS12");
+        dest.load(null, password);
+        dest.setCertificateEntry("kept", kept);
+        dest.setCertificateEntry("removed", removed);
+        try (FileOutputStream fos = new FileOutputStream(destKeystoreFile)) {
+            dest.store(fos, password);
+        }
+
+        KeyStoreDiff diff = service.syncKeystore(
+                sourceKeystoreFile, "PKCS12", password, destKeystoreFile, "PKCS12", password, password, null);
+        assertEquals("1 added, 1 removed, 0 renamed, 0 changed, 1 unchanged", diff.toString());
+
+        KeyStore destKs = KeyStore.getInstance("PKCS12");
+        try (FileInputStream fis = new FileInputStream(destKeystoreFile)) {
+            destKs.load(fis, password);
+        }
+        assertTrue(destKs.containsAlias("added"), "Added entry should be written");
+        assertFalse(destKs.containsAlias("removed"), "Removed entry should be deleted");
+
+        long lastModified = destKeystoreFile.lastModified();
+        byte[] content = java.nio.file.Files.readAllBytes(destKeystoreFile.toPath());
+        assertTrue(
+                service.syncKeystore(
+                                sourceKeystoreFile,
+                                "PKCS12",
+                                password,
+                                destKeystoreFile,
+                                "PKCS12",
+                                password,
+                                password,
+                                null)
+                        .isEmpty(),
+                "Synchronized keystores should not differ");
+        assertEquals(lastModified, destKeystoreFile.lastModified(), "Keystore in sync should not be stored");
+        assertArrayEquals(content, java.nio.file.Files.readAllBytes(destKeystoreFile.toPath()));
+    }
+
     @Test
     void listAliasesWithWrongPassword() throws Exception {
         File keystoreFile = createTestKeyStore();
@@ -171,7 +376,7 @@ public class KeyStoreManagementServiceTest {
         KeyPair keyPair = keyGen.generateKeyPair();
 
         // Create a simple self-signed certificate
-        X509Certificate cert = createSelfSignedCertificate(keyPair);
+        X509Certificate cert = TestCertificates.selfSigned("CN=Test,O=Test,C=US", keyPair);
 
         // Store the key entry
         ks.setKeyEntry("testkey", keyPair.getPrivate(), password, new Certificate[] {cert});
@@ -183,27 +388,4 @@ public class KeyStoreManagementServiceTest {
 
         return keystoreFile;
     }
-
-    private X509Certificate createSelfSignedCertificate(KeyPair keyPair) throws Exception {
-        // Use Bouncy Castle to create a simple self-signed cert
-        BouncyCastleProvider bcProvider = new BouncyCastleProvider();
-        Security.addProvider(bcProvider);
-
-        long now = System.currentTimeMillis();
-        Date startDate = new Date(now);
-        Date endDate = new Date(now + 365L * 24 * 60 * 60 * 1000);
-
-        org.bouncycastle.asn1.x500.X500Name dnName = new org.bouncycastle.asn1.x500.X500Name("CN=Test,O=Test,C=US");
-        BigInteger certSerialNumber = BigInteger.valueOf(now);
-
-        JcaX509v3CertificateBuilder certBuilder = new JcaX509v3CertificateBuilder(
-                dnName, certSerialNumber, startDate, endDate, dnName, keyPair.getPublic());
-
-        ContentSigner contentSigner =
-                new JcaContentSignerBuilder("SHA256WithRSA").setProvider("BC").build(keyPair.getPrivate());
-
-        X509CertificateHolder certHolder = certBuilder.build(contentSigner);
-
-        return new JcaX509CertificateConverter().setProvider("BC").getCertificate(certHolder);
-    }
 }
@@ -0,0 +1,148 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.security.KeyStore;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.AuthenticatedSafe;
+import org.bouncycastle.asn1.pkcs.ContentInfo;
+import org.bouncycastle.asn1.pkcs.EncryptedData;
+import org.bouncycastle.asn1.pkcs.PBES2Parameters;
+import org.bouncycastle.asn1.pkcs.PBKDF2Params;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.Pfx;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for KeyStoreProtection.
+ */
+public class KeyStoreProtectionTest {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    @TempDir
+    public File tempFolder;
+
+    @Test
+    void forNameDefaultsToProduction() {
+        assertSame(KeyStoreProtection.production(), KeyStoreProtection.forName(null));
+        assertSame(KeyStoreProtection.production(), KeyStoreProtection.forName(""));
+        assertSame(KeyStoreProtection.production(), KeyStoreProtection.forName("production"));
+        assertSame(KeyStoreProtection.fastTest(), KeyStoreProtection.forName("Fast-Test"));
+    }
+
+    @Test
+    void forNameRefusesUnknownProfile() {
+        assertThrows(IllegalArgumentException.class, () -> KeyStoreProtection.forName("fast"));
+    }
+
+    @Test
+    void fastTestProfileWritesLoadablePkcs12() throws Exception {
+        File keystoreFile = new File(tempFolder, "fast.p12");
+
+        generateKeyPair(keystoreFile, "PKCS12", KeyStoreProtection.fastTest());
+
+        KeyStore ks = KeyStore.getInstance("PKCS12");
+        try (FileInputStream fis = new FileInputStream(keystoreFile)) {
+            ks.load(fis, PASSWORD);
+        }
+        assertNotNull(ks.getKey("testkey", PASSWORD), "Key should be recoverable");
+
+        Pfx pfx = Pfx.getInstance(Files.readAllBytes(keystoreFile.toPath()));
+        assertEquals(1, pfx.getMacData().getIterationCount().intValue(), "MAC should use the fast-test iterations");
+        assertEquals(
+                OIWObjectIdentifiers.idSHA1,
+                pfx.getMacData().getMac().getAlgorithmId().getAlgorithm(),
+                "MAC should be readable by every Java 8 update");
+
+        int encrypted = 0;
+        byte[] content =
+                ASN1OctetString.getInstance(pfx.getAuthSafe().getContent()).getOctets();
+        for (ContentInfo info : AuthenticatedSafe.getInstance(content).getContentInfo()) {
+            if (PKCSObjectIdentifiers.encryptedData.equals(info.getContentType())) {
+                AlgorithmIdentifier algorithm =
+                        EncryptedData.getInstance(info.getContent()).getEncryptionAlgorithm();
+                PBES2Parameters pbes2 = PBES2Parameters.getInstance(algorithm.getParameters());
+                assertEquals(
+                        1,
+                        PBKDF2Params.getInstance(pbes2.getKeyDerivationFunc().getParameters())
+                                .getIterationCount()
+                                .intValue(),
+                        "Certificates should use the fast-test iterations");
+                encrypted++;
+            }
+        }
+        assertEquals(1, encrypted, "Certificates should still be encrypted");
+    }
+
+    @Test
+    void productionProfileKeepsJdkDefaults() throws Exception {
+        File keystoreFile = new File(tempFolder, "production.p12");
+
+        generateKeyPair(keystoreFile, "PKCS12", KeyStoreProtection.production());
+
+        Pfx pfx = Pfx.getInstance(Files.readAllBytes(keystoreFile.toPath()));
+        assertTrue(pfx.getMacData().getIterationCount().intValue() > 1, "MAC should use the JDK iterations");
+    }
+
+    @Test
+    void fastTestProfileIgnoredForJks() throws Exception {
+        File keystoreFile = new File(tempFolder, "fast.jks");
+
+        generateKeyPair(keystoreFile, "JKS", KeyStoreProtection.fastTest());
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        try (FileInputStream fis = new FileInputStream(keystoreFile)) {
+            ks.load(fis, PASSWORD);
+        }
+        assertNotNull(ks.getKey("testkey", PASSWORD), "Key should be recoverable");
+    }
+
+    private static void generateKeyPair(File keystoreFile, String type, KeyStoreProtection protection)
+            throws Exception {
+        new CertificateGenerationService()
+                .generateKeyPair(
+                        keystoreFile,
+                        type,
+                        PASSWORD,
+                        "testkey",
+                        "EC",
+                        256,
+                        null,
+                        "CN=Test,O=Test,C=US",
+                        90,
+                        PASSWORD,
+                        null,
+                        KeyStoreWriteOptions.defaults().withProtection(protection));
+    }
+}
@@ -0,0 +1,221 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.crypto.KeyGenerator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for KeyStoreSession.
+ */
+public class KeyStoreSessionTest {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    @TempDir
+    public File tempFolder;
+
+    private KeyStoreCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new KeyStoreCache();
+    }
+
+    @Test
+    void commitAppliesAllMutations() throws Exception {
+        File keystoreFile = new File(tempFolder, "session.p12");
+
+        try (KeyStoreSession session = cache.openSession(keystoreFile, "PKCS12", PASSWORD, true)) {
+            session.queue(addSecretKey("key1"));
+            session.queue(addSecretKey("key2"));
+            session.queue((ks, protection) -> {
+                ks.deleteEntry("key1");
+                return true;
+            });
+            assertEquals(3, session.getPendingCount());
+            session.commit();
+        }
+
+        KeyStore ks = load(keystoreFile);
+        assertFalse(ks.containsAlias("key1"), "Deleted entry should not exist");
+        assertTrue(ks.containsAlias("key2"), "Added entry should exist");
+    }
+
+    @Test
+    void writeBehindCommitsAreWrittenOnceOnFlush() throws Exception {
+        File keystoreFile = new File(tempFolder, "deferred.p12");
+        KeyStoreWriteOptions writeBehind = KeyStoreWriteOptions.defaults().withWriteBehind(true);
+
+        for (String alias : new String[] {"key1", "key2", "key3"}) {
+            try (KeyStoreSession session = cache.openSession(keystoreFile, "PKCS12", PASSWORD, true, writeBehind)) {
+                session.queue(addSecretKey(alias));
+                session.commit();
+            }
+        }
+
+        assertFalse(keystoreFile.exists(), "Deferred keystore should not be written before flush");
+        assertTrue(cache.exists(keystoreFile), "Deferred keystore should exist for the cache");
+        assertEquals(3, cache.load(keystoreFile, "PKCS12", PASSWORD).size(), "Loads should see deferred changes");
+        assertThrows(Exception.class, () -> cache.load(keystoreFile, "PKCS12", "wrongpass".toCharArray()));
+
+        assertEquals(1, cache.flush(), "Keystore should be written once");
+        assertEquals(0, cache.getDeferredCount());
+        assertEquals(3, load(keystoreFile).size(), "Flushed keystore should hold all deferred changes");
+        assertEquals(0, cache.flush(), "Nothing should be left to flush");
+    }
+
+    @Test
+    void failedWriteBehindCommitKeepsEarlierDeferredChanges() throws Exception {
+        File keystoreFile = new File(tempFolder, "deferred.p12");
+        KeyStoreWriteOptions writeBehind = KeyStoreWriteOptions.defaults().withWriteBehind(true);
+        try (KeyStoreSession session = cache.openSession(keystoreFile, "PKCS12", PASSWORD, true, writeBehind)) {
+            session.queue(addSecretKey("key1"));
+            session.commit();
+        }
+        KeyStore read = cache.load(keystoreFile, "PKCS12", PASSWORD);
+
+        try (KeyStoreSession session = cache.openSession(keystoreFile, "PKCS12", PASSWORD, true, writeBehind)) {
+            session.queue(addSecretKey("key2"));
+            session.queue((ks, protection) -> {
+                throw new KeyStoreException("refused");
+            });
+            assertThrows(KeyStoreException.class, session::commit);
+        }
+
+        assertEquals(1, read.size(), "Readers should not see the changes of a session");
+        assertEquals(1, cache.getDeferredCount(), "Earlier deferred changes should be kept");
+        KeyStore deferred = cache.load(keystoreFile, "PKCS12", PASSWORD);
+        assertTrue(deferred.containsAlias("key1"), "Earlier deferred changes should be kept");
+        assertFalse(deferred.containsAlias("key2"), "Changes of the failed session should be discarded");
+
+        try (KeyStoreSession session = cache.openSession(keystoreFile, "PKCS12", PASSWORD, true, writeBehind)) {
+            session.queue(addSecretKey("key3"));
+            session.commit();
+        }
+        assertEquals(1, read.size(), "Readers should not see the changes of a session");
+        assertEquals(2, cache.load(keystoreFile, "PKCS12", PASSWORD).size(), "Commit should replace the deferred one");
+    }
+
+    @Test
+    void flushRefusesKeyStoreChangedSinceDeferred() throws Exception {
+        File keystoreFile = new File(tempFolder, "deferred.p12");
+        try (KeyStoreSession session = cache.openSession(keystoreFile, "PKCS12", PASSWORD, true)) {
+            session.queue(addSecretKey("key1"));
+            session.commit();
+        }
+        try (KeyStoreSession session = cache.openSession(
+                keystoreFile,
+                "PKCS12",
+                PASSWORD,
+                true,
+                KeyStoreWriteOptions.defaults().withWriteBehind(true))) {
+            session.queue(addSecretKey("key2"));
+            session.commit();
+        }
+
+        KeyStore other = KeyStore.getInstance("PKCS12");
+        other.load(null, PASSWORD);
+        new KeyStoreCache().store(other, keystoreFile, PASSWORD);
+
+        assertThrows(IOException.class, () -> cache.flush());
+        assertEquals(0, cache.getDeferredCount(), "Conflicting deferred changes should be discarded");
+        assertEquals(0, load(keystoreFile).size(), "Changed file should be left as is");
+    }
+
+    @Test
+    void failedCommitLeavesFileUntouched() throws Exception {
+        File keystoreFile = new File(tempFolder, "session.p12");
+        try (KeyStoreSession session = cache.openSession(keystoreFile, "PKCS12", PASSWORD, true)) {
+            session.queue(addSecretKey("key1"));
+            session.commit();
+        }
+        byte[] before = Files.readAllBytes(keystoreFile.toPath());
+
+        try (KeyStoreSession session = cache.openSession(keystoreFile, "PKCS12", PASSWORD, true)) {
+            session.queue(addSecretKey("key2"));
+            session.queue((ks, protection) -> {
+                throw new KeyStoreException("boom");
+            });
+            assertThrows(KeyStoreException.class, session::commit);
+        }
+
+        assertArrayEquals(before, Files.readAllBytes(keystoreFile.toPath()), "Keystore file should not change");
+        assertFalse(
+                cache.load(keystoreFile, "PKCS12", PASSWORD).containsAlias("key2"),
+                "Rolled back entry should not be visible through the cache");
+    }
+
+    @Test
+    void unchangedKeyStoreIsNotStored() throws Exception {
+        File keystoreFile = new File(tempFolder, "missing.p12");
+
+        try (KeyStoreSession session = cache.openSession(keystoreFile, "PKCS12", PASSWORD, true)) {
+            session.queue((ks, protection) -> false);
+            session.commit();
+        }
+
+        assertFalse(keystoreFile.exists(), "Keystore should not be written without modification");
+    }
+
+    @Test
+    void missingKeyStoreFailsWhenNotCreated() {
+        File keystoreFile = new File(tempFolder, "missing.p12");
+
+        try (KeyStoreSession session = cache.openSession(keystoreFile, "PKCS12", PASSWORD, false)) {
+            session.queue(addSecretKey("key1"));
+            assertThrows(Exception.class, session::commit);
+        }
+    }
+
+    private static KeyStoreMutation addSecretKey(String alias) {
+        return (ks, protection) -> {
+            ks.setEntry(
+                    alias,
+                    new KeyStore.SecretKeyEntry(KeyGenerator.getInstance("AES").generateKey()),
+                    new KeyStore.PasswordProtection(PASSWORD));
+            return true;
+        };
+    }
+
+    private static KeyStore load(File keystoreFile) throws Exception {
+        KeyStore ks = KeyStore.getInstance("PKCS12");
+        try (FileInputStream fis = new FileInputStream(keystoreFile)) {
+            ks.load(fis, PASSWORD);
+        }
+        return ks;
+    }
+}
@@ -0,0 +1,162 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for KeyStoreShards.
+ */
+public class KeyStoreShardsTest {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    @TempDir
+    public File tempFolder;
+
+    @Test
+    void shardFilesAreNamedAfterKeyStore() {
+        KeyStoreShards shards = new KeyStoreShards(new File(tempFolder, "truststore.p12"), 4);
+
+        assertEquals(new File(tempFolder, "truststore-3.p12"), shards.getShardFile(3));
+        assertEquals(new File(tempFolder, "truststore.shards"), shards.getManifestFile());
+        assertThrows(IllegalArgumentException.class, () -> new KeyStoreShards(new File("a.p12"), 0));
+    }
+
+    @Test
+    void importWritesOnlyChangedShards() throws Exception {
+        File sourceFile = new File(tempFolder, "source.p12");
+        File destFile = new File(tempFolder, "truststore.p12");
+        KeyStore source = KeyStore.getInstance("PKCS12");
+        source.load(null, PASSWORD);
+        for (int i = 0; i < 12; i++) {
+            source.setCertificateEntry("cert" + i, TestCertificates.selfSigned("CN=Cert " + i));
+        }
+        store(source, sourceFile);
+
+        KeyStoreManagementService service = new KeyStoreManagementService();
+        importSharded(service, sourceFile, destFile);
+
+        KeyStoreShards shards = new KeyStoreShards(destFile, 3);
+        int total = 0;
+        for (int shard = 0; shard < 3; shard++) {
+            KeyStore shardKs = load(shards.getShardFile(shard));
+            for (String alias : Collections.list(shardKs.aliases())) {
+                assertEquals(shard, shards.shardOf(shardKs, alias), "Entry should be in its shard");
+            }
+            total += shardKs.size();
+        }
+        assertEquals(12, total, "All entries should be written to the shards");
+        assertEquals(3, shards.readManifestCount());
+
+        long[] lastModified = new long[3];
+        for (int shard = 0; shard < 3; shard++) {
+            lastModified[shard] = shards.getShardFile(shard).lastModified();
+        }
+        source.setCertificateEntry("added", TestCertificates.selfSigned("CN=Added"));
+        store(source, sourceFile);
+        int changed = shards.shardOf(source, "added");
+
+        Thread.sleep(10);
+        importSharded(service, sourceFile, destFile);
+
+        for (int shard = 0; shard < 3; shard++) {
+            File shardFile = shards.getShardFile(shard);
+            if (shard == changed) {
+                assertTrue(load(shardFile).containsAlias("added"), "Changed shard should be written");
+            } else {
+                assertEquals(lastModified[shard], shardFile.lastModified(), "Unchanged shard should not be written");
+            }
+        }
+
+        Properties manifest = new Properties();
+        try (FileInputStream fis = new FileInputStream(shards.getManifestFile())) {
+            manifest.load(fis);
+        }
+        for (int shard = 0; shard < 3; shard++) {
+            byte[] content = Files.readAllBytes(shards.getShardFile(shard).toPath());
+            assertEquals(
+                    KeyStoreIndex.toHex(MessageDigest.getInstance("SHA-256").digest(content)),
+                    manifest.getProperty("shard." + shard + ".sha256"),
+                    "Manifest should hold the hash of each shard");
+        }
+
+        assertThrows(
+                IOException.class,
+                () -> service.importKeystoreSharded(
+                        sourceFile,
+                        "PKCS12",
+                        PASSWORD,
+                        destFile,
+                        "PKCS12",
+                        PASSWORD,
+                        PASSWORD,
+                        null,
+                        2,
+                        false,
+                        KeyStoreWriteOptions.defaults()),
+                "Shard count should not change");
+    }
+
+    private static void importSharded(KeyStoreManagementService service, File sourceFile, File destFile)
+            throws Exception {
+        service.importKeystoreSharded(
+                sourceFile,
+                "PKCS12",
+                PASSWORD,
+                destFile,
+                "PKCS12",
+                PASSWORD,
+                PASSWORD,
+                null,
+                3,
+                false,
+                KeyStoreWriteOptions.defaults());
+    }
+
+    private static KeyStore load(File file) throws Exception {
+        KeyStore keystore = KeyStore.getInstance("PKCS12");
+        try (FileInputStream fis = new FileInputStream(file)) {
+            keystore.load(fis, PASSWORD);
+        }
+        return keystore;
+    }
+
+    private static void store(KeyStore keystore, File file) throws Exception {
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            keystore.store(fos, PASSWORD);
+        }
+    }
+}
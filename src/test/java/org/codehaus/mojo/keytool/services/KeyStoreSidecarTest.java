@@ -0,0 +1,142 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.crypto.KeyGenerator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for KeyStoreSidecar.
+ */
+public class KeyStoreSidecarTest {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    @TempDir
+    public File tempFolder;
+
+    @Test
+    void storeWritesSidecarDescribingTheKeystore() throws Exception {
+        File keystoreFile = new File(tempFolder, "test.p12");
+        X509Certificate certificate = TestCertificates.selfSigned("CN=Test été, O=Acme\\, Inc");
+
+        KeyStoreCache cache = new KeyStoreCache();
+        KeyStore keystore = cache.loadOrCreate(keystoreFile, "PKCS12", PASSWORD);
+        keystore.setCertificateEntry(" trusted=ca", certificate);
+        keystore.setEntry(
+                "secret",
+                new KeyStore.SecretKeyEntry(KeyGenerator.getInstance("AES").generateKey()),
+                new KeyStore.PasswordProtection(PASSWORD));
+        cache.store(
+                keystore,
+                keystoreFile,
+                PASSWORD,
+                KeyStoreWriteOptions.defaults().withMetadataSidecar(true));
+
+        assertTrue(KeyStoreSidecar.getFile(keystoreFile).exists(), "Sidecar should be written");
+
+        KeyStoreMetadata metadata = KeyStoreSidecar.read(keystoreFile, PASSWORD);
+        assertNotNull(metadata, "Sidecar should match the keystore");
+        assertEquals("PKCS12", metadata.getType());
+        assertEquals(2, metadata.getEntries().size());
+
+        KeyStoreMetadata.Entry trusted = metadata.getEntry(" trusted=ca");
+        assertEquals(KeyStoreMetadata.EntryType.TRUSTED_CERTIFICATE, trusted.getEntryType());
+        assertEquals(KeyStoreIndex.fingerprint(certificate), trusted.getFingerprint());
+        assertEquals(certificate.getSubjectX500Principal().getName(), trusted.getSubject());
+        assertEquals(certificate.getSerialNumber(), trusted.getSerialNumber());
+        assertEquals(certificate.getNotAfter(), trusted.getNotAfter());
+
+        KeyStoreMetadata.Entry secret = metadata.getEntry("secret");
+        assertEquals(KeyStoreMetadata.EntryType.SECRET_KEY, secret.getEntryType());
+        assertNull(secret.getFingerprint());
+    }
+
+    @Test
+    void sidecarOfReplacedKeystoreIsIgnored() throws Exception {
+        File keystoreFile = new File(tempFolder, "test.jks");
+
+        KeyStoreCache cache = new KeyStoreCache();
+        KeyStore keystore = cache.loadOrCreate(keystoreFile, "JKS", PASSWORD);
+        keystore.setCertificateEntry("ca", TestCertificates.selfSigned("CN=CA"));
+        cache.store(
+                keystore,
+                keystoreFile,
+                PASSWORD,
+                KeyStoreWriteOptions.defaults().withMetadataSidecar(true));
+        assertNotNull(KeyStoreSidecar.read(keystoreFile, PASSWORD));
+
+        KeyStore other = KeyStore.getInstance("JKS");
+        other.load(null, PASSWORD);
+        try (FileOutputStream out = new FileOutputStream(keystoreFile)) {
+            other.store(out, PASSWORD);
+        }
+
+        assertNull(KeyStoreSidecar.read(keystoreFile, PASSWORD), "Sidecar of another content should be ignored");
+    }
+
+    @Test
+    void sidecarOnlyAnswersToTheKeystorePassword() throws Exception {
+        File keystoreFile = new File(tempFolder, "test.p12");
+
+        KeyStoreCache cache = new KeyStoreCache();
+        cache.store(
+                cache.loadOrCreate(keystoreFile, "PKCS12", PASSWORD),
+                keystoreFile,
+                PASSWORD,
+                KeyStoreWriteOptions.defaults().withMetadataSidecar(true));
+
+        assertNotNull(KeyStoreSidecar.read(keystoreFile, PASSWORD));
+        assertNull(KeyStoreSidecar.read(keystoreFile, "wrong".toCharArray()), "Another password should get nothing");
+        assertNull(KeyStoreSidecar.read(keystoreFile, null), "No password should get nothing");
+
+        KeyStoreManagementService service = new KeyStoreManagementService(cache);
+        assertThrows(
+                IOException.class,
+                () -> service.listAliases(keystoreFile, "PKCS12", "wrong".toCharArray(), null, true),
+                "Listing with a wrong password should fail as without sidecar");
+    }
+
+    @Test
+    void sidecarIsOnlyWrittenOnRequest() throws Exception {
+        File keystoreFile = new File(tempFolder, "test.p12");
+
+        KeyStoreCache cache = new KeyStoreCache();
+        cache.store(cache.loadOrCreate(keystoreFile, "PKCS12", PASSWORD), keystoreFile, PASSWORD);
+
+        assertFalse(KeyStoreSidecar.getFile(keystoreFile).exists(), "Sidecar should not be written by default");
+        assertNull(KeyStoreSidecar.read(keystoreFile, PASSWORD));
+    }
+}
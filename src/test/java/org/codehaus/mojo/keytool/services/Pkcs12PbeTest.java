@@ -0,0 +1,108 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.crypto.Cipher;
+
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.EncryptionScheme;
+import org.bouncycastle.asn1.pkcs.KeyDerivationFunc;
+import org.bouncycastle.asn1.pkcs.PBES2Parameters;
+import org.bouncycastle.asn1.pkcs.PBKDF2Params;
+import org.bouncycastle.asn1.pkcs.PKCS12PBEParams;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for Pkcs12Pbe.
+ */
+public class Pkcs12PbeTest {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    private static final byte[] CONTENT = "certificates".getBytes(StandardCharsets.UTF_8);
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @Test
+    void pbes2RoundTrip() throws Exception {
+        AlgorithmIdentifier algorithm = new AlgorithmIdentifier(
+                PKCSObjectIdentifiers.id_PBES2,
+                new PBES2Parameters(
+                        new KeyDerivationFunc(
+                                PKCSObjectIdentifiers.id_PBKDF2,
+                                new PBKDF2Params(
+                                        new byte[20],
+                                        10000,
+                                        new AlgorithmIdentifier(
+                                                PKCSObjectIdentifiers.id_hmacWithSHA256, DERNull.INSTANCE))),
+                        new EncryptionScheme(NISTObjectIdentifiers.id_aes256_CBC, new DEROctetString(new byte[16]))));
+
+        AlgorithmIdentifier fast = Pkcs12Pbe.withIterations(algorithm, 1, RANDOM);
+        PBES2Parameters pbes2 = PBES2Parameters.getInstance(fast.getParameters());
+        PBKDF2Params kdf = PBKDF2Params.getInstance(pbes2.getKeyDerivationFunc().getParameters());
+        assertEquals(1, kdf.getIterationCount().intValue());
+        assertEquals(PKCSObjectIdentifiers.id_hmacWithSHA256, kdf.getPrf().getAlgorithm());
+        assertEquals(
+                NISTObjectIdentifiers.id_aes256_CBC, pbes2.getEncryptionScheme().getAlgorithm());
+
+        assertRoundTrip(fast);
+    }
+
+    @Test
+    void pkcs12RoundTrip() throws Exception {
+        AlgorithmIdentifier algorithm = new AlgorithmIdentifier(
+                PKCSObjectIdentifiers.pbeWithSHAAnd3_KeyTripleDES_CBC, new PKCS12PBEParams(new byte[20], 2048));
+
+        AlgorithmIdentifier fast = Pkcs12Pbe.withIterations(algorithm, 1, RANDOM);
+        assertEquals(
+                1,
+                PKCS12PBEParams.getInstance(fast.getParameters())
+                        .getIterations()
+                        .intValue());
+
+        assertRoundTrip(fast);
+    }
+
+    @Test
+    void unknownAlgorithmIsRefused() {
+        AlgorithmIdentifier algorithm =
+                new AlgorithmIdentifier(new ASN1ObjectIdentifier("1.2.3.4"), new PKCS12PBEParams(new byte[20], 1));
+
+        assertThrows(NoSuchAlgorithmException.class, () -> Pkcs12Pbe.cipher(Cipher.DECRYPT_MODE, algorithm, PASSWORD));
+    }
+
+    private static void assertRoundTrip(AlgorithmIdentifier algorithm) throws Exception {
+        byte[] encrypted = Pkcs12Pbe.apply(Cipher.ENCRYPT_MODE, algorithm, PASSWORD, CONTENT);
+        assertArrayEquals(CONTENT, Pkcs12Pbe.apply(Cipher.DECRYPT_MODE, algorithm, PASSWORD, encrypted));
+    }
+}
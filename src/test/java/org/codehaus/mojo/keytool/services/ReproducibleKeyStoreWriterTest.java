@@ -0,0 +1,136 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.crypto.KeyGenerator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for ReproducibleKeyStoreWriter.
+ */
+public class ReproducibleKeyStoreWriterTest {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    private static final KeyStoreWriteOptions REPRODUCIBLE = KeyStoreWriteOptions.defaults()
+            .withProtection(KeyStoreProtection.fastTest())
+            .withReproducibleOutput("seed".getBytes(StandardCharsets.UTF_8), 1700000000000L);
+
+    @TempDir
+    public File tempFolder;
+
+    @Test
+    void pkcs12KeystoresAreReproducible() throws Exception {
+        assertReproducible("PKCS12", true);
+    }
+
+    @Test
+    void jksKeystoresAreReproducible() throws Exception {
+        assertReproducible("JKS", false);
+    }
+
+    @Test
+    void keysProtectedWithAnotherPasswordAreRefused() throws Exception {
+        KeyStore keystore = KeyStore.getInstance("PKCS12");
+        keystore.load(null, PASSWORD);
+        keystore.setEntry(
+                "secret",
+                new KeyStore.SecretKeyEntry(KeyGenerator.getInstance("AES").generateKey()),
+                new KeyStore.PasswordProtection("other".toCharArray()));
+
+        File file = new File(tempFolder, "refused.p12");
+        IOException e = assertThrows(
+                IOException.class, () -> new KeyStoreCache().store(keystore, file, PASSWORD, REPRODUCIBLE));
+        assertEquals(ReproducibleKeyStoreWriter.PASSWORD_MISMATCH + ": secret", e.getMessage());
+        assertFalse(file.exists(), "Nothing should have been written");
+    }
+
+    private void assertReproducible(String type, boolean withSecretKey) throws Exception {
+        Certificate caCertificate = TestCertificates.selfSigned("CN=CA");
+        KeyPair keyPair = TestCertificates.newKeyPair();
+        Certificate certificate = TestCertificates.selfSigned("CN=Server", keyPair);
+        Key secretKey = KeyGenerator.getInstance("AES").generateKey();
+
+        File first = new File(tempFolder, "first." + type);
+        File second = new File(tempFolder, "second." + type);
+        KeyStoreCache cache = new KeyStoreCache();
+
+        // same entries, added in another order and at another time
+        KeyStore keystore = KeyStore.getInstance(type);
+        keystore.load(null, PASSWORD);
+        keystore.setCertificateEntry("ca", caCertificate);
+        keystore.setKeyEntry("server", keyPair.getPrivate(), PASSWORD, new Certificate[] {certificate});
+        if (withSecretKey) {
+            keystore.setKeyEntry("aes", secretKey, PASSWORD, null);
+        }
+        cache.store(keystore, first, PASSWORD, REPRODUCIBLE);
+
+        Thread.sleep(5);
+
+        keystore = KeyStore.getInstance(type);
+        keystore.load(null, PASSWORD);
+        if (withSecretKey) {
+            keystore.setKeyEntry("aes", secretKey, PASSWORD, null);
+        }
+        keystore.setKeyEntry("server", keyPair.getPrivate(), PASSWORD, new Certificate[] {certificate});
+        keystore.setCertificateEntry("ca", caCertificate);
+        cache.store(keystore, second, PASSWORD, REPRODUCIBLE);
+
+        assertArrayEquals(
+                Files.readAllBytes(first.toPath()),
+                Files.readAllBytes(second.toPath()),
+                type + " keystores with the same entries should be identical");
+
+        KeyStore loaded = KeyStore.getInstance(type);
+        try (FileInputStream in = new FileInputStream(first)) {
+            loaded.load(in, PASSWORD);
+        }
+        assertEquals(certificate, loaded.getCertificate("server"));
+        assertEquals(caCertificate, loaded.getCertificate("ca"));
+        assertArrayEquals(
+                keyPair.getPrivate().getEncoded(),
+                loaded.getKey("server", PASSWORD).getEncoded());
+        if (withSecretKey) {
+            assertArrayEquals(
+                    secretKey.getEncoded(), loaded.getKey("aes", PASSWORD).getEncoded());
+        }
+        if ("JKS".equals(type)) {
+            assertEquals(new Date(1700000000000L), loaded.getCreationDate("ca"), "Dates should be the timestamp");
+        }
+    }
+}
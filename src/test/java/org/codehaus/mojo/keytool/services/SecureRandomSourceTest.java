@@ -0,0 +1,79 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for SecureRandomSource.
+ */
+public class SecureRandomSourceTest {
+
+    @Test
+    void forNameAcceptsKnownStrategies() {
+        assertEquals(SecureRandomStrategy.DEFAULT, SecureRandomStrategy.forName(null));
+        assertEquals(SecureRandomStrategy.DEFAULT, SecureRandomStrategy.forName(" "));
+        assertEquals(SecureRandomStrategy.DRBG, SecureRandomStrategy.forName("DRBG"));
+        assertEquals(SecureRandomStrategy.NON_BLOCKING, SecureRandomStrategy.forName(" non-blocking "));
+        assertThrows(IllegalArgumentException.class, () -> SecureRandomStrategy.forName("blocking"));
+    }
+
+    @Test
+    void getReusesInstancePerThread() throws Exception {
+        SecureRandomSource source = new SecureRandomSource();
+
+        SecureRandom first = source.get(SecureRandomStrategy.DEFAULT);
+        assertSame(first, source.get(SecureRandomStrategy.DEFAULT), "Same thread should reuse its instance");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertNotSame(
+                    first,
+                    executor.submit(() -> source.get(SecureRandomStrategy.DEFAULT))
+                            .get(),
+                    "Another thread should get its own instance");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void getReusesInstancePerStrategy() {
+        SecureRandomSource source = new SecureRandomSource();
+        SecureRandom defaultRandom = source.get(SecureRandomStrategy.DEFAULT);
+
+        for (SecureRandomStrategy strategy : SecureRandomStrategy.values()) {
+            SecureRandom random = source.get(strategy);
+            assertSame(random, source.get(strategy), "Instance should be reused for " + strategy);
+            random.nextBytes(new byte[16]);
+        }
+
+        assertSame(defaultRandom, source.get(null), "No strategy should be the default one");
+    }
+}
@@ -0,0 +1,100 @@
+package org.codehaus.mojo.keytool.services;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+/**
+ * Key pairs and certificates for the service tests.
+ */
+final class TestCertificates {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private TestCertificates() {
+        // static only
+    }
+
+    /**
+     * @return a new EC P-256 key pair
+     */
+    static KeyPair newKeyPair() throws Exception {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("EC");
+        keyGen.initialize(256);
+        return keyGen.generateKeyPair();
+    }
+
+    /**
+     * @return a self-signed certificate of a new key pair
+     */
+    static X509Certificate selfSigned(String dn) throws Exception {
+        return selfSigned(dn, newKeyPair());
+    }
+
+    /**
+     * @return a self-signed certificate of the given key pair
+     */
+    static X509Certificate selfSigned(String dn, KeyPair keyPair) throws Exception {
+        return issued(dn, keyPair.getPublic(), dn, keyPair.getPrivate());
+    }
+
+    /**
+     * Certificate valid for a day, with a random 64-bit serial number, signed with SHA-256.
+     *
+     * @param subject subject DN
+     * @param publicKey certified public key
+     * @param issuer issuer DN
+     * @param signer private key of the issuer, RSA or EC
+     * @param extensions extensions to add
+     * @return the certificate
+     */
+    static X509Certificate issued(
+            String subject, PublicKey publicKey, String issuer, PrivateKey signer, Extension... extensions)
+            throws Exception {
+        Date now = new Date();
+        X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                new X500Name(issuer),
+                new BigInteger(64, RANDOM),
+                now,
+                new Date(now.getTime() + 86400000L),
+                new X500Name(subject),
+                publicKey);
+        for (Extension extension : extensions) {
+            builder.addExtension(extension);
+        }
+        String signatureAlgorithm = "EC".equals(signer.getAlgorithm()) ? "SHA256withECDSA" : "SHA256WithRSA";
+        return new JcaX509CertificateConverter()
+                .getCertificate(builder.build(new JcaContentSignerBuilder(signatureAlgorithm).build(signer)));
+    }
+}